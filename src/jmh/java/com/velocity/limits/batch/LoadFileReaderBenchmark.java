@@ -0,0 +1,86 @@
+package com.velocity.limits.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.velocity.limits.model.LoadRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Input file parsing throughput in lines per second: {@link LoadFileReader} against
+ * reading each line as a String and binding it with {@link ObjectMapper}, which is how
+ * the input file used to be read.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LoadFileReaderBenchmark {
+    private static final int LINES = 10_000;
+
+    private ObjectMapper objectMapper;
+    private byte[] input;
+
+    @Setup
+    public void setUp() {
+        objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+        Random random = new Random(42);
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            lines.append("{\"id\":\"").append(i)
+                .append("\",\"customer_id\":\"").append(random.nextInt(1000))
+                .append("\",\"load_amount\":\"$").append(random.nextInt(5000)).append('.')
+                .append(10 + random.nextInt(90))
+                .append("\",\"time\":\"2000-01-").append(String.format("%02d", 1 + i * 28 / LINES))
+                .append("T00:00:00Z\"}\n");
+        }
+        input = lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void loadFileReader(Blackhole blackhole) throws IOException {
+        LoadRequest request = new LoadRequest();
+        try (LoadFileReader reader = new LoadFileReader(
+                Channels.newChannel(new ByteArrayInputStream(input)), objectMapper.getFactory(), 1 << 20)) {
+            while (reader.next(request)) {
+                blackhole.consume(request.getLoadAmountCents());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void objectMapperPerLine(Blackhole blackhole) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(input), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                LoadRequest request = objectMapper.readValue(line, LoadRequest.class);
+                blackhole.consume(request.getLoadAmountCents());
+            }
+        }
+    }
+}
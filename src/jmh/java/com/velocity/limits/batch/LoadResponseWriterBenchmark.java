@@ -0,0 +1,100 @@
+package com.velocity.limits.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.velocity.limits.model.LoadResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Output file writing throughput in lines per second: {@link LoadResponseWriter}
+ * against {@link ObjectMapper#writeValueAsString} per response through a default-sized
+ * {@link BufferedWriter}, which is how the output file used to be written. Both write
+ * to a sink that discards the bytes, so only encoding and buffering are measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LoadResponseWriterBenchmark {
+    private static final int LINES = 10_000;
+
+    private ObjectMapper objectMapper;
+    private LoadResponse[] responses;
+
+    @Setup
+    public void setUp() {
+        objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+        Random random = new Random(42);
+        responses = new LoadResponse[LINES];
+        for (int i = 0; i < LINES; i++) {
+            responses[i] = LoadResponse.builder()
+                .id(String.valueOf(i))
+                .customerId(String.valueOf(random.nextInt(1000)))
+                .accepted(random.nextInt(4) != 0)
+                .build();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void loadResponseWriter() throws IOException {
+        try (LoadResponseWriter writer = new LoadResponseWriter(new DiscardingChannel(), 1 << 20, false)) {
+            for (LoadResponse response : responses) {
+                writer.write(response);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void objectMapperPerLine() throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(OutputStream.nullOutputStream(), StandardCharsets.UTF_8))) {
+            for (LoadResponse response : responses) {
+                writer.write(objectMapper.writeValueAsString(response));
+                writer.newLine();
+            }
+        }
+    }
+
+    private static final class DiscardingChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer source) {
+            int written = source.remaining();
+            source.position(source.limit());
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
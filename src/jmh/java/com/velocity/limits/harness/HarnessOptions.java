@@ -0,0 +1,42 @@
+package com.velocity.limits.harness;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code --name value} command-line options for the harness tools.
+ */
+final class HarnessOptions {
+    private final Map<String, String> values = new HashMap<>();
+
+    HarnessOptions(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --name value pairs, got: " + args[i]);
+            }
+            values.put(args[i].substring(2), args[++i]);
+        }
+    }
+
+    String get(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    String require(String name) {
+        String value = values.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("--" + name + " is required");
+        }
+        return value;
+    }
+
+    long getLong(String name, long defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    double getDouble(String name, double defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
@@ -0,0 +1,114 @@
+package com.velocity.limits.harness;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Writes a synthetic input file in the same JSON-lines format as {@code input.txt}.
+ *
+ * <p>Customers are drawn from a Zipf distribution ({@code --zipf 0} is uniform), load
+ * times are spread evenly over {@code --days} in file order, and a {@code --duplicate-rate}
+ * fraction of lines repeat the id and customer of a recent line.
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:java -Dexec.mainClass=com.velocity.limits.harness.LoadGenerator \
+ *     -Dexec.args="--output target/loads.txt --loads 1000000 --customers 100000 --zipf 1.1"
+ * </pre>
+ */
+public final class LoadGenerator {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    private static final int RECENT_LOADS = 1024;
+
+    private final SplittableRandom random;
+    private final double[] customerCdf;
+    private final double duplicateRate;
+    private final long maxAmountCents;
+
+    private final String[] recentIds = new String[RECENT_LOADS];
+    private final String[] recentCustomers = new String[RECENT_LOADS];
+    private long written;
+
+    LoadGenerator(long seed, int customers, double zipfExponent, double duplicateRate, long maxAmountCents) {
+        this.random = new SplittableRandom(seed);
+        this.customerCdf = zipfCdf(customers, zipfExponent);
+        this.duplicateRate = duplicateRate;
+        this.maxAmountCents = maxAmountCents;
+    }
+
+    public static void main(String[] args) throws IOException {
+        HarnessOptions options = new HarnessOptions(args);
+        Path output = Paths.get(options.require("output"));
+        long loads = options.getLong("loads", 1_000_000);
+        ZonedDateTime start = ZonedDateTime.parse(options.get("start", "2000-01-01T00:00:00Z"));
+        Duration span = Duration.ofDays(options.getLong("days", 28));
+
+        LoadGenerator generator = new LoadGenerator(
+            options.getLong("seed", 42),
+            (int) options.getLong("customers", 1000),
+            options.getDouble("zipf", 1.0),
+            options.getDouble("duplicate-rate", 0.01),
+            options.getLong("max-amount-cents", 500_000));
+
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(output)) {
+            long stepMillis = Math.max(1, span.toMillis() / Math.max(1, loads));
+            for (long i = 0; i < loads; i++) {
+                ZonedDateTime time = start.plus(Duration.ofMillis(i * stepMillis)).withZoneSameInstant(ZoneOffset.UTC);
+                writer.write(generator.nextLine(time));
+                writer.newLine();
+            }
+        }
+        System.out.printf("Wrote %d loads to %s%n", loads, output);
+    }
+
+    String nextLine(ZonedDateTime time) {
+        String id;
+        String customerId;
+        if (written > 0 && random.nextDouble() < duplicateRate) {
+            int slot = (int) random.nextLong(Math.min(written, RECENT_LOADS));
+            id = recentIds[slot];
+            customerId = recentCustomers[slot];
+        } else {
+            id = Long.toString(written + 1);
+            customerId = Integer.toString(nextCustomer() + 1);
+            int slot = (int) (written % RECENT_LOADS);
+            recentIds[slot] = id;
+            recentCustomers[slot] = customerId;
+        }
+        written++;
+
+        long cents = 1 + random.nextLong(maxAmountCents);
+        return "{\"id\":\"" + id + "\",\"customer_id\":\"" + customerId
+            + "\",\"load_amount\":\"$" + cents / 100 + '.' + (cents % 100 < 10 ? "0" : "") + cents % 100
+            + "\",\"time\":\"" + TIME_FORMAT.format(time) + "\"}";
+    }
+
+    private int nextCustomer() {
+        int index = Arrays.binarySearch(customerCdf, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, customerCdf.length - 1);
+    }
+
+    private static double[] zipfCdf(int customers, double exponent) {
+        double[] cdf = new double[customers];
+        double total = 0;
+        for (int rank = 0; rank < customers; rank++) {
+            total += 1 / Math.pow(rank + 1, exponent);
+            cdf[rank] = total;
+        }
+        for (int rank = 0; rank < customers; rank++) {
+            cdf[rank] /= total;
+        }
+        return cdf;
+    }
+}
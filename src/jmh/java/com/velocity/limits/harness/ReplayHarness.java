@@ -0,0 +1,257 @@
+package com.velocity.limits.harness;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.velocity.limits.VelocityLimitsApplication;
+import com.velocity.limits.batch.LoadFileProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Replays an input file and reports throughput, latency percentiles and the
+ * accept/reject mix.
+ *
+ * <ul>
+ *   <li>{@code --mode file} runs the file through {@link LoadFileProcessor} in-process,
+ *   as the {@code processInputFile} runner would, as fast as it can. Latency is the
+ *   per-load decision time from the service's {@code load.processing.time} timer,
+ *   followed by the breakdown per {@code load.stage.time} stage.</li>
+ *   <li>{@code --mode rest} posts each line to {@code --url} of a running instance at
+ *   {@code --rate} loads per second. Latency is measured from each load's scheduled send
+ *   time, so a slow server also counts the time loads spent waiting to be sent.</li>
+ *   <li>{@code --mode endpoints} starts the service in-process and replays the file
+ *   against {@code /api/loads} and then {@code /api/loads/async}, each on a fresh
+ *   database, and prints the two side by side. {@code --max-in-flight} is the number of
+ *   concurrent connections; set {@code --tomcat-threads} below it to see what happens
+ *   once every request thread is taken.</li>
+ * </ul>
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:java -Dexec.mainClass=com.velocity.limits.harness.ReplayHarness \
+ *     -Dexec.args="--mode rest --input target/loads.txt --rate 2000"
+ * </pre>
+ */
+public final class ReplayHarness {
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+    private static final String[] ENDPOINTS = {"/api/loads", "/api/loads/async"};
+
+    private record RestResult(long sent, long elapsedNanos, Timer latency, long peakInFlight,
+                              long accepted, long rejected, long duplicates, long errors) {}
+
+    public static void main(String[] args) throws Exception {
+        HarnessOptions options = new HarnessOptions(args);
+        Path input = Paths.get(options.require("input"));
+        String mode = options.get("mode", "file");
+        switch (mode) {
+            case "file" -> replayFile(input, Paths.get(options.get("output", "target/replay-output.txt")));
+            case "rest" -> {
+                URI url = URI.create(options.get("url", "http://localhost:8080/api/loads"));
+                double rate = options.getDouble("rate", 1000);
+                RestResult result = replayRest(input, url, rate, (int) options.getLong("max-in-flight", 256));
+                System.out.println("Mode:       rest (" + url + ", target " + rate + " loads/s)");
+                report(result.sent(), result.elapsedNanos(), result.latency(), result.accepted(), result.rejected(),
+                    result.duplicates(), result.errors());
+            }
+            case "endpoints" -> compareEndpoints(input, options.getDouble("rate", 1000),
+                (int) options.getLong("max-in-flight", 256), options.getLong("tomcat-threads", 200));
+            default -> throw new IllegalArgumentException("Unknown --mode: " + mode);
+        }
+    }
+
+    private static void replayFile(Path input, Path output) throws Exception {
+        Path emptyInput = Files.createTempFile("replay-harness", ".txt");
+        // Arguments, so they take precedence over application.properties
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(VelocityLimitsApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.main.banner-mode=off",
+                    "--spring.datasource.url=jdbc:h2:mem:replay",
+                    // The startup runner gets an empty file; the replay is timed separately below
+                    "--load.file.input-path=" + emptyInput,
+                    "--load.file.output-path=" + output,
+                    "--logging.level.com.velocity.limits=WARN",
+                    "--logging.level.com.velocity.limits.service=WARN",
+                    "--management.metrics.distribution.percentiles.load.processing.time=0.5,0.99,0.999",
+                    "--management.metrics.distribution.expiry.load.processing.time=1d",
+                    "--management.metrics.distribution.percentiles.load.stage.time=0.5,0.99,0.999",
+                    "--management.metrics.distribution.expiry.load.stage.time=1d")) {
+            long lines;
+            try (Stream<String> stream = Files.lines(input)) {
+                lines = stream.count();
+            }
+
+            long started = System.nanoTime();
+            context.getBean(LoadFileProcessor.class).process(input, output);
+            long elapsed = System.nanoTime() - started;
+
+            long accepted;
+            long decided;
+            try (Stream<String> stream = Files.lines(output)) {
+                long[] counts = stream.collect(() -> new long[2],
+                    (c, line) -> { c[0]++; if (line.contains("\"accepted\":true")) c[1]++; },
+                    (a, b) -> { a[0] += b[0]; a[1] += b[1]; });
+                decided = counts[0];
+                accepted = counts[1];
+            }
+
+            MeterRegistry registry = context.getBean(MeterRegistry.class);
+            System.out.println("Mode:       file (" + input + ")");
+            report(lines, elapsed, registry.get("load.processing.time").timer(), accepted, decided - accepted,
+                lines - decided, 0);
+            for (Timer stage : registry.get("load.stage.time").timers()) {
+                System.out.printf("Stage %-14s %s%n", stage.getId().getTag("stage") + ":", percentiles(stage));
+            }
+        } finally {
+            Files.deleteIfExists(emptyInput);
+        }
+    }
+
+    private static void compareEndpoints(Path input, double rate, int maxInFlight, long tomcatThreads)
+            throws Exception {
+        Path emptyInput = Files.createTempFile("replay-harness", ".txt");
+        RestResult[] results = new RestResult[ENDPOINTS.length];
+        try {
+            for (int i = 0; i < ENDPOINTS.length; i++) {
+                try (ConfigurableApplicationContext context = new SpringApplicationBuilder(VelocityLimitsApplication.class)
+                        .run("--spring.main.banner-mode=off",
+                            "--server.port=0",
+                            "--server.tomcat.threads.max=" + tomcatThreads,
+                            "--server.tomcat.max-connections=" + Math.max(8192, maxInFlight),
+                            "--spring.datasource.url=jdbc:h2:mem:replay-endpoints-" + i,
+                            "--load.file.input-path=" + emptyInput,
+                            "--load.file.output-path=target/replay-endpoints-output.txt",
+                            "--logging.level.com.velocity.limits=WARN",
+                            "--logging.level.com.velocity.limits.service=WARN")) {
+                    String port = context.getEnvironment().getProperty("local.server.port");
+                    results[i] = replayRest(input, URI.create("http://localhost:" + port + ENDPOINTS[i]), rate,
+                        maxInFlight);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(emptyInput);
+        }
+
+        System.out.printf("Mode:       endpoints (target %.0f loads/s, %d connections, %d Tomcat threads)%n",
+            rate, maxInFlight, tomcatThreads);
+        System.out.printf("%-18s %12s %12s %10s %10s %10s %10s %8s%n",
+            "Endpoint", "loads/s", "connections", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        for (int i = 0; i < ENDPOINTS.length; i++) {
+            RestResult result = results[i];
+            double[] values = new double[PERCENTILES.length];
+            for (ValueAtPercentile value : result.latency().takeSnapshot().percentileValues()) {
+                for (int p = 0; p < PERCENTILES.length; p++) {
+                    if (value.percentile() == PERCENTILES[p]) {
+                        values[p] = value.value(TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+            System.out.printf("%-18s %12.0f %12d %10.3f %10.3f %10.3f %10.3f %8d%n",
+                ENDPOINTS[i], result.sent() / (result.elapsedNanos() / 1e9), result.peakInFlight(),
+                values[0], values[1], values[2], result.latency().max(TimeUnit.MILLISECONDS), result.errors());
+        }
+    }
+
+    private static RestResult replayRest(Path input, URI url, double rate, int maxInFlight) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        Timer latency = Timer.builder("replay.latency")
+            .publishPercentiles(PERCENTILES)
+            .distributionStatisticExpiry(Duration.ofDays(1))
+            .register(new SimpleMeterRegistry());
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        LongAdder accepted = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        LongAdder duplicates = new LongAdder();
+        LongAdder errors = new LongAdder();
+        AtomicInteger outstanding = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+
+        long intervalNanos = (long) (1_000_000_000L / rate);
+        long started = System.nanoTime();
+        long sent = 0;
+        try (BufferedReader reader = Files.newBufferedReader(input)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long scheduled = started + sent * intervalNanos;
+                long wait;
+                while ((wait = scheduled - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                inFlight.acquire();
+                sent++;
+                peakInFlight.accumulateAndGet(outstanding.incrementAndGet(), Math::max);
+
+                HttpRequest request = HttpRequest.newBuilder(url)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(line))
+                    .build();
+                client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, e) -> {
+                    latency.record(System.nanoTime() - scheduled, TimeUnit.NANOSECONDS);
+                    outstanding.decrementAndGet();
+                    try {
+                        if (e != null || response.statusCode() >= 300) {
+                            errors.increment();
+                        } else if (response.statusCode() == 204) {
+                            duplicates.increment();
+                        } else if (objectMapper.readTree(response.body()).path("accepted").asBoolean()) {
+                            accepted.increment();
+                        } else {
+                            rejected.increment();
+                        }
+                    } catch (IOException parseFailure) {
+                        errors.increment();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        inFlight.acquire(maxInFlight);
+        long elapsed = System.nanoTime() - started;
+        return new RestResult(sent, elapsed, latency, peakInFlight.get(),
+            accepted.sum(), rejected.sum(), duplicates.sum(), errors.sum());
+    }
+
+    private static void report(long loads, long elapsedNanos, Timer latency,
+                               long accepted, long rejected, long duplicates, long errors) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("Loads:      %d in %.2f s (%.0f loads/s)%n", loads, seconds, loads / seconds);
+        System.out.printf("Latency:    %s%n", percentiles(latency));
+        System.out.printf("Decisions:  accepted=%d (%.1f%%), rejected=%d, duplicates=%d, errors=%d%n",
+            accepted, 100.0 * accepted / Math.max(1, accepted + rejected), rejected, duplicates, errors);
+    }
+
+    private static String percentiles(Timer timer) {
+        StringBuilder percentiles = new StringBuilder();
+        for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+            percentiles.append(String.format("p%s=%.3f ms  ",
+                stripZeros(value.percentile() * 100), value.value(TimeUnit.MILLISECONDS)));
+        }
+        return percentiles.append(String.format("max=%.3f ms", timer.max(TimeUnit.MILLISECONDS))).toString();
+    }
+
+    private static String stripZeros(double percentile) {
+        return BigDecimal.valueOf(percentile).stripTrailingZeros().toPlainString();
+    }
+}
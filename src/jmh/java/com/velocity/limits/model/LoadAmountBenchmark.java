@@ -0,0 +1,79 @@
+package com.velocity.limits.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Amount parsing and JSON (de)serialization of single requests and responses. Run
+ * with {@code -prof gc} to compare allocation per operation, e.g. cents against the
+ * BigDecimal amounts used before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LoadAmountBenchmark {
+
+    @Param({"$3318.47", "$5000.00", "$1.5"})
+    private String amount;
+
+    private ObjectMapper objectMapper;
+    private LoadRequest request;
+    private byte[] requestJson;
+    private LoadResponse response;
+
+    @Setup
+    public void setUp() {
+        objectMapper = JsonMapper.builder().findAndAddModules().build();
+        request = new LoadRequest();
+        requestJson = ("{\"id\":\"15887\",\"customer_id\":\"528\",\"load_amount\":\"" + amount
+            + "\",\"time\":\"2000-01-01T00:00:00Z\"}").getBytes(StandardCharsets.UTF_8);
+        response = LoadResponse.builder().id("15887").customerId("528").accepted(true).build();
+    }
+
+    @Benchmark
+    public long parseCents() {
+        return Cents.parse(amount);
+    }
+
+    @Benchmark
+    public BigDecimal parseBigDecimal() {
+        // The amount parsing LoadRequest did before amounts were kept in cents
+        return new BigDecimal(amount.replace("$", ""));
+    }
+
+    @Benchmark
+    public long loadAmountCents() {
+        // Setting the amount clears the cached value, so every call parses
+        request.setLoadAmount(amount);
+        return request.getLoadAmountCents();
+    }
+
+    @Benchmark
+    public LoadRequest readRequest() throws IOException {
+        return objectMapper.readValue(requestJson, LoadRequest.class);
+    }
+
+    @Benchmark
+    public byte[] writeResponse() throws IOException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
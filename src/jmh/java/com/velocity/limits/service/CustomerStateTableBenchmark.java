@@ -0,0 +1,162 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.model.EpochWindows;
+import com.velocity.limits.model.VelocityTotals;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up and updating one customer's buckets with every customer resident:
+ * {@link CustomerStateTable} against a {@link ConcurrentHashMap} of small objects,
+ * which is how {@link VelocityAggregateStore} used to keep them.
+ *
+ * <p>Setup prints the memory each layout takes per customer, not counting the id
+ * strings both share. Run with {@code -prof gc} (the default {@code jmh.args}) to see
+ * collection counts and time: the map's entries are old-generation objects every
+ * collection has to account for, while the table's slots are not objects at all.
+ * Larger customer counts need a larger heap and direct memory, e.g.
+ * {@code -jvmArgs "-Xmx16g -XX:MaxDirectMemorySize=4g"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx8g", "-XX:MaxDirectMemorySize=4g"})
+@State(Scope.Benchmark)
+public class CustomerStateTableBenchmark {
+    private static final int DAY = 11_000;
+    private static final VelocityTotals SEED = new VelocityTotals(1, 100, 1, 100, 100);
+
+    @Param({"1000000", "10000000"})
+    private int customers;
+
+    @Param({"table", "map"})
+    private String layout;
+
+    private String[] customerIds;
+    private CustomerStateTable table;
+    private Map<String, Buckets> map;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        customerIds = new String[customers];
+        for (int i = 0; i < customers; i++) {
+            customerIds[i] = String.valueOf(i);
+        }
+
+        long heapBefore = usedHeap();
+        long offHeapBytes = 0;
+        if (layout.equals("table")) {
+            table = new CustomerStateTable(customers, 64);
+            for (String customerId : customerIds) {
+                table.putIfAbsent(customerId, DAY, SEED);
+            }
+            offHeapBytes = table.capacityBytes();
+        } else {
+            map = new ConcurrentHashMap<>();
+            for (String customerId : customerIds) {
+                map.put(customerId, new Buckets(DAY, SEED));
+            }
+        }
+        long heapBytes = usedHeap() - heapBefore;
+        System.out.printf("%n%s with %d customers: heap %.1f bytes/customer, off-heap %.1f bytes/customer%n",
+            layout, customers, (double) heapBytes / customers, (double) offHeapBytes / customers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        table = null;
+        map = null;
+    }
+
+    @Benchmark
+    public VelocityTotals lookupAndAdd() {
+        String customerId = customerIds[ThreadLocalRandom.current().nextInt(customers)];
+        if (table != null) {
+            table.add(customerId, DAY, 1, false);
+            return table.totals(customerId, DAY);
+        }
+        Buckets buckets = map.get(customerId);
+        buckets.add(DAY, 1);
+        return buckets.totals(DAY);
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * The per-customer object the aggregate store kept before the table, with the
+     * same buckets as a table slot.
+     */
+    private static final class Buckets {
+        private int day;
+        private long dayCount;
+        private long dayAmountCents;
+        private int week;
+        private long weekCount;
+        private long weekAmountCents;
+        private int month;
+        private long monthAmountCents;
+
+        Buckets(int day, VelocityTotals totals) {
+            this.day = day;
+            this.dayCount = totals.dailyCount();
+            this.dayAmountCents = totals.dailyAmountCents();
+            this.week = EpochWindows.epochWeek(day);
+            this.weekCount = totals.weeklyCount();
+            this.weekAmountCents = totals.weeklyAmountCents();
+            this.month = EpochWindows.epochMonth(day);
+            this.monthAmountCents = totals.monthlyAmountCents();
+        }
+
+        synchronized VelocityTotals totals(int loadDay) {
+            if (loadDay < day) {
+                return null;
+            }
+            boolean sameDay = loadDay == day;
+            boolean sameWeek = sameDay || EpochWindows.epochWeek(loadDay) == week;
+            boolean sameMonth = sameDay || EpochWindows.epochMonth(loadDay) == month;
+            return new VelocityTotals(
+                sameDay ? dayCount : 0,
+                sameDay ? dayAmountCents : 0,
+                sameWeek ? weekCount : 0,
+                sameWeek ? weekAmountCents : 0,
+                sameMonth ? monthAmountCents : 0
+            );
+        }
+
+        // Only the benchmark's same-day case
+        synchronized void add(int loadDay, long amountCents) {
+            if (loadDay == day) {
+                dayCount++;
+                dayAmountCents += amountCents;
+                weekCount++;
+                weekAmountCents += amountCents;
+                monthAmountCents += amountCents;
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.VelocityLimitsApplication;
+import com.velocity.limits.model.EpochWindows;
+import com.velocity.limits.model.LoadRequest;
+import com.velocity.limits.model.LoadResponse;
+import com.velocity.limits.model.RemainingLimits;
+import com.velocity.limits.model.VelocityTotals;
+import com.velocity.limits.repository.CustomerLoadRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The limit decision against H2: {@code processLoad} end to end, the totals query, and
+ * the validation and limit checks on their own. Also the remaining-limits query, which
+ * reads the same cached totals without deciding anything.
+ *
+ * <p>{@code customers} is how many distinct customers the requests rotate through, and
+ * {@code historyRows} how many earlier loads are inserted, spread over those customers
+ * and the ten years before the benchmark starts. Larger histories need a bigger heap,
+ * e.g. {@code -p historyRows=10000000 -jvmArgsAppend -Xmx8g}.
+ *
+ * <p>{@code processLoadUnrelatedCustomers} decides loads from every core at once, each
+ * thread for customers of its own; running it again with {@code -t 1} shows how
+ * decisions for unrelated customers scale across cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoadDecisionBenchmark {
+    private static final ZonedDateTime START = ZonedDateTime.of(2030, 1, 7, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final int HISTORY_DAYS = 3650;
+
+    @State(Scope.Benchmark)
+    public static class Db {
+        @Param({"1", "1000", "100000"})
+        int customers;
+
+        @Param({"0", "10000", "1000000"})
+        long historyRows;
+
+        ConfigurableApplicationContext context;
+        LoadLimitService loadLimitService;
+        CustomerLoadRepository loadRepository;
+        LoadRequest[] probes;
+        int historyDay;
+        long next;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            Path directory = Files.createTempDirectory("load-decision-benchmark");
+            Path input = Files.createFile(directory.resolve("input.txt"));
+            context = new SpringApplicationBuilder(VelocityLimitsApplication.class)
+                .web(WebApplicationType.NONE)
+                // Arguments, so they take precedence over application.properties
+                .run("--spring.main.banner-mode=off",
+                    "--spring.datasource.url=jdbc:h2:mem:benchmark",
+                    "--load.file.input-path=" + input,
+                    "--load.file.output-path=" + directory.resolve("output.txt"),
+                    // Room for every worker's customers, so decisions are not measured with reloads
+                    "--load.aggregates.max-customers=1000000",
+                    // Console logging would otherwise dominate the decision itself
+                    "--logging.level.com.velocity.limits=WARN",
+                    "--logging.level.com.velocity.limits.service=WARN");
+            loadLimitService = context.getBean(LoadLimitService.class);
+            loadRepository = context.getBean(CustomerLoadRepository.class);
+
+            historyDay = EpochWindows.epochDay(START) - 1;
+            insertHistory(context.getBean(JdbcTemplate.class));
+            context.getBean(SeenLoadFilter.class).rebuild();
+
+            probes = new LoadRequest[customers];
+            for (int i = 0; i < customers; i++) {
+                probes[i] = request("probe-" + i, "c" + i, START);
+            }
+            // Seeds every customer's cached totals, as their first load would
+            for (LoadRequest probe : probes) {
+                int epochDay = EpochWindows.epochDay(probe.getTime());
+                loadLimitService.checkLimits(probe, epochDay, EpochWindows.epochWeek(epochDay));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            context.close();
+        }
+
+        private void insertHistory(JdbcTemplate jdbc) {
+            if (historyRows == 0) {
+                return;
+            }
+            // One load every day per customer, cycling over the ten years before START
+            jdbc.update("""
+                INSERT INTO customer_load (id, load_id, customer_id, amount_cents, load_time, accepted, epoch_day, epoch_week)
+                SELECT X, 'h' || X, 'c' || MOD(X, ?), 10000,
+                       DATEADD(DAY, D, TIMESTAMP WITH TIME ZONE '1970-01-01 00:00:00+00'), MOD(X, 4) <> 0, D, (D + 3) / 7
+                FROM (SELECT X, CAST(? - MOD(X / ?, ?) AS INT) AS D FROM SYSTEM_RANGE(1, ?))
+                """, customers, historyDay, customers, HISTORY_DAYS, historyRows);
+            // Ids above were assigned by hand; move the pooled sequence past them
+            jdbc.execute("ALTER SEQUENCE customer_load_seq RESTART WITH " + (historyRows + 100));
+        }
+
+        LoadRequest nextLoad() {
+            long n = next++;
+            // Each pass over the customers moves eight hours on, so the daily count is never exceeded
+            ZonedDateTime time = START.plusHours(8 * (n / customers));
+            return request("b" + n, "c" + (n % customers), time);
+        }
+
+        LoadRequest nextProbe() {
+            return probes[(int) (next++ % customers)];
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+        private static final AtomicInteger WORKERS = new AtomicInteger();
+
+        String prefix;
+        long next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            prefix = "w" + WORKERS.getAndIncrement() + "-";
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Standalone {
+        LoadLimitService loadLimitService;
+        LoadRequest request;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            loadLimitService = new LoadLimitService(null, null, null, null, null, null, null, null, new SimpleMeterRegistry());
+            loadLimitService.init();
+            request = request("15887", "528", START);
+        }
+    }
+
+    @Benchmark
+    public LoadResponse processLoad(Db db) {
+        return db.loadLimitService.processLoad(db.nextLoad());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public LoadResponse processLoadUnrelatedCustomers(Db db, Worker worker) {
+        long n = worker.next++;
+        ZonedDateTime time = START.plusHours(8 * (n / db.customers));
+        return db.loadLimitService.processLoad(request("u" + n, worker.prefix + (n % db.customers), time));
+    }
+
+    @Benchmark
+    public VelocityTotals sumTotalsQuery(Db db) {
+        LoadRequest probe = db.nextProbe();
+        return db.loadRepository.sumTotalsByCustomerId(
+            probe.getCustomerId(), db.historyDay, EpochWindows.epochWeek(db.historyDay));
+    }
+
+    @Benchmark
+    public boolean checkLimits(Db db) {
+        LoadRequest probe = db.nextProbe();
+        int epochDay = EpochWindows.epochDay(probe.getTime());
+        return db.loadLimitService.checkLimits(probe, epochDay, EpochWindows.epochWeek(epochDay)) == null;
+    }
+
+    @Benchmark
+    public RemainingLimits remainingLimits(Db db) {
+        LoadRequest probe = db.nextProbe();
+        return db.loadLimitService.remainingLimits(probe.getCustomerId(), probe.getTime());
+    }
+
+    @Benchmark
+    public LoadRequest validateRequest(Standalone state) {
+        // Resets the cached cents, so the amount is parsed again as for a new request
+        state.request.setLoadAmount("$3318.47");
+        state.loadLimitService.validateRequest(state.request);
+        return state.request;
+    }
+
+    private static LoadRequest request(String id, String customerId, ZonedDateTime time) {
+        LoadRequest request = new LoadRequest();
+        request.setId(id);
+        request.setCustomerId(customerId);
+        request.setLoadAmount("$100.00");
+        request.setTime(time);
+        return request;
+    }
+}
@@ -0,0 +1,271 @@
+package com.velocity.limits.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.velocity.limits.model.LoadRequest;
+import com.velocity.limits.model.LoadResponse;
+import com.velocity.limits.service.CustomerLocks;
+import com.velocity.limits.service.LoadLimitService;
+import com.velocity.limits.service.NotOwnerException;
+import jakarta.persistence.EntityManager;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiConsumer;
+
+/**
+ * Groups load decisions into one transaction, committed every {@code maxSize} loads or
+ * once the oldest pending load is {@code maxDelayMillis} old. Inserts are flushed at
+ * commit so Hibernate can send them as one JDBC batch; decisions still see earlier loads
+ * of the same batch through the aggregate store and pending load keys.
+ *
+ * <p>Responses reach the sink only after their batch commits. A request that fails
+ * validation is reported to the invalid-request handler and the batch carries on. A
+ * load for a customer another node decides gets a {@link LoadResponse#MISDIRECTED}
+ * response, so the caller can send it to the owner, and the batch carries on. Any
+ * other failure, in a decision or in the commit, rolls back the whole batch, emits none
+ * of its responses and is rethrown; the batch must not be used afterwards.
+ *
+ * <p>The lock of every customer in the batch is held until it completes. If a
+ * customer's lock is taken elsewhere the batch commits early and waits for it with no
+ * locks or connection of its own, so two batches never wait for each other. For the
+ * same reason it commits before reading input that may not have arrived yet, see
+ * {@link #processAll(LoadFileReader, Input)}.
+ *
+ * <p>Not thread-safe: a batch belongs to the thread that created it.
+ */
+class LoadBatch implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(LoadBatch.class);
+
+    interface Sink {
+        void accept(long sequence, LoadResponse response) throws IOException;
+
+        /**
+         * Called in the batch's transaction just before it commits, with the responses
+         * about to be accepted, null where a line has none. Anything it writes commits or
+         * rolls back with the batch.
+         *
+         * <p>{@code inputPosition} is, under {@link #processAll}, the position in the
+         * reader of the first line not yet in this batch or an earlier one. That is not
+         * always {@link LoadFileReader#position()}: a batch may commit after reading a
+         * line but before taking it in. Otherwise it is -1.
+         */
+        default void committing(List<LoadResponse> responses, long inputPosition) throws IOException {
+        }
+
+        /**
+         * Called after the responses of each committed batch have been accepted.
+         */
+        default void committed() throws IOException {
+        }
+    }
+
+    /**
+     * Whether more input can be read without waiting for it to arrive.
+     */
+    interface Input {
+        boolean ready() throws IOException;
+    }
+
+    private final PlatformTransactionManager transactionManager;
+    private final EntityManager entityManager;
+    private final LoadLimitService loadLimitService;
+    private final CustomerLocks customerLocks;
+    private final int maxSize;
+    private final long maxDelayNanos;
+    private final Sink sink;
+    private final BiConsumer<LoadRequest, IllegalArgumentException> invalidRequestHandler;
+
+    private final List<Long> sequences = new ArrayList<>();
+    private final List<LoadResponse> responses = new ArrayList<>();
+    private final Set<Lock> heldLocks = Collections.newSetFromMap(new IdentityHashMap<>());
+    private TransactionStatus transaction;
+    private long openedAt;
+    // Only under processAll
+    private LoadFileReader reader;
+    private long inputPosition = -1;
+
+    LoadBatch(PlatformTransactionManager transactionManager, EntityManager entityManager,
+              LoadLimitService loadLimitService, CustomerLocks customerLocks, int maxSize,
+              long maxDelayMillis, Sink sink,
+              BiConsumer<LoadRequest, IllegalArgumentException> invalidRequestHandler) {
+        this.transactionManager = transactionManager;
+        this.entityManager = entityManager;
+        this.loadLimitService = loadLimitService;
+        this.customerLocks = customerLocks;
+        this.maxSize = Math.max(1, maxSize);
+        this.maxDelayNanos = maxDelayMillis * 1_000_000L;
+        this.sink = sink;
+        this.invalidRequestHandler = invalidRequestHandler;
+    }
+
+    /**
+     * Processes every remaining line of {@code reader} in order. Lines that are not
+     * valid JSON are logged and skipped.
+     */
+    void processAll(LoadFileReader reader) throws IOException {
+        processAll(reader, () -> true);
+    }
+
+    /**
+     * Like {@link #processAll(LoadFileReader)}, but if the next line is not buffered yet
+     * and {@code input} is not ready, commits before reading it, so the batch holds no
+     * customer locks or connection while waiting for a slow client.
+     */
+    void processAll(LoadFileReader reader, Input input) throws IOException {
+        // Requests are not retained past processLoad, so a single instance is reused
+        LoadRequest request = new LoadRequest();
+        long sequence = 0;
+        this.reader = reader;
+        while (true) {
+            // Every line before it has been taken in, or skipped
+            inputPosition = reader.position();
+            if (!input.ready() && !reader.lineBuffered()) {
+                commit();
+            }
+            try {
+                if (!reader.next(request)) {
+                    break;
+                }
+            } catch (JsonProcessingException e) {
+                log.error("Error processing line: " + reader.currentLine(), e);
+                continue;
+            }
+            process(sequence++, request);
+        }
+    }
+
+    void process(long sequence, LoadRequest request) throws IOException {
+        if (request.getCustomerId() != null) {
+            hold(customerLocks.lockFor(request.getCustomerId()));
+        }
+        if (transaction == null) {
+            begin();
+        }
+
+        LoadResponse response = null;
+        try {
+            response = loadLimitService.processLoad(request);
+        } catch (IllegalArgumentException e) {
+            invalidRequestHandler.accept(request, e);
+        } catch (NotOwnerException e) {
+            response = LoadResponse.builder()
+                .id(request.getId())
+                .customerId(request.getCustomerId())
+                .error(LoadResponse.MISDIRECTED)
+                .build();
+        } catch (RuntimeException e) {
+            rollback();
+            throw e;
+        }
+
+        sequences.add(sequence);
+        responses.add(response);
+        if (reader != null) {
+            inputPosition = reader.position();
+        }
+        if (responses.size() >= maxSize) {
+            commit();
+        } else {
+            commitIfDue();
+        }
+    }
+
+    void commitIfDue() throws IOException {
+        if (transaction != null && System.nanoTime() - openedAt >= maxDelayNanos) {
+            commit();
+        }
+    }
+
+    void commit() throws IOException {
+        if (transaction == null) {
+            releaseLocks();
+            return;
+        }
+        try {
+            sink.committing(responses, inputPosition);
+        } catch (IOException | RuntimeException e) {
+            rollback();
+            throw e;
+        }
+
+        TransactionStatus committing = transaction;
+        transaction = null;
+        try {
+            transactionManager.commit(committing);
+        } catch (RuntimeException e) {
+            clear();
+            throw e;
+        } finally {
+            releaseLocks();
+        }
+
+        for (int i = 0; i < sequences.size(); i++) {
+            sink.accept(sequences.get(i), responses.get(i));
+        }
+        clear();
+        sink.committed();
+    }
+
+    @Override
+    public void close() throws IOException {
+        commit();
+    }
+
+    /**
+     * Adds {@code lock} to the locks held until the batch completes. If another thread
+     * holds it, commits first, since waiting with this batch's locks could deadlock.
+     */
+    private void hold(Lock lock) throws IOException {
+        if (heldLocks.contains(lock)) {
+            return;
+        }
+        if (!lock.tryLock()) {
+            commit();
+            lock.lock();
+        }
+        heldLocks.add(lock);
+    }
+
+    private void releaseLocks() {
+        for (Lock lock : heldLocks) {
+            lock.unlock();
+        }
+        heldLocks.clear();
+    }
+
+    private void begin() {
+        transaction = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        entityManager.unwrap(Session.class).setHibernateFlushMode(FlushMode.COMMIT);
+        openedAt = System.nanoTime();
+    }
+
+    private void rollback() {
+        TransactionStatus rollingBack = transaction;
+        transaction = null;
+        clear();
+        try {
+            if (rollingBack != null) {
+                transactionManager.rollback(rollingBack);
+            }
+        } finally {
+            releaseLocks();
+        }
+    }
+
+    private void clear() {
+        sequences.clear();
+        responses.clear();
+    }
+}
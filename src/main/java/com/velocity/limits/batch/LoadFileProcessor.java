@@ -0,0 +1,269 @@
+package com.velocity.limits.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.velocity.limits.entity.FileCheckpoint;
+import com.velocity.limits.model.LoadRequest;
+import com.velocity.limits.model.LoadResponse;
+import com.velocity.limits.repository.FileCheckpointRepository;
+import com.velocity.limits.service.CustomerLocks;
+import com.velocity.limits.service.LoadLimitService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Processes a file of JSON load requests, one per line, and writes one response line
+ * per decided load.
+ *
+ * <p>With more than one worker, lines are partitioned by {@code customer_id} hash so
+ * each customer's loads are still decided in file order by a single worker, while
+ * different customers are decided concurrently.
+ *
+ * <p>Each worker commits its loads in batches (see {@link LoadBatch}). If a batch fails
+ * the run stops; responses of committed batches have already been written.
+ *
+ * <p>With {@code load.file.checkpoint}, each batch also saves a {@link FileCheckpoint}
+ * in its transaction, and a run over an input file that has one resumes after the last
+ * committed batch, appending to the output. Decided loads and the checkpoint commit
+ * together, so a resumed run neither decides a line twice nor loses a response; that
+ * needs a database that outlives the process.
+ */
+@Component
+@RequiredArgsConstructor
+public class LoadFileProcessor {
+    private static final Logger log = LoggerFactory.getLogger(LoadFileProcessor.class);
+
+    private final LoadLimitService loadLimitService;
+    private final CustomerLocks customerLocks;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+    private final FileCheckpointRepository checkpointRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${load.file.workers:1}")
+    private int workers;
+
+    @Value("${load.file.preserve-order:true}")
+    private boolean preserveOrder;
+
+    @Value("${load.file.max-in-flight:10000}")
+    private int maxInFlight;
+
+    @Value("${load.file.read-buffer-size:1048576}")
+    private int readBufferSize;
+
+    @Value("${load.file.write-buffer-size:1048576}")
+    private int writeBufferSize;
+
+    @Value("${load.file.background-writer:false}")
+    private boolean backgroundWriter;
+
+    @Value("${load.file.batch-size:500}")
+    private int batchSize;
+
+    @Value("${load.file.batch-interval-ms:1000}")
+    private long batchIntervalMillis;
+
+    @Value("${load.file.checkpoint:false}")
+    private boolean checkpointing;
+
+    @Value("${load.persistence.mode:jpa}")
+    private String persistenceMode;
+
+    private record Task(long sequence, LoadRequest request) {}
+
+    private static final Task END = new Task(-1, null);
+
+    public void process(Path inputPath, Path outputPath) throws IOException, InterruptedException {
+        if (outputPath.getParent() != null) {
+            Files.createDirectories(outputPath.getParent());
+        }
+        if (checkpointing) {
+            processWithCheckpoints(inputPath, outputPath);
+            return;
+        }
+
+        try (LoadFileReader reader = LoadFileReader.open(inputPath, objectMapper.getFactory(), readBufferSize);
+             LoadResponseWriter writer = LoadResponseWriter.open(outputPath, writeBufferSize, backgroundWriter)) {
+            if (workers <= 1) {
+                processSequentially(reader, writer);
+            } else {
+                processPartitioned(reader, writer);
+            }
+        }
+    }
+
+    private void processSequentially(LoadFileReader reader, LoadResponseWriter writer) throws IOException {
+        LoadBatch.Sink sink = (sequence, response) -> {
+            if (response != null) {
+                writer.write(response);
+            }
+        };
+
+        try (LoadBatch batch = newBatch(sink, (request, e) ->
+                log.error("Error processing line: " + reader.currentLine(), e))) {
+            batch.processAll(reader);
+        }
+    }
+
+    private void processWithCheckpoints(Path inputPath, Path outputPath) throws IOException {
+        if (workers > 1 || !persistenceMode.equals("jpa")) {
+            throw new IllegalArgumentException("load.file.checkpoint requires load.file.workers=1 and load.persistence.mode=jpa");
+        }
+        String key = inputPath.toAbsolutePath().normalize().toString();
+        FileCheckpoint checkpoint = checkpointRepository.findById(key).orElseGet(() -> {
+            FileCheckpoint first = new FileCheckpoint();
+            first.setInputPath(key);
+            return first;
+        });
+        if (checkpoint.getInputOffset() > 0) {
+            log.info("Resuming {} from byte {}, appending to {} from byte {}", inputPath, checkpoint.getInputOffset(),
+                outputPath, checkpoint.getOutputLength());
+        }
+
+        ByteArrayOutputStream pendingOutput = new ByteArrayOutputStream();
+        try (LoadFileReader reader = LoadFileReader.open(inputPath, objectMapper.getFactory(), readBufferSize,
+                 checkpoint.getInputOffset());
+             LoadResponseWriter writer = LoadResponseWriter.open(outputPath, checkpoint.getOutputLength(),
+                 writeBufferSize, backgroundWriter);
+             LoadResponseWriter pendingWriter = new LoadResponseWriter(Channels.newChannel(pendingOutput),
+                 1 << 16, false)) {
+            if (checkpoint.getPendingOutput() != null) {
+                writer.write(checkpoint.getPendingOutput());
+            }
+
+            LoadBatch.Sink sink = new LoadBatch.Sink() {
+                @Override
+                public void accept(long sequence, LoadResponse response) throws IOException {
+                    if (response != null) {
+                        writer.write(response);
+                    }
+                }
+
+                @Override
+                public void committing(List<LoadResponse> responses, long inputPosition) throws IOException {
+                    // Earlier batches' responses must be in the file before the checkpoint says so
+                    writer.flush();
+                    pendingOutput.reset();
+                    for (LoadResponse response : responses) {
+                        if (response != null) {
+                            pendingWriter.write(response);
+                        }
+                    }
+                    pendingWriter.flush();
+                    // Not the reader's position: a line may be read but still waiting for its lock
+                    checkpoint.setInputOffset(inputPosition);
+                    checkpoint.setOutputLength(writer.position());
+                    checkpoint.setPendingOutput(pendingOutput.toByteArray());
+                    checkpointRepository.save(checkpoint);
+                }
+            };
+
+            try (LoadBatch batch = newBatch(sink, (request, e) ->
+                    log.error("Error processing line: " + reader.currentLine(), e))) {
+                batch.processAll(reader);
+            }
+        }
+    }
+
+    private void processPartitioned(LoadFileReader reader, LoadResponseWriter writer)
+            throws IOException, InterruptedException {
+        ResultCollector collector = new ResultCollector(writer, preserveOrder, maxInFlight);
+
+        @SuppressWarnings("unchecked")
+        BlockingQueue<Task>[] queues = new BlockingQueue[workers];
+        AtomicInteger threadIds = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers,
+            runnable -> new Thread(runnable, "load-file-worker-" + threadIds.incrementAndGet()));
+
+        try {
+            for (int i = 0; i < workers; i++) {
+                BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+                queues[i] = queue;
+                executor.execute(() -> runPartition(queue, collector));
+            }
+
+            long sequence = 0;
+            while (!collector.isFailed()) {
+                collector.reserve();
+                LoadRequest request = new LoadRequest();
+                try {
+                    if (!reader.next(request)) {
+                        collector.release();
+                        break;
+                    }
+                } catch (JsonProcessingException e) {
+                    log.error("Error processing line: " + reader.currentLine(), e);
+                    collector.complete(sequence++, null);
+                    continue;
+                }
+                queues[partitionOf(request.getCustomerId())].put(new Task(sequence++, request));
+            }
+        } finally {
+            for (BlockingQueue<Task> queue : queues) {
+                if (queue != null) {
+                    queue.put(END);
+                }
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        collector.finish();
+    }
+
+    private void runPartition(BlockingQueue<Task> queue, ResultCollector collector) {
+        BiConsumer<LoadRequest, IllegalArgumentException> invalidRequestHandler = (request, e) ->
+            log.error("Error processing load: id=" + request.getId() + ", customer=" + request.getCustomerId(), e);
+
+        try (LoadBatch batch = newBatch(collector::complete, invalidRequestHandler)) {
+            while (!collector.isFailed()) {
+                Task task = queue.poll(batchIntervalMillis, TimeUnit.MILLISECONDS);
+                if (task == null) {
+                    batch.commit();
+                } else if (task == END) {
+                    break;
+                } else {
+                    batch.process(task.sequence(), task.request());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            collector.fail(e);
+        } catch (Exception e) {
+            log.error("Load batch failed, stopping file processing", e);
+            collector.fail(e);
+        }
+    }
+
+    private LoadBatch newBatch(LoadBatch.Sink sink, BiConsumer<LoadRequest, IllegalArgumentException> invalidRequestHandler) {
+        return new LoadBatch(transactionManager, entityManager, loadLimitService, customerLocks,
+            batchSize, batchIntervalMillis, sink, invalidRequestHandler);
+    }
+
+    private int partitionOf(String customerId) {
+        return customerId == null ? 0 : Math.floorMod(customerId.hashCode(), workers);
+    }
+}
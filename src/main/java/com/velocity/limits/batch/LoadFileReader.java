@@ -0,0 +1,219 @@
+package com.velocity.limits.batch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.velocity.limits.model.LoadRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * Reads JSON-lines load requests from a channel through one large buffer, parsing
+ * each line with a streaming {@link JsonParser} straight into a caller-supplied
+ * {@link LoadRequest}, so no per-line String or databind pass is needed.
+ */
+public final class LoadFileReader implements Closeable {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    private final ReadableByteChannel channel;
+    private final JsonFactory jsonFactory;
+
+    private byte[] buffer;
+    private ByteBuffer window;
+    // Position in the input of buffer[0]
+    private long bufferOffset;
+    private int start;
+    private int limit;
+    private boolean endOfInput;
+
+    private int lineStart;
+    private int lineLength;
+
+    public LoadFileReader(ReadableByteChannel channel, JsonFactory jsonFactory, int bufferSize) {
+        this.channel = channel;
+        this.jsonFactory = jsonFactory;
+        this.buffer = new byte[bufferSize];
+        this.window = ByteBuffer.wrap(buffer);
+    }
+
+    public static LoadFileReader open(Path path, JsonFactory jsonFactory, int bufferSize) throws IOException {
+        return open(path, jsonFactory, bufferSize, 0);
+    }
+
+    /**
+     * Opens {@code path} to read from byte {@code position}, which must be the start of
+     * a line, such as a {@link #position()} returned earlier.
+     */
+    public static LoadFileReader open(Path path, JsonFactory jsonFactory, int bufferSize, long position)
+            throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        channel.position(position);
+        LoadFileReader reader = new LoadFileReader(channel, jsonFactory, bufferSize);
+        reader.bufferOffset = position;
+        return reader;
+    }
+
+    /**
+     * Parses the next line into {@code target}, replacing all of its fields.
+     *
+     * @return false once the input is exhausted
+     * @throws JsonProcessingException if the line is not a valid load request; the
+     *         reader has still moved past it, so the caller may continue with the next line
+     */
+    public boolean next(LoadRequest target) throws IOException {
+        if (!nextLine()) {
+            return false;
+        }
+
+        target.setId(null);
+        target.setCustomerId(null);
+        target.setLoadAmount(null);
+        target.setTime(null);
+
+        try (JsonParser parser = jsonFactory.createParser(buffer, lineStart, lineLength)) {
+            parse(parser, target);
+        }
+        return true;
+    }
+
+    /**
+     * Whether the next line is already buffered, so {@link #next} returns it without
+     * reading from the channel.
+     */
+    public boolean lineBuffered() {
+        for (int i = start; i < limit; i++) {
+            if (buffer[i] == '\n') {
+                return true;
+            }
+        }
+        return endOfInput;
+    }
+
+    /**
+     * The position in the input just past the line last returned by {@link #next},
+     * including its line separator.
+     */
+    public long position() {
+        return bufferOffset + start;
+    }
+
+    /**
+     * The raw text of the line last returned by {@link #next}, for error reporting.
+     */
+    public String currentLine() {
+        return new String(buffer, lineStart, lineLength, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void parse(JsonParser parser, LoadRequest target) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a JSON object");
+        }
+
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "id" -> target.setId(scalarText(parser, token));
+                case "customer_id" -> target.setCustomerId(scalarText(parser, token));
+                case "load_amount" -> target.setLoadAmount(scalarText(parser, token));
+                case "time" -> target.setTime(parseTime(parser, scalarText(parser, token)));
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private static String scalarText(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw new JsonParseException(parser, "Expected a scalar value for " + parser.currentName());
+        }
+        return parser.getText();
+    }
+
+    private static ZonedDateTime parseTime(JsonParser parser, String text) throws IOException {
+        if (text == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(text, TIME_FORMAT).atZone(UTC);
+        } catch (DateTimeParseException e) {
+            throw new JsonParseException(parser, "Invalid time: " + text, e);
+        }
+    }
+
+    private boolean nextLine() throws IOException {
+        int scanFrom = start;
+        while (true) {
+            for (int i = scanFrom; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    setLine(start, i);
+                    start = i + 1;
+                    return true;
+                }
+            }
+            if (endOfInput) {
+                if (start < limit) {
+                    setLine(start, limit);
+                    start = limit;
+                    return true;
+                }
+                return false;
+            }
+            int scanned = limit - start;
+            fill();
+            scanFrom = start + scanned;
+        }
+    }
+
+    private void setLine(int from, int to) {
+        if (to > from && buffer[to - 1] == '\r') {
+            to--;
+        }
+        lineStart = from;
+        lineLength = to - from;
+    }
+
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            limit -= start;
+            bufferOffset += start;
+            start = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            window = ByteBuffer.wrap(buffer);
+        }
+
+        window.limit(buffer.length).position(limit);
+        int read = channel.read(window);
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            limit += read;
+        }
+    }
+}
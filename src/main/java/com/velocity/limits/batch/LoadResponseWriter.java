@@ -0,0 +1,301 @@
+package com.velocity.limits.batch;
+
+import com.velocity.limits.model.LoadResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes response lines to a channel through a large direct buffer, encoding each
+ * {@link LoadResponse} straight to bytes instead of through a databind pass and a
+ * String per line. The output is byte for byte what Jackson would write for the
+ * response, followed by the platform line separator.
+ *
+ * <p>With a background writer, two buffers alternate: one is filled while a separate
+ * thread writes the other to the channel. Not thread-safe; callers serialize writes.
+ */
+public final class LoadResponseWriter implements Closeable {
+    private static final byte[] ID = "{\"id\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CUSTOMER_ID = ",\"customer_id\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ACCEPTED = ",\"accepted\":true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REJECTED = ",\"accepted\":false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REJECTED_BY = ",\"rejected_by\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ERROR = ",\"error\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final WritableByteChannel channel;
+    private ByteBuffer buffer;
+    // Bytes that have left the buffer, for the channel or the background writer
+    private long released;
+
+    // Only with a background writer
+    private final BlockingQueue<ByteBuffer> filled;
+    private final BlockingQueue<ByteBuffer> free;
+    private final Thread writerThread;
+    private volatile IOException writeFailure;
+
+    public LoadResponseWriter(WritableByteChannel channel, int bufferSize, boolean backgroundWriter) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        if (backgroundWriter) {
+            filled = new ArrayBlockingQueue<>(2);
+            free = new ArrayBlockingQueue<>(1);
+            free.add(ByteBuffer.allocateDirect(bufferSize));
+            writerThread = new Thread(this::writeLoop, "load-response-writer");
+            writerThread.start();
+        } else {
+            filled = null;
+            free = null;
+            writerThread = null;
+        }
+    }
+
+    public static LoadResponseWriter open(Path path, int bufferSize, boolean backgroundWriter) throws IOException {
+        return open(path, 0, bufferSize, backgroundWriter);
+    }
+
+    /**
+     * Opens {@code path} to write from byte {@code position}, dropping anything after it.
+     */
+    public static LoadResponseWriter open(Path path, long position, int bufferSize, boolean backgroundWriter)
+            throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() < position) {
+            channel.close();
+            throw new IOException("Cannot write " + path + " from byte " + position + ", it is shorter");
+        }
+        channel.truncate(position);
+        channel.position(position);
+        LoadResponseWriter writer = new LoadResponseWriter(channel, bufferSize, backgroundWriter);
+        writer.released = position;
+        return writer;
+    }
+
+    public void write(LoadResponse response) throws IOException {
+        put(ID);
+        putString(response.getId());
+        put(CUSTOMER_ID);
+        putString(response.getCustomerId());
+        put(response.isAccepted() ? ACCEPTED : REJECTED);
+        if (response.getRejectedBy() != null) {
+            put(REJECTED_BY);
+            putString(response.getRejectedBy());
+        }
+        if (response.getError() != null) {
+            put(ERROR);
+            putString(response.getError());
+        }
+        put((byte) '}');
+        put(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes response lines already encoded by a writer like this one.
+     */
+    public void write(byte[] lines) throws IOException {
+        put(lines);
+    }
+
+    /**
+     * The position in the output after the last line written, whether or not it has
+     * left the buffer yet.
+     */
+    public long position() {
+        return released + buffer.position();
+    }
+
+    /**
+     * Writes out everything buffered so far, and with a background writer waits until it
+     * has been.
+     */
+    public void flush() throws IOException {
+        if (writerThread == null) {
+            released += buffer.position();
+            drain(buffer);
+            return;
+        }
+        handOff();
+        // Both buffers are free again once the writer has caught up
+        ByteBuffer spare = takeFree();
+        free.add(spare);
+        checkWriteFailure();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (writerThread == null) {
+                drain(buffer);
+            } else {
+                handOff();
+                putFilled(END);
+                try {
+                    writerThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for the response writer", e);
+                }
+                checkWriteFailure();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            full();
+        }
+        buffer.put(b);
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if (buffer.remaining() < bytes.length) {
+            for (byte b : bytes) {
+                put(b);
+            }
+            return;
+        }
+        buffer.put(bytes);
+    }
+
+    /**
+     * Writes {@code value} as a quoted JSON string, escaped as Jackson escapes it by
+     * default, and encoded as UTF-8.
+     */
+    private void putString(String value) throws IOException {
+        if (value == null) {
+            put(NULL);
+            return;
+        }
+        put((byte) '"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                put((byte) c);
+            } else if (c < 0x80) {
+                putEscaped(c);
+            } else if (c < 0x800) {
+                put((byte) (0xC0 | c >> 6));
+                put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                put((byte) (0xF0 | codePoint >> 18));
+                put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                throw new IOException("Unpaired surrogate in response field: " + value);
+            } else {
+                put((byte) (0xE0 | c >> 12));
+                put((byte) (0x80 | c >> 6 & 0x3F));
+                put((byte) (0x80 | c & 0x3F));
+            }
+        }
+        put((byte) '"');
+    }
+
+    private void putEscaped(char c) throws IOException {
+        put((byte) '\\');
+        switch (c) {
+            case '"', '\\' -> put((byte) c);
+            case '\b' -> put((byte) 'b');
+            case '\t' -> put((byte) 't');
+            case '\n' -> put((byte) 'n');
+            case '\f' -> put((byte) 'f');
+            case '\r' -> put((byte) 'r');
+            default -> {
+                put((byte) 'u');
+                put((byte) '0');
+                put((byte) '0');
+                put(HEX[c >> 4]);
+                put(HEX[c & 0xF]);
+            }
+        }
+    }
+
+    private void full() throws IOException {
+        if (writerThread == null) {
+            released += buffer.position();
+            drain(buffer);
+        } else {
+            handOff();
+        }
+    }
+
+    private void drain(ByteBuffer bytes) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    private void handOff() throws IOException {
+        checkWriteFailure();
+        if (buffer.position() == 0) {
+            return;
+        }
+        released += buffer.position();
+        putFilled(buffer);
+        buffer = takeFree();
+    }
+
+    private void putFilled(ByteBuffer bytes) throws IOException {
+        try {
+            filled.put(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted handing responses to the writer", e);
+        }
+    }
+
+    private ByteBuffer takeFree() throws IOException {
+        try {
+            return free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for the response writer", e);
+        }
+    }
+
+    private void checkWriteFailure() throws IOException {
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                ByteBuffer bytes = filled.take();
+                if (bytes == END) {
+                    return;
+                }
+                if (writeFailure == null) {
+                    try {
+                        drain(bytes);
+                    } catch (IOException e) {
+                        writeFailure = e;
+                    }
+                }
+                bytes.clear();
+                free.put(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
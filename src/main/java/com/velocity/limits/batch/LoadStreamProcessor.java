@@ -0,0 +1,73 @@
+package com.velocity.limits.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.velocity.limits.model.LoadResponse;
+import com.velocity.limits.service.CustomerLocks;
+import com.velocity.limits.service.LoadLimitService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+
+/**
+ * Decides a stream of newline-delimited JSON load requests in order, writing one
+ * response line per decided load. Neither side is buffered beyond one batch: responses
+ * are written and flushed as each batch commits. A batch also commits whenever the
+ * client has sent nothing further yet, so a paused client holds no customer locks or
+ * connection and has every decision so far.
+ */
+@Component
+@RequiredArgsConstructor
+public class LoadStreamProcessor {
+    private static final Logger log = LoggerFactory.getLogger(LoadStreamProcessor.class);
+
+    private final LoadLimitService loadLimitService;
+    private final CustomerLocks customerLocks;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${load.bulk.batch-size:100}")
+    private int batchSize;
+
+    @Value("${load.bulk.batch-interval-ms:50}")
+    private long batchIntervalMillis;
+
+    @Value("${load.bulk.read-buffer-size:65536}")
+    private int readBufferSize;
+
+    public void process(InputStream in, OutputStream out) throws IOException {
+        LoadBatch.Sink sink = new LoadBatch.Sink() {
+            @Override
+            public void accept(long sequence, LoadResponse response) throws IOException {
+                if (response != null) {
+                    out.write(objectMapper.writeValueAsBytes(response));
+                    out.write('\n');
+                }
+            }
+
+            @Override
+            public void committed() throws IOException {
+                out.flush();
+            }
+        };
+
+        LoadFileReader reader = new LoadFileReader(Channels.newChannel(in), objectMapper.getFactory(), readBufferSize);
+        try (LoadBatch batch = new LoadBatch(transactionManager, entityManager, loadLimitService,
+                customerLocks, batchSize, batchIntervalMillis, sink,
+                (request, e) -> log.error("Error processing line: " + reader.currentLine(), e))) {
+            batch.processAll(reader, () -> in.available() > 0);
+        }
+    }
+}
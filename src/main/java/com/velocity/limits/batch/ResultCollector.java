@@ -0,0 +1,102 @@
+package com.velocity.limits.batch;
+
+import com.velocity.limits.model.LoadResponse;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Collects responses from partition workers and writes them out, either in input line
+ * order or as soon as they complete. At most {@code maxInFlight} lines may be read
+ * ahead of the writer.
+ */
+class ResultCollector {
+    private static final LoadResponse SKIPPED = LoadResponse.builder().build();
+
+    private final LoadResponseWriter writer;
+    private final boolean preserveOrder;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+
+    private final Map<Long, LoadResponse> pending = new HashMap<>();
+    private long nextSequence;
+    private volatile Exception failure;
+
+    ResultCollector(LoadResponseWriter writer, boolean preserveOrder, int maxInFlight) {
+        this.writer = writer;
+        this.preserveOrder = preserveOrder;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+    }
+
+    void reserve() throws InterruptedException {
+        inFlight.acquire();
+    }
+
+    void release() {
+        inFlight.release();
+    }
+
+    /**
+     * Completes a line. A {@code null} response (duplicate or failed line) writes nothing
+     * but still advances the output position.
+     */
+    synchronized void complete(long sequence, LoadResponse response) {
+        if (!preserveOrder) {
+            write(response);
+            inFlight.release();
+            return;
+        }
+
+        pending.put(sequence, response == null ? SKIPPED : response);
+        while (pending.containsKey(nextSequence)) {
+            LoadResponse next = pending.remove(nextSequence++);
+            if (next != SKIPPED) {
+                write(next);
+            }
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Stops the run: nothing more is written and a reader waiting for capacity is released.
+     */
+    synchronized void fail(Exception e) {
+        if (failure == null) {
+            failure = e;
+            inFlight.release(maxInFlight);
+        }
+    }
+
+    boolean isFailed() {
+        return failure != null;
+    }
+
+    synchronized void finish() throws IOException {
+        if (failure instanceof IOException e) {
+            throw e;
+        }
+        if (failure instanceof RuntimeException e) {
+            throw e;
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Load file processing failed", failure);
+        }
+        if (!pending.isEmpty()) {
+            throw new IllegalStateException("Missing results before line " + nextSequence);
+        }
+    }
+
+    private void write(LoadResponse response) {
+        if (response == null || failure != null) {
+            return;
+        }
+        try {
+            writer.write(response);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+}
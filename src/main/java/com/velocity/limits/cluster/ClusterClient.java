@@ -0,0 +1,100 @@
+package com.velocity.limits.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * HTTP calls between cluster nodes: forwarded load requests and limit queries, and the
+ * rebalance protocol.
+ */
+@Component
+@ConditionalOnProperty(name = "load.cluster.enabled", havingValue = "true")
+public class ClusterClient {
+    /**
+     * How many nodes a forwarded request has already passed through.
+     */
+    static final String HOPS_HEADER = "X-Load-Hops";
+
+    private final ObjectMapper objectMapper;
+    private final Duration timeout;
+    private final HttpClient http;
+
+    public ClusterClient(ObjectMapper objectMapper,
+                         @Value("${load.cluster.request-timeout-ms:5000}") long timeoutMillis) {
+        this.objectMapper = objectMapper;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(timeout)
+            .build();
+    }
+
+    /**
+     * Posts a load request body to {@code path} on {@code node}, or sends a {@code GET} if
+     * {@code body} is null, and returns its response as is.
+     */
+    public HttpResponse<byte[]> forward(String node, String path, byte[] body, String contentType, int hops)
+            throws IOException, InterruptedException {
+        return http.send(forwardRequest(node, path, body, contentType, hops), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Like {@link #forward}, but returns at once; the future fails if the node could not
+     * be reached.
+     */
+    public CompletableFuture<HttpResponse<byte[]>> forwardAsync(String node, String path, byte[] body,
+                                                                String contentType, int hops) {
+        return http.sendAsync(forwardRequest(node, path, body, contentType, hops), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private HttpRequest forwardRequest(String node, String path, byte[] body, String contentType, int hops) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(node + path))
+            .timeout(timeout)
+            .header(HOPS_HEADER, Integer.toString(hops));
+        if (body == null) {
+            request.GET();
+        } else {
+            request.header("Content-Type", contentType).POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        }
+        return request.build();
+    }
+
+    public void rebalance(String node, Rebalance rebalance) throws IOException, InterruptedException {
+        post(node, "/api/cluster/rebalance", rebalance);
+    }
+
+    public void handOff(String node, CustomerHandoff handoff) throws IOException, InterruptedException {
+        post(node, "/api/cluster/handoff", handoff);
+    }
+
+    public void handoffCompleted(String node, String rebalanceId, String from) throws IOException, InterruptedException {
+        post(node, "/api/cluster/handoff-complete?rebalance=" + URLEncoder.encode(rebalanceId, StandardCharsets.UTF_8)
+            + "&node=" + URLEncoder.encode(from, StandardCharsets.UTF_8), null);
+    }
+
+    private void post(String node, String path, Object body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(node + path))
+            .timeout(timeout)
+            .header("Content-Type", "application/json")
+            .POST(body == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+            .build();
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("POST " + node + path + " returned " + response.statusCode() + ": " + response.body());
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.velocity.limits.cluster;
+
+import com.velocity.limits.service.CustomerOwnership;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which node owns each customer, by consistent hashing over the cluster's nodes.
+ *
+ * <p>During a {@link Rebalance} a moving customer stays with its previous owner until
+ * that node has handed it off, see {@link ShardHandoff}. Each node only knows what it
+ * has sent or received, so {@link #route} may point a request at the new owner, which
+ * passes it on to the previous owner until the customer arrives. The rebalance ends
+ * once every previous node has reported its handoff complete. Reports name their
+ * rebalance, so one that arrives late or is retried cannot count towards the next.
+ *
+ * <p>Before its last handoff pass a node {@link #fence fences} the rebalance: from then
+ * on it decides none of the customers leaving it, handed off or not, so a customer it
+ * had not seen before cannot be decided both here and by a new owner that was told the
+ * handoff is complete.
+ */
+@Component
+@ConditionalOnProperty(name = "load.cluster.enabled", havingValue = "true")
+public class ClusterMembership implements CustomerOwnership {
+    private static final Logger log = LoggerFactory.getLogger(ClusterMembership.class);
+
+    private final String self;
+    private final int virtualNodes;
+
+    private volatile ShardRing ring;
+    // The ring customers are moving from, or null when no rebalance is in progress
+    private volatile ShardRing previous;
+    // The rebalance in progress, or the last one
+    private volatile String rebalanceId;
+    // The rebalance in progress, or null
+    private volatile Rebalance rebalance;
+    // Set before the last handoff pass: no customer leaving this node is decided here
+    private volatile boolean fenced;
+    private final Set<String> received = ConcurrentHashMap.newKeySet();
+    private final Set<String> handedOff = ConcurrentHashMap.newKeySet();
+    // Nodes that have reported their handoff complete, by rebalance
+    private final Map<String, Set<String>> completed = new ConcurrentHashMap<>();
+
+    public ClusterMembership(@Value("${load.cluster.self-url}") String selfUrl,
+                             @Value("${load.cluster.nodes}") String[] nodes,
+                             @Value("${load.cluster.virtual-nodes:128}") int virtualNodes,
+                             @Value("${load.persistence.mode:jpa}") String persistenceMode,
+                             MeterRegistry meterRegistry) {
+        if (!persistenceMode.equals("jpa")) {
+            throw new IllegalArgumentException("load.cluster.enabled requires load.persistence.mode=jpa");
+        }
+        this.self = normalize(selfUrl);
+        this.virtualNodes = virtualNodes;
+        this.ring = new ShardRing(normalize(Arrays.asList(nodes)), virtualNodes);
+        log.info("Cluster node {} joined ring of {}", self, ring.nodes());
+
+        Gauge.builder("load.cluster.nodes", this, membership -> membership.ring.nodes().size())
+            .description("Nodes in the shard ring")
+            .register(meterRegistry);
+        Gauge.builder("load.cluster.rebalancing", this, membership -> membership.previous == null ? 0 : 1)
+            .description("1 while customers are being handed off between nodes")
+            .register(meterRegistry);
+    }
+
+    public String self() {
+        return self;
+    }
+
+    public ShardRing ring() {
+        return ring;
+    }
+
+    /**
+     * The ring customers are moving from, or null when no rebalance is in progress.
+     */
+    public ShardRing previous() {
+        return previous;
+    }
+
+    /**
+     * The rebalance in progress, or null.
+     */
+    public Rebalance rebalance() {
+        return rebalance;
+    }
+
+    /**
+     * The node to send the customer's loads to, or null if they are decided here.
+     */
+    public String route(String customerId) {
+        ShardRing previous = this.previous;
+        String owner = ring.ownerOf(customerId);
+        if (previous == null) {
+            return owner.equals(self) ? null : owner;
+        }
+        String previousOwner = previous.ownerOf(customerId);
+        if (owner.equals(previousOwner)) {
+            return owner.equals(self) ? null : owner;
+        }
+        if (owner.equals(self)) {
+            return received.contains(customerId) || completed(rebalanceId).contains(previousOwner) ? null : previousOwner;
+        }
+        if (previousOwner.equals(self)) {
+            return fenced || handedOff.contains(customerId) ? owner : null;
+        }
+        return owner;
+    }
+
+    @Override
+    public boolean owns(String customerId) {
+        return route(customerId) == null;
+    }
+
+    /**
+     * The customer's new owner if it is still here and must be handed off, otherwise null.
+     */
+    public String newOwnerIfLeaving(String customerId) {
+        ShardRing previous = this.previous;
+        if (previous == null || handedOff.contains(customerId) || !previous.ownerOf(customerId).equals(self)) {
+            return null;
+        }
+        String owner = ring.ownerOf(customerId);
+        return owner.equals(self) ? null : owner;
+    }
+
+    /**
+     * Starts moving customers to the owners in {@code rebalance.nodes()}. A rebalance
+     * that has already begun here, sent again by a retried change, is ignored.
+     *
+     * @return false if the rebalance had already begun here
+     * @throws IllegalStateException if another rebalance is in progress
+     */
+    public synchronized boolean beginRebalance(Rebalance rebalance) {
+        if (rebalance.id().equals(rebalanceId)) {
+            return false;
+        }
+        if (previous != null) {
+            throw new IllegalStateException("A rebalance is already in progress");
+        }
+        ShardRing next = new ShardRing(normalize(rebalance.nodes()), virtualNodes);
+        received.clear();
+        handedOff.clear();
+        // This rebalance's completions are kept: a node with nothing to hand off can
+        // report before the rebalance reaches this one
+        completed.keySet().removeIf(id -> !id.equals(rebalance.id()));
+        rebalanceId = rebalance.id();
+        this.rebalance = rebalance;
+        fenced = false;
+
+        // Set before the new ring, so a concurrent route never sees the new ring alone
+        previous = new ShardRing(normalize(rebalance.previous()), virtualNodes);
+        ring = next;
+        log.info("Rebalancing from {} to {}", previous.nodes(), ring.nodes());
+        return true;
+    }
+
+    /**
+     * Every node of the previous and current ring, which all take part in a rebalance.
+     */
+    public List<String> rebalanceNodes() {
+        Set<String> nodes = new LinkedHashSet<>(ring.nodes());
+        ShardRing previous = this.previous;
+        if (previous != null) {
+            nodes.addAll(previous.nodes());
+        }
+        return new ArrayList<>(nodes);
+    }
+
+    void handedOff(String customerId) {
+        handedOff.add(customerId);
+    }
+
+    void received(String customerId) {
+        received.add(customerId);
+    }
+
+    /**
+     * Sends every customer leaving this node in the rebalance {@code rebalanceId} to its
+     * new owner from now on, including those not handed off yet. Decisions that passed
+     * their ownership check before may still be in progress.
+     */
+    synchronized void fence(String rebalanceId) {
+        if (rebalanceId.equals(this.rebalanceId) && previous != null) {
+            fenced = true;
+        }
+    }
+
+    /**
+     * Records that {@code node} has handed off every customer it no longer owns in the
+     * rebalance {@code rebalanceId}, and ends the rebalance once all previous nodes have.
+     * A report that arrives before the rebalance has begun here counts towards it; one
+     * for a rebalance that has ended, or while another is in progress, is ignored.
+     */
+    public synchronized void handoffCompleted(String rebalanceId, String node) {
+        boolean current = rebalanceId.equals(this.rebalanceId);
+        if (current ? previous == null : previous != null) {
+            log.info("Ignoring handoff report from {} for rebalance {}, which is not in progress", node, rebalanceId);
+            return;
+        }
+        Set<String> nodes = completed.computeIfAbsent(rebalanceId, id -> ConcurrentHashMap.newKeySet());
+        nodes.add(normalize(node));
+        if (current && nodes.containsAll(previous.nodes())) {
+            log.info("Rebalance to {} complete", ring.nodes());
+            previous = null;
+            this.rebalance = null;
+            fenced = false;
+            received.clear();
+            handedOff.clear();
+            completed.remove(rebalanceId);
+        }
+    }
+
+    private Set<String> completed(String rebalanceId) {
+        return rebalanceId == null ? Set.of() : completed.getOrDefault(rebalanceId, Set.of());
+    }
+
+    private static List<String> normalize(Collection<String> nodes) {
+        return nodes.stream().map(ClusterMembership::normalize).filter(node -> !node.isEmpty()).toList();
+    }
+
+    private static String normalize(String node) {
+        String trimmed = node.trim();
+        return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+}
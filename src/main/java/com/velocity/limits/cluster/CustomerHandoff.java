@@ -0,0 +1,16 @@
+package com.velocity.limits.cluster;
+
+import com.velocity.limits.entity.CustomerLoad;
+import com.velocity.limits.entity.CustomerWeeklyTotal;
+import com.velocity.limits.entity.RetiredLoadKey;
+
+import java.util.List;
+
+/**
+ * Everything one node stores for a customer, sent to the customer's new owner.
+ */
+public record CustomerHandoff(String customerId,
+                              List<CustomerLoad> loads,
+                              List<CustomerWeeklyTotal> weeklyTotals,
+                              List<RetiredLoadKey> retiredKeys) {
+}
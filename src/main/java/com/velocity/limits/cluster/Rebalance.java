@@ -0,0 +1,11 @@
+package com.velocity.limits.cluster;
+
+import java.util.List;
+
+/**
+ * A membership change sent to every node involved: customers move from their owners
+ * among {@code previous} to their owners among {@code nodes}. The {@code id} tells
+ * one rebalance's handoff reports apart from another's.
+ */
+public record Rebalance(String id, List<String> previous, List<String> nodes) {
+}
@@ -0,0 +1,241 @@
+package com.velocity.limits.cluster;
+
+import com.velocity.limits.entity.CustomerLoad;
+import com.velocity.limits.entity.CustomerWeeklyTotal;
+import com.velocity.limits.entity.RetiredLoadKey;
+import com.velocity.limits.repository.CustomerLoadRepository;
+import com.velocity.limits.repository.CustomerWeeklyTotalRepository;
+import com.velocity.limits.repository.RetiredLoadKeyRepository;
+import com.velocity.limits.service.CustomerLocks;
+import com.velocity.limits.service.JpaLoadPersistence;
+import com.velocity.limits.service.SeenLoadFilter;
+import com.velocity.limits.service.VelocityAggregateStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Moves customers between nodes during a {@link Rebalance}.
+ *
+ * <p>The previous owner hands each leaving customer off under the customer's lock: it
+ * sends every load, rollup and retired key it has for the customer to the new owner,
+ * deletes them once the new owner has stored them, and from then on forwards the
+ * customer's loads. It repeats until a pass finds nothing left to move, which also picks
+ * up customers first seen, or loads committed, while the pass ran. It then fences the
+ * rebalance, so no leaving customer is decided here any more, waits for decisions
+ * already under way, hands off anything they added and only then reports its handoff
+ * complete to every node.
+ *
+ * <p>Imports are idempotent, so a handoff interrupted between sending and deleting is
+ * simply sent again.
+ */
+@Component
+@ConditionalOnProperty(name = "load.cluster.enabled", havingValue = "true")
+public class ShardHandoff {
+    private static final Logger log = LoggerFactory.getLogger(ShardHandoff.class);
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final ClusterMembership membership;
+    private final ClusterClient client;
+    private final CustomerLoadRepository loadRepository;
+    private final CustomerWeeklyTotalRepository weeklyTotalRepository;
+    private final RetiredLoadKeyRepository retiredKeyRepository;
+    private final JpaLoadPersistence persistence;
+    private final VelocityAggregateStore aggregateStore;
+    private final SeenLoadFilter seenLoadFilter;
+    private final CustomerLocks customerLocks;
+    private final TransactionTemplate transaction;
+    private final Counter handedOffCounter;
+    private final Counter receivedCounter;
+    private final Counter failuresCounter;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "shard-handoff"));
+
+    public ShardHandoff(ClusterMembership membership,
+                        ClusterClient client,
+                        CustomerLoadRepository loadRepository,
+                        CustomerWeeklyTotalRepository weeklyTotalRepository,
+                        RetiredLoadKeyRepository retiredKeyRepository,
+                        JpaLoadPersistence persistence,
+                        VelocityAggregateStore aggregateStore,
+                        SeenLoadFilter seenLoadFilter,
+                        CustomerLocks customerLocks,
+                        PlatformTransactionManager transactionManager,
+                        MeterRegistry meterRegistry) {
+        this.membership = membership;
+        this.client = client;
+        this.loadRepository = loadRepository;
+        this.weeklyTotalRepository = weeklyTotalRepository;
+        this.retiredKeyRepository = retiredKeyRepository;
+        this.persistence = persistence;
+        this.aggregateStore = aggregateStore;
+        this.seenLoadFilter = seenLoadFilter;
+        this.customerLocks = customerLocks;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.handedOffCounter = Counter.builder("load.cluster.handoff.sent.total")
+            .description("Customers handed off to their new owner")
+            .register(meterRegistry);
+        this.receivedCounter = Counter.builder("load.cluster.handoff.received.total")
+            .description("Customers received from their previous owner")
+            .register(meterRegistry);
+        this.failuresCounter = Counter.builder("load.cluster.handoff.failures.total")
+            .description("Customer handoffs that failed and were retried")
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Hands off every customer that no longer belongs here, in the background, and
+     * reports it done for the rebalance {@code rebalanceId}.
+     */
+    public void start(String rebalanceId) {
+        executor.execute(() -> {
+            try {
+                handOffAll();
+                membership.fence(rebalanceId);
+                // A decision holds its customer's lock until it commits
+                customerLocks.awaitReleased();
+                handOffAll();
+                reportComplete(rebalanceId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Handoff interrupted before it completed");
+            }
+        });
+    }
+
+    private void handOffAll() throws InterruptedException {
+        while (true) {
+            Set<String> leaving = leavingCustomers();
+            if (leaving.isEmpty()) {
+                return;
+            }
+            log.info("Handing off {} customers", leaving.size());
+            boolean failed = false;
+            for (String customerId : leaving) {
+                String owner = membership.newOwnerIfLeaving(customerId);
+                if (owner == null) {
+                    continue;
+                }
+                try {
+                    handOff(customerId, owner);
+                } catch (IOException | RuntimeException e) {
+                    failuresCounter.increment();
+                    log.warn("Handing off customer {} to {} failed, will retry", customerId, owner, e);
+                    failed = true;
+                }
+            }
+            if (failed) {
+                Thread.sleep(RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private Set<String> leavingCustomers() {
+        Set<String> customerIds = new TreeSet<>(loadRepository.findCustomerIds());
+        customerIds.addAll(weeklyTotalRepository.findCustomerIds());
+        customerIds.addAll(retiredKeyRepository.findCustomerIds());
+        customerIds.removeIf(customerId -> membership.newOwnerIfLeaving(customerId) == null);
+        return customerIds;
+    }
+
+    private void handOff(String customerId, String owner) throws IOException, InterruptedException {
+        Lock lock = customerLocks.lockFor(customerId);
+        lock.lock();
+        try {
+            CustomerHandoff handoff = transaction.execute(status -> new CustomerHandoff(customerId,
+                loadRepository.findByCustomerId(customerId),
+                weeklyTotalRepository.findByCustomerId(customerId),
+                retiredKeyRepository.findByCustomerId(customerId)));
+            client.handOff(owner, handoff);
+            transaction.executeWithoutResult(status -> {
+                loadRepository.deleteByCustomerId(customerId);
+                weeklyTotalRepository.deleteByCustomerId(customerId);
+                retiredKeyRepository.deleteByCustomerId(customerId);
+            });
+            membership.handedOff(customerId);
+            aggregateStore.evict(customerId);
+            handedOffCounter.increment();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reportComplete(String rebalanceId) throws InterruptedException {
+        for (String node : membership.rebalanceNodes()) {
+            if (node.equals(membership.self())) {
+                membership.handoffCompleted(rebalanceId, node);
+                continue;
+            }
+            while (true) {
+                try {
+                    client.handoffCompleted(node, rebalanceId, membership.self());
+                    break;
+                } catch (IOException e) {
+                    log.warn("Reporting handoff complete to {} failed, will retry", node, e);
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores a customer handed off by its previous owner and starts deciding its loads
+     * here. Anything already stored, from an earlier attempt, is kept as it is.
+     *
+     * <p>No lock is taken: until the customer is marked received its loads still go to
+     * the previous owner, which holds the customer's lock there for the whole handoff.
+     */
+    public void importCustomer(CustomerHandoff handoff) {
+        String customerId = handoff.customerId();
+        Integer latestRolledUpWeek = transaction.execute(status -> {
+            for (CustomerLoad load : handoff.loads()) {
+                if (!loadRepository.existsByLoadIdAndCustomerId(load.getLoadId(), customerId)) {
+                    load.setId(null);
+                    loadRepository.save(load);
+                }
+            }
+            Integer latestWeek = null;
+            for (CustomerWeeklyTotal total : handoff.weeklyTotals()) {
+                if (weeklyTotalRepository.findByCustomerIdAndEpochWeek(customerId, total.getEpochWeek()).isEmpty()) {
+                    total.setId(null);
+                    weeklyTotalRepository.save(total);
+                }
+                latestWeek = latestWeek == null ? total.getEpochWeek() : Math.max(latestWeek, total.getEpochWeek());
+            }
+            for (RetiredLoadKey key : handoff.retiredKeys()) {
+                if (!retiredKeyRepository.existsByLoadIdAndCustomerId(key.getLoadId(), customerId)) {
+                    key.setId(null);
+                    retiredKeyRepository.save(key);
+                }
+            }
+            return latestWeek;
+        });
+        if (latestRolledUpWeek != null) {
+            // Totals only read rollups of weeks this node treats as compacted
+            persistence.compactingBefore(latestRolledUpWeek + 1);
+        }
+        handoff.loads().forEach(load -> seenLoadFilter.put(load.getLoadId(), customerId));
+        handoff.retiredKeys().forEach(key -> seenLoadFilter.put(key.getLoadId(), customerId));
+        aggregateStore.evict(customerId);
+        membership.received(customerId);
+        receivedCounter.increment();
+    }
+}
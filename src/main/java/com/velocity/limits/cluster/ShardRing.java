@@ -0,0 +1,75 @@
+package com.velocity.limits.cluster;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of customer ids onto nodes. Each node is placed on a 64-bit ring
+ * at {@code virtualNodes} points, and a customer belongs to the node at the first point
+ * at or after its own hash. Adding or removing a node only moves the customers between
+ * its points and their predecessors, about one node's share.
+ *
+ * <p>Placement depends only on the node names and {@code virtualNodes}, so every
+ * instance given the same nodes agrees on every owner.
+ */
+public final class ShardRing {
+    private final List<String> nodes;
+    private final long[] points;
+    private final String[] owners;
+
+    public ShardRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A shard ring needs at least one node");
+        }
+        this.nodes = List.copyOf(new LinkedHashSet<>(nodes));
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // On the rare collision the smaller name wins, whatever the node order
+                ring.merge(hash(node + "#" + i), node, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, String> point : ring.entrySet()) {
+            points[i] = point.getKey();
+            owners[i] = point.getValue();
+            i++;
+        }
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public String ownerOf(String customerId) {
+        int i = Arrays.binarySearch(points, hash(customerId));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    /**
+     * FNV-1a over the UTF-16 code units, then the MurmurHash3 finalizer so short ids
+     * that differ in one character still spread over the whole ring.
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
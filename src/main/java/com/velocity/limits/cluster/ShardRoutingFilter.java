@@ -0,0 +1,518 @@
+package com.velocity.limits.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.velocity.limits.batch.LoadStreamProcessor;
+import com.velocity.limits.model.LoadResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Routes {@code POST /api/loads} and {@code /api/loads/async} to the node that owns the load's customer, in front of
+ * the load controller, and {@code GET /api/customers/{id}/limits} to the node that owns
+ * the customer. Single requests owned here pass straight through.
+ *
+ * <p>A single load or limit query is forwarded as is and the owner's response relayed. A bulk
+ * request is read in chunks of up to {@code load.bulk.batch-size} lines, fewer if no more
+ * has arrived yet. Each chunk is split by owner: every other node's lines are forwarded to
+ * it at once, those owned here are decided meanwhile, and the answers are written in
+ * request order before the next chunk is read. Every line is answered on its own: one
+ * whose node failed or could not be reached gets {@link LoadResponse#UNAVAILABLE} and
+ * the rest of the request carries on.
+ *
+ * <p>A node that turns out not to own the customer, because ownership moved during a
+ * rebalance, answers 421, or {@link LoadResponse#MISDIRECTED} for a bulk line; the load
+ * is routed again, up to {@link #MAX_ATTEMPTS} times. A request is never forwarded more
+ * than {@link #MAX_HOPS} times, so nodes that disagree about an owner cannot pass it
+ * around forever.
+ */
+@Component
+@ConditionalOnProperty(name = "load.cluster.enabled", havingValue = "true")
+public class ShardRoutingFilter extends OncePerRequestFilter {
+    static final int MISDIRECTED_REQUEST = 421;
+    private static final int MAX_HOPS = 2;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String LOCAL = "";
+    private static final Set<String> LOAD_PATHS = Set.of("/api/loads", "/api/loads/async");
+    private static final Pattern LIMITS_PATH = Pattern.compile("/api/customers/([^/]+)/limits");
+
+    private record LineKey(String id, String customerId) {}
+
+    private final ClusterMembership membership;
+    private final ClusterClient client;
+    private final ObjectMapper objectMapper;
+    private final LoadStreamProcessor loadStreamProcessor;
+    private final int chunkSize;
+    private final Counter forwardedCounter;
+    private final Counter misdirectedCounter;
+    private final Timer forwardTimer;
+
+    public ShardRoutingFilter(ClusterMembership membership, ClusterClient client, ObjectMapper objectMapper,
+                              LoadStreamProcessor loadStreamProcessor,
+                              @Value("${load.bulk.batch-size:100}") int chunkSize,
+                              MeterRegistry meterRegistry) {
+        this.membership = membership;
+        this.client = client;
+        this.objectMapper = objectMapper;
+        this.loadStreamProcessor = loadStreamProcessor;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.forwardedCounter = Counter.builder("load.cluster.forwarded.total")
+            .description("Load requests and limit queries forwarded to the node owning their customer")
+            .register(meterRegistry);
+        this.misdirectedCounter = Counter.builder("load.cluster.misdirected.total")
+            .description("Forwarded requests the target node no longer owned")
+            .register(meterRegistry);
+        this.forwardTimer = Timer.builder("load.cluster.forward.time")
+            .description("Time taken by the owning node to answer a forwarded request")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return switch (request.getMethod()) {
+            case "POST" -> !LOAD_PATHS.contains(request.getRequestURI());
+            case "GET" -> !LIMITS_PATH.matcher(request.getRequestURI()).matches();
+            default -> true;
+        };
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        int hops = hops(request.getHeader(ClusterClient.HOPS_HEADER));
+        if (hops < 0) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                ClusterClient.HOPS_HEADER + " must be a number of nodes, 0 or more");
+            return;
+        }
+        String contentType = request.getContentType();
+        try {
+            if (request.getMethod().equals("GET")) {
+                Matcher limits = LIMITS_PATH.matcher(request.getRequestURI());
+                limits.matches();
+                String customerId = URLDecoder.decode(limits.group(1), StandardCharsets.UTF_8);
+                routeSingle(request, response, chain, customerId, null, hops);
+                return;
+            }
+            if (contentType != null && contentType.startsWith(NDJSON)) {
+                routeBulk(request, response, hops);
+            } else {
+                byte[] body = request.getInputStream().readAllBytes();
+                LineKey key = parse(body);
+                routeSingle(request, response, chain, key == null ? null : key.customerId(), body, hops);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Interrupted forwarding load");
+        }
+    }
+
+    /**
+     * Routes one load, or a limit query if {@code body} is null. A null
+     * {@code customerId} means the load is invalid.
+     */
+    private void routeSingle(HttpServletRequest request, HttpServletResponse response, FilterChain chain,
+                             String customerId, byte[] body, int hops)
+            throws ServletException, IOException, InterruptedException {
+        String path = request.getQueryString() == null
+            ? request.getRequestURI()
+            : request.getRequestURI() + "?" + request.getQueryString();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            String target = customerId == null ? null : membership.route(customerId);
+            if (target == null) {
+                // Invalid requests are rejected here like any other
+                chain.doFilter(body == null ? request : new BufferedRequest(request, body), response);
+                return;
+            }
+            if (hops >= MAX_HOPS) {
+                break;
+            }
+            HttpResponse<byte[]> forwarded = forward(target, path, body, request.getContentType(), hops);
+            if (forwarded == null) {
+                response.sendError(HttpServletResponse.SC_BAD_GATEWAY, "Owning node unreachable: " + target);
+                return;
+            }
+            if (forwarded.statusCode() != MISDIRECTED_REQUEST) {
+                relay(forwarded, response);
+                return;
+            }
+        }
+        response.sendError(MISDIRECTED_REQUEST, "Customer is moving between nodes, retry");
+    }
+
+    private void routeBulk(HttpServletRequest request, HttpServletResponse response, int hops)
+            throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(NDJSON);
+        OutputStream out = response.getOutputStream();
+        InputStream in = new BufferedInputStream(request.getInputStream());
+        List<byte[]> chunk = new ArrayList<>();
+        byte[] line;
+        while ((line = readLine(in)) != null) {
+            if (line.length > 0) {
+                chunk.add(line);
+            }
+            // Route what has arrived rather than wait for more while the client pauses
+            if (chunk.size() >= chunkSize || !chunk.isEmpty() && in.available() == 0) {
+                routeChunk(request, chunk, hops, out);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            routeChunk(request, chunk, hops, out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Decides {@code lines} on their owners, each node's share at the same time, and
+     * writes their answers in order.
+     */
+    private void routeChunk(HttpServletRequest request, List<byte[]> lines, int hops, OutputStream out)
+            throws IOException {
+        List<LineKey> keys = new ArrayList<>(lines.size());
+        List<Integer> pending = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            keys.add(parse(lines.get(i)));
+            pending.add(i);
+        }
+        byte[][] answers = new byte[lines.size()][];
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            Map<String, List<Integer>> groups = new LinkedHashMap<>();
+            for (int i : pending) {
+                LineKey key = keys.get(i);
+                String target = key == null ? null : membership.route(key.customerId());
+                groups.computeIfAbsent(target == null ? LOCAL : target, g -> new ArrayList<>()).add(i);
+            }
+            Map<String, CompletableFuture<HttpResponse<byte[]>>> forwarded = new HashMap<>();
+            if (hops < MAX_HOPS) {
+                for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+                    if (!group.getKey().equals(LOCAL)) {
+                        forwarded.put(group.getKey(), forwardAsync(group.getKey(), request.getRequestURI(),
+                            join(lines, group.getValue()), request.getContentType(), hops));
+                    }
+                }
+            }
+
+            pending = new ArrayList<>();
+            for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+                List<Integer> indexes = group.getValue();
+                if (group.getKey().equals(LOCAL)) {
+                    // Invalid lines are rejected here like any other
+                    ByteArrayOutputStream decided = new ByteArrayOutputStream();
+                    loadStreamProcessor.process(new ByteArrayInputStream(join(lines, indexes)), decided);
+                    match(indexes, keys, splitLines(decided.toByteArray()), answers, pending);
+                    continue;
+                }
+                CompletableFuture<HttpResponse<byte[]>> answer = forwarded.get(group.getKey());
+                if (answer == null) {
+                    // Forwarded too often already
+                    pending.addAll(indexes);
+                    continue;
+                }
+                HttpResponse<byte[]> decided = answer.join();
+                if (decided == null || decided.statusCode() != HttpServletResponse.SC_OK) {
+                    for (int i : indexes) {
+                        answers[i] = error(keys.get(i), LoadResponse.UNAVAILABLE);
+                    }
+                    continue;
+                }
+                match(indexes, keys, splitLines(decided.body()), answers, pending);
+            }
+            Collections.sort(pending);
+        }
+        for (int i : pending) {
+            answers[i] = error(keys.get(i), LoadResponse.MISDIRECTED);
+        }
+
+        for (byte[] answer : answers) {
+            if (answer != null) {
+                out.write(answer);
+                out.write('\n');
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Gives each line in {@code indexes} its answer from {@code decided}, the response of
+     * the node they were sent to. A node answers its lines in order, skipping duplicates
+     * and invalid lines, so a line's answer is the next one if the ids match. Lines the
+     * node did not own are added to {@code misdirected}.
+     */
+    private void match(List<Integer> indexes, List<LineKey> keys, List<byte[]> decided, byte[][] answers,
+                       List<Integer> misdirected) {
+        int next = 0;
+        for (int i : indexes) {
+            if (next == decided.size()) {
+                return;
+            }
+            JsonNode answer = readTree(decided.get(next));
+            if (answer != null && Objects.equals(keys.get(i), key(answer))) {
+                if (LoadResponse.MISDIRECTED.equals(answer.path("error").asText(null))) {
+                    misdirected.add(i);
+                } else {
+                    answers[i] = decided.get(next);
+                }
+                next++;
+            }
+        }
+    }
+
+    private byte[] error(LineKey key, String error) throws IOException {
+        return objectMapper.writeValueAsBytes(LoadResponse.builder()
+            .id(key.id())
+            .customerId(key.customerId())
+            .error(error)
+            .build());
+    }
+
+    /**
+     * Returns null if the node could not be reached.
+     */
+    private HttpResponse<byte[]> forward(String node, String path, byte[] body, String contentType, int hops)
+            throws InterruptedException {
+        long started = System.nanoTime();
+        try {
+            HttpResponse<byte[]> forwarded = client.forward(node, path, body,
+                contentType == null ? MediaType.APPLICATION_JSON_VALUE : contentType, hops + 1);
+            forwarded(forwarded);
+            return forwarded;
+        } catch (IOException e) {
+            logger.warn("Forwarding request to " + node + " failed", e);
+            return null;
+        } finally {
+            forwardTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Like {@link #forward}, but returns at once. The future completes with null if the
+     * node could not be reached.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> forwardAsync(String node, String path, byte[] body,
+                                                                 String contentType, int hops) {
+        long started = System.nanoTime();
+        return client.forwardAsync(node, path, body,
+                contentType == null ? MediaType.APPLICATION_JSON_VALUE : contentType, hops + 1)
+            .handle((forwarded, e) -> {
+                forwardTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                if (e != null) {
+                    logger.warn("Forwarding request to " + node + " failed", e);
+                    return null;
+                }
+                forwarded(forwarded);
+                return forwarded;
+            });
+    }
+
+    private void forwarded(HttpResponse<byte[]> forwarded) {
+        forwardedCounter.increment();
+        if (forwarded.statusCode() == MISDIRECTED_REQUEST) {
+            misdirectedCounter.increment();
+        }
+    }
+
+    private static void relay(HttpResponse<byte[]> forwarded, HttpServletResponse response) throws IOException {
+        response.setStatus(forwarded.statusCode());
+        forwarded.headers().firstValue("Content-Type").ifPresent(response::setContentType);
+        if (forwarded.body().length > 0) {
+            response.getOutputStream().write(forwarded.body());
+        }
+    }
+
+    /**
+     * The id and customer id of a load request or response, or null if it is not JSON
+     * or has no customer id.
+     */
+    private LineKey parse(byte[] json) {
+        JsonNode node = readTree(json);
+        return node == null ? null : key(node);
+    }
+
+    private static LineKey key(JsonNode node) {
+        if (!node.hasNonNull("customer_id")) {
+            return null;
+        }
+        return new LineKey(node.path("id").asText(null), node.get("customer_id").asText());
+    }
+
+    /**
+     * The value of the hops header, 0 if there is none, or -1 if it is not a number of
+     * hops, so a forged negative value cannot get round {@link #MAX_HOPS}.
+     */
+    private static int hops(String header) {
+        if (header == null) {
+            return 0;
+        }
+        try {
+            return Math.max(-1, Integer.parseInt(header.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The parsed JSON, or null if it is not JSON.
+     */
+    private JsonNode readTree(byte[] json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The next line of {@code in} without its line separator, or null at the end of the
+     * input.
+     */
+    private static byte[] readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        byte[] bytes = line.toByteArray();
+        return bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? Arrays.copyOf(bytes, bytes.length - 1) : bytes;
+    }
+
+    /**
+     * The lines at {@code indexes}, each followed by a newline.
+     */
+    private static byte[] join(List<byte[]> lines, List<Integer> indexes) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int i : indexes) {
+            body.writeBytes(lines.get(i));
+            body.write('\n');
+        }
+        return body.toByteArray();
+    }
+
+    private static List<byte[]> splitLines(byte[] body) {
+        List<byte[]> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= body.length; i++) {
+            if (i == body.length || body[i] == '\n') {
+                int end = i > start && body[i - 1] == '\r' ? i - 1 : i;
+                if (end > start) {
+                    byte[] line = new byte[end - start];
+                    System.arraycopy(body, start, line, 0, line.length);
+                    lines.add(line);
+                }
+                start = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * The request with its body already read into memory.
+     */
+    static final class BufferedRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        BufferedRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return in.read(buffer, offset, length);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                // All of the body is in memory, so a read never blocks
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                /**
+                 * Calls the listener straight away: {@code onDataAvailable} if any of the
+                 * body is left, then {@code onAllDataRead} once the listener has read it all.
+                 */
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    Objects.requireNonNull(listener, "listener");
+                    try {
+                        if (!isFinished()) {
+                            listener.onDataAvailable();
+                        }
+                        if (isFinished()) {
+                            listener.onAllDataRead();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        listener.onError(e);
+                    }
+                }
+            };
+        }
+    }
+}
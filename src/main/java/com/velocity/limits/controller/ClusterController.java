@@ -0,0 +1,112 @@
+package com.velocity.limits.controller;
+
+import com.velocity.limits.cluster.ClusterClient;
+import com.velocity.limits.cluster.ClusterMembership;
+import com.velocity.limits.cluster.CustomerHandoff;
+import com.velocity.limits.cluster.Rebalance;
+import com.velocity.limits.cluster.ShardHandoff;
+import com.velocity.limits.cluster.ShardRing;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Cluster membership and the rebalance protocol. Only {@code GET} and {@code PUT /nodes}
+ * are meant for operators; the rest are called by other nodes.
+ */
+@RestController
+@RequestMapping("/api/cluster")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "load.cluster.enabled", havingValue = "true")
+public class ClusterController {
+    private final ClusterMembership membership;
+    private final ClusterClient client;
+    private final ShardHandoff handoff;
+
+    @GetMapping("/nodes")
+    public Map<String, Object> nodes() {
+        ShardRing previous = membership.previous();
+        Map<String, Object> nodes = new LinkedHashMap<>();
+        nodes.put("nodes", membership.ring().nodes());
+        nodes.put("previous", previous == null ? null : previous.nodes());
+        return nodes;
+    }
+
+    /**
+     * Changes the cluster to {@code nodes}: every node of the old and new ring, this one
+     * included, starts handing off the customers it no longer owns. Returns once all
+     * have started; {@code GET /nodes} shows {@code previous} until they have finished.
+     *
+     * <p>Returns 502 if a node could not be reached. The nodes told before it, always
+     * including this one, have started the rebalance and nothing is undone, since they
+     * may already be handing customers off. Sending the same request to this node again
+     * sends the same rebalance to every node; those that have it already ignore it.
+     */
+    @PutMapping("/nodes")
+    public ResponseEntity<Void> changeNodes(@RequestBody List<String> nodes) throws InterruptedException {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A cluster needs at least one node");
+        }
+        Rebalance rebalance = membership.rebalance();
+        if (rebalance == null) {
+            rebalance = new Rebalance(UUID.randomUUID().toString(), membership.ring().nodes(), nodes);
+        } else if (!rebalance.nodes().equals(nodes)) {
+            throw new IllegalStateException("A rebalance is already in progress");
+        }
+        // This node first, so any node that has the rebalance means this one has it to retry
+        List<String> participants = new ArrayList<>(List.of(membership.self()));
+        rebalance.previous().stream().filter(node -> !participants.contains(node)).forEach(participants::add);
+        nodes.stream().filter(node -> !participants.contains(node)).forEach(participants::add);
+        for (String node : participants) {
+            try {
+                client.rebalance(node, rebalance);
+            } catch (IOException e) {
+                return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+            }
+        }
+        return ResponseEntity.accepted().build();
+    }
+
+    @PostMapping("/rebalance")
+    public void rebalance(@RequestBody Rebalance rebalance) {
+        if (membership.beginRebalance(rebalance)) {
+            handoff.start(rebalance.id());
+        }
+    }
+
+    @PostMapping("/handoff")
+    public void importCustomer(@RequestBody CustomerHandoff customer) {
+        handoff.importCustomer(customer);
+    }
+
+    @PostMapping("/handoff-complete")
+    public void handoffCompleted(@RequestParam String rebalance, @RequestParam String node) {
+        membership.handoffCompleted(rebalance, node);
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> conflict(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
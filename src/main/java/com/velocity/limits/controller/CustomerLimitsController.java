@@ -0,0 +1,51 @@
+package com.velocity.limits.controller;
+
+import com.velocity.limits.model.RemainingLimits;
+import com.velocity.limits.service.LoadLimitService;
+import com.velocity.limits.service.NotOwnerException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+@RestController
+@RequestMapping("/api/customers")
+@RequiredArgsConstructor
+public class CustomerLimitsController {
+    private static final int MISDIRECTED_REQUEST = 421;
+
+    private final LoadLimitService loadLimitService;
+
+    /**
+     * What the customer can still load at {@code time}, or now if it is omitted, under
+     * each of their limit rules. Nothing is recorded.
+     */
+    @GetMapping("/{customerId}/limits")
+    public RemainingLimits remainingLimits(@PathVariable String customerId,
+                                           @RequestParam(required = false)
+                                           @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime time) {
+        return loadLimitService.remainingLimits(customerId, time == null ? ZonedDateTime.now(ZoneOffset.UTC) : time);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    /**
+     * The customer moved to another node after the request was routed here; the caller
+     * should send it again.
+     */
+    @ExceptionHandler(NotOwnerException.class)
+    public ResponseEntity<String> notOwner(NotOwnerException e) {
+        return ResponseEntity.status(MISDIRECTED_REQUEST).body(e.getMessage());
+    }
+}
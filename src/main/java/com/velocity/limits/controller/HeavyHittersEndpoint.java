@@ -0,0 +1,29 @@
+package com.velocity.limits.controller;
+
+import com.velocity.limits.service.HeavyHitters;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code GET /actuator/heavyhitters}: the customers with the most load attempts and
+ * rejections in the last closed window and in the one still being counted.
+ */
+@Component
+@Endpoint(id = "heavyhitters")
+@RequiredArgsConstructor
+public class HeavyHittersEndpoint {
+    private final HeavyHitters heavyHitters;
+
+    @ReadOperation
+    public Map<String, HeavyHitters.Window> heavyHitters() {
+        Map<String, HeavyHitters.Window> windows = new LinkedHashMap<>();
+        windows.put("closed", heavyHitters.closedWindow());
+        windows.put("current", heavyHitters.currentWindow());
+        return windows;
+    }
+}
@@ -1,27 +1,114 @@
 package com.velocity.limits.controller;
 
+import com.velocity.limits.batch.LoadStreamProcessor;
 import com.velocity.limits.model.LoadRequest;
 import com.velocity.limits.model.LoadResponse;
+import com.velocity.limits.service.AdmissionLimiter;
+import com.velocity.limits.service.LoadDecisionExecutor;
 import com.velocity.limits.service.LoadLimitService;
+import com.velocity.limits.service.LoadShedException;
+import com.velocity.limits.service.NotOwnerException;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
 @RestController
 @RequestMapping("/api/loads")
 @RequiredArgsConstructor
 public class LoadController {
+    static final String NDJSON = "application/x-ndjson";
+    private static final int MISDIRECTED_REQUEST = 421;
+
     private final LoadLimitService loadLimitService;
+    private final LoadStreamProcessor loadStreamProcessor;
+    private final LoadDecisionExecutor loadDecisionExecutor;
+    private final AdmissionLimiter admissionLimiter;
 
+    /**
+     * Decides a single load. Returns 429 without deciding it while the
+     * {@link AdmissionLimiter} is full.
+     */
     @PostMapping
     public ResponseEntity<LoadResponse> processLoad(@RequestBody LoadRequest request) {
-        LoadResponse response = loadLimitService.processLoad(request);
+        long started = admissionLimiter.acquire();
+        boolean decided = false;
+        try {
+            LoadResponse response = loadLimitService.processLoad(request);
+            decided = true;
+            return toResponseEntity(response);
+        } finally {
+            admissionLimiter.release(started, decided);
+        }
+    }
+
+    /**
+     * Same as {@link #processLoad}, but the request thread is released while the load
+     * is decided on the {@link LoadDecisionExecutor} pool. Returns 503 if that pool's
+     * queue is full.
+     */
+    @PostMapping("/async")
+    public CompletableFuture<ResponseEntity<LoadResponse>> processLoadAsync(@RequestBody LoadRequest request) {
+        long started = admissionLimiter.acquire();
+        CompletableFuture<LoadResponse> decision;
+        try {
+            decision = loadDecisionExecutor.decide(request);
+        } catch (RejectedExecutionException e) {
+            admissionLimiter.release(started, false);
+            throw e;
+        }
+        return decision
+            .whenComplete((response, e) -> admissionLimiter.release(started, e == null))
+            .thenApply(LoadController::toResponseEntity);
+    }
+
+    /**
+     * Bulk variant: one load request per line in, one response per decided load out,
+     * in request order. Duplicate loads produce no line. A load whose customer another
+     * node decides gets a line with {@code "error":"misdirected"} and is not decided.
+     */
+    @PostMapping(consumes = NDJSON, produces = NDJSON)
+    public void processLoads(InputStream body, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        loadStreamProcessor.process(body, response.getOutputStream());
+    }
+
+    @ExceptionHandler(LoadShedException.class)
+    public ResponseEntity<String> shed(LoadShedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+            .body(e.getMessage());
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> overloaded(RejectedExecutionException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many loads waiting to be decided");
+    }
+
+    /**
+     * The customer moved to another node after the request was routed here; the caller
+     * should send it again.
+     */
+    @ExceptionHandler(NotOwnerException.class)
+    public ResponseEntity<String> notOwner(NotOwnerException e) {
+        return ResponseEntity.status(MISDIRECTED_REQUEST).body(e.getMessage());
+    }
+
+    private static ResponseEntity<LoadResponse> toResponseEntity(LoadResponse response) {
         if (response == null) {
             return ResponseEntity.noContent().build();
         }
         return ResponseEntity.ok(response);
     }
-} 
\ No newline at end of file
+}
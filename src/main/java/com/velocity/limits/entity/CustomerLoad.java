@@ -3,19 +3,27 @@ package com.velocity.limits.entity;
 import jakarta.persistence.*;
 import lombok.Data;
 
-import java.math.BigDecimal;
 import java.time.ZonedDateTime;
 
 @Entity
+@Table(
+    indexes = @Index(name = "idx_customer_load_window", columnList = "customerId, epochWeek, epochDay, accepted"),
+    uniqueConstraints = @UniqueConstraint(name = "uk_customer_load_id", columnNames = {"loadId", "customerId"})
+)
 @Data
 public class CustomerLoad {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence ids let Hibernate batch inserts, unlike IDENTITY
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_load_seq")
+    @SequenceGenerator(name = "customer_load_seq", sequenceName = "customer_load_seq", allocationSize = 50)
     private Long id;
     
     private String loadId;
     private String customerId;
-    private BigDecimal amount;
+    private long amountCents;
     private ZonedDateTime loadTime;
+    // EpochWindows keys of loadTime, used for all window queries
+    private int epochDay;
+    private int epochWeek;
     private boolean accepted;
 } 
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.velocity.limits.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Rolled-up totals of one customer's compacted loads in one ISO week.
+ */
+@Entity
+@Table(
+    indexes = @Index(name = "idx_customer_weekly_total_week", columnList = "epochWeek"),
+    uniqueConstraints = @UniqueConstraint(name = "uk_customer_weekly_total", columnNames = {"customerId", "epochWeek"})
+)
+@Data
+public class CustomerWeeklyTotal {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_weekly_total_seq")
+    @SequenceGenerator(name = "customer_weekly_total_seq", sequenceName = "customer_weekly_total_seq", allocationSize = 50)
+    private Long id;
+
+    private String customerId;
+    private int epochWeek;
+    private long acceptedCount;
+    private long acceptedAmountCents;
+    private long rejectedCount;
+}
@@ -0,0 +1,25 @@
+package com.velocity.limits.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * How far the input file runner has got through one input file. Saved in the
+ * transaction of each batch it commits, so it always matches the loads recorded.
+ *
+ * <p>Input up to {@code inputOffset} has been decided. Its responses are the first
+ * {@code outputLength} bytes of the output file followed by {@code pendingOutput}, the
+ * responses of the batch that saved the checkpoint, which may not have reached the file.
+ */
+@Entity
+@Data
+public class FileCheckpoint {
+    @Id
+    private String inputPath;
+
+    private long inputOffset;
+    private long outputLength;
+
+    @Lob
+    private byte[] pendingOutput;
+}
@@ -0,0 +1,33 @@
+package com.velocity.limits.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The key of a compacted {@link CustomerLoad}, kept so duplicates of it are still
+ * detected until it falls outside the dedup horizon.
+ */
+@Entity
+@Table(
+    indexes = @Index(name = "idx_retired_load_key_day", columnList = "epochDay"),
+    uniqueConstraints = @UniqueConstraint(name = "uk_retired_load_key", columnNames = {"loadId", "customerId"})
+)
+@Data
+@NoArgsConstructor
+public class RetiredLoadKey {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "retired_load_key_seq")
+    @SequenceGenerator(name = "retired_load_key_seq", sequenceName = "retired_load_key_seq", allocationSize = 50)
+    private Long id;
+
+    private String loadId;
+    private String customerId;
+    private int epochDay;
+
+    public RetiredLoadKey(String loadId, String customerId, int epochDay) {
+        this.loadId = loadId;
+        this.customerId = customerId;
+        this.epochDay = epochDay;
+    }
+}
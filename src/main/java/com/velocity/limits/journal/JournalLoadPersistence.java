@@ -0,0 +1,322 @@
+package com.velocity.limits.journal;
+
+import com.velocity.limits.entity.CustomerLoad;
+import com.velocity.limits.model.EpochWindows;
+import com.velocity.limits.model.VelocityTotals;
+import com.velocity.limits.service.LoadPersistence;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Keeps per-customer state in memory and appends every recorded load to a
+ * {@link LoadJournal}. The state is snapshotted every {@code snapshot-interval-ms} and on
+ * shutdown; startup restores the latest valid snapshot and replays the journal after it.
+ *
+ * <p>Snapshots are fuzzy: loads keep being recorded while one is written. Each customer
+ * remembers the sequence of the last load applied to it, and replay skips loads a
+ * customer already has. The two latest snapshots are kept, along with the journal
+ * segments the older one still needs.
+ */
+@Component
+@ConditionalOnProperty(name = "load.persistence.mode", havingValue = "journal")
+public class JournalLoadPersistence implements LoadPersistence {
+    private static final Logger log = LoggerFactory.getLogger(JournalLoadPersistence.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x564C5331;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final int SNAPSHOTS_KEPT = 2;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean forceOnWrite;
+
+    private final Map<String, CustomerState> customers = new ConcurrentHashMap<>();
+    private final Object snapshotLock = new Object();
+    private LoadJournal journal;
+
+    public JournalLoadPersistence(@Value("${load.journal.directory:data/journal}") String directory,
+                                  @Value("${load.journal.segment-size:67108864}") int segmentSize,
+                                  @Value("${load.journal.force-on-write:false}") boolean forceOnWrite) {
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSize;
+        this.forceOnWrite = forceOnWrite;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        long started = System.nanoTime();
+        Files.createDirectories(directory);
+        long snapshotSequence = restoreSnapshot();
+        long[] replayed = new long[1];
+        journal = LoadJournal.open(directory, segmentSize, forceOnWrite, snapshotSequence, (sequence, load) -> {
+            customers.computeIfAbsent(load.getCustomerId(), id -> new CustomerState()).apply(sequence, load);
+            replayed[0]++;
+        });
+        log.info("Journal restored in {} ms: customers={}, snapshotSequence={}, replayed={}",
+            (System.nanoTime() - started) / 1_000_000, customers.size(), snapshotSequence, replayed[0]);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        snapshot();
+        journal.close();
+    }
+
+    @Override
+    public boolean exists(String loadId, String customerId) {
+        CustomerState state = customers.get(customerId);
+        return state != null && state.contains(loadId);
+    }
+
+    @Override
+    public VelocityTotals totals(String customerId, int epochDay, int epochWeek) {
+        CustomerState state = customers.get(customerId);
+        return state == null ? VelocityTotals.EMPTY : state.totals(epochDay, epochWeek);
+    }
+
+    @Override
+    public Integer latestAcceptedEpochDay(String customerId) {
+        CustomerState state = customers.get(customerId);
+        return state == null ? null : state.latestAcceptedDay();
+    }
+
+    @Override
+    public void record(CustomerLoad load) {
+        CustomerState state = customers.computeIfAbsent(load.getCustomerId(), id -> new CustomerState());
+        // Appending under the customer's monitor keeps its loads applied in sequence order
+        synchronized (state) {
+            long sequence;
+            try {
+                sequence = journal.append(load);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            state.apply(sequence, load);
+        }
+    }
+
+    @Override
+    public void forEachKey(BiConsumer<String, String> action) {
+        customers.forEach((customerId, state) -> {
+            for (String loadId : state.loadIds()) {
+                action.accept(loadId, customerId);
+            }
+        });
+    }
+
+    @Scheduled(initialDelayString = "${load.journal.snapshot-interval-ms:60000}",
+               fixedDelayString = "${load.journal.snapshot-interval-ms:60000}")
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            long started = System.nanoTime();
+            long sequence = journal.lastSequence();
+            Path snapshot = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+            if (Files.exists(snapshot)) {
+                return;
+            }
+
+            Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+            try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+                CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32C());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeLong(sequence);
+                for (Map.Entry<String, CustomerState> entry : customers.entrySet()) {
+                    out.writeBoolean(true);
+                    out.writeUTF(entry.getKey());
+                    entry.getValue().writeTo(out);
+                }
+                out.writeBoolean(false);
+                out.writeLong(checked.getChecksum().getValue());
+                out.flush();
+                // Loads a customer was snapshotted with must be durable before the snapshot is
+                journal.flush();
+                file.getChannel().force(true);
+            }
+            Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+
+            List<Path> snapshots = listSnapshots();
+            for (int i = 0; i < snapshots.size() - SNAPSHOTS_KEPT; i++) {
+                Files.deleteIfExists(snapshots.get(i));
+            }
+            List<Path> kept = listSnapshots();
+            journal.deleteThrough(sequenceOf(kept.get(0)));
+            log.info("Journal snapshot written in {} ms: sequence={}, customers={}",
+                (System.nanoTime() - started) / 1_000_000, sequence, customers.size());
+        }
+    }
+
+    /**
+     * Restores the newest snapshot that passes its checksum and returns its sequence,
+     * or 0 if there is none.
+     */
+    private long restoreSnapshot() throws IOException {
+        List<Path> snapshots = listSnapshots();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path snapshot = snapshots.get(i);
+            try {
+                Map<String, CustomerState> restored = readSnapshot(snapshot);
+                customers.putAll(restored);
+                return sequenceOf(snapshot);
+            } catch (IOException e) {
+                log.warn("Skipping unreadable journal snapshot {}", snapshot, e);
+            }
+        }
+        return 0;
+    }
+
+    private static Map<String, CustomerState> readSnapshot(Path snapshot) throws IOException {
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshot)), new CRC32C())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readLong() != sequenceOf(snapshot)) {
+                throw new IOException("Not a journal snapshot: " + snapshot);
+            }
+            Map<String, CustomerState> restored = new HashMap<>();
+            while (in.readBoolean()) {
+                restored.put(in.readUTF(), CustomerState.readFrom(in));
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("Journal snapshot checksum mismatch: " + snapshot);
+            }
+            return restored;
+        }
+    }
+
+    private List<Path> listSnapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(SNAPSHOT_PREFIX))
+                .filter(path -> path.getFileName().toString().endsWith(SNAPSHOT_SUFFIX))
+                .sorted()
+                .toList();
+        }
+    }
+
+    private static long sequenceOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    /**
+     * Everything the decision path needs about one customer: the ids of all recorded
+     * loads and accepted totals per day.
+     */
+    private static final class CustomerState {
+        private long lastSequence;
+        private final Set<String> loadIds = new HashSet<>();
+        private final Map<Integer, long[]> acceptedByDay = new HashMap<>();
+        private int latestAcceptedDay = Integer.MIN_VALUE;
+
+        synchronized void apply(long sequence, CustomerLoad load) {
+            if (sequence <= lastSequence) {
+                return;
+            }
+            lastSequence = sequence;
+            loadIds.add(load.getLoadId());
+            if (load.isAccepted()) {
+                long[] day = acceptedByDay.computeIfAbsent(load.getEpochDay(), key -> new long[2]);
+                day[0]++;
+                day[1] += load.getAmountCents();
+                latestAcceptedDay = Math.max(latestAcceptedDay, load.getEpochDay());
+            }
+        }
+
+        synchronized boolean contains(String loadId) {
+            return loadIds.contains(loadId);
+        }
+
+        synchronized List<String> loadIds() {
+            return new ArrayList<>(loadIds);
+        }
+
+        synchronized Integer latestAcceptedDay() {
+            return latestAcceptedDay == Integer.MIN_VALUE ? null : latestAcceptedDay;
+        }
+
+        synchronized VelocityTotals totals(int epochDay, int epochWeek) {
+            long[] day = acceptedByDay.getOrDefault(epochDay, new long[2]);
+            long weekCount = 0;
+            long weekAmount = 0;
+            int firstDay = EpochWindows.firstDayOfWeek(epochWeek);
+            for (int d = firstDay; d < firstDay + 7; d++) {
+                long[] totals = acceptedByDay.get(d);
+                if (totals != null) {
+                    weekCount += totals[0];
+                    weekAmount += totals[1];
+                }
+            }
+            long monthAmount = 0;
+            int epochMonth = EpochWindows.epochMonth(epochDay);
+            int lastDay = EpochWindows.firstDayOfMonth(epochMonth + 1);
+            for (int d = EpochWindows.firstDayOfMonth(epochMonth); d < lastDay; d++) {
+                long[] totals = acceptedByDay.get(d);
+                if (totals != null) {
+                    monthAmount += totals[1];
+                }
+            }
+            return new VelocityTotals(day[0], day[1], weekCount, weekAmount, monthAmount);
+        }
+
+        synchronized void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(lastSequence);
+            out.writeInt(latestAcceptedDay);
+            out.writeInt(loadIds.size());
+            for (String loadId : loadIds) {
+                out.writeUTF(loadId);
+            }
+            out.writeInt(acceptedByDay.size());
+            for (Map.Entry<Integer, long[]> day : acceptedByDay.entrySet()) {
+                out.writeInt(day.getKey());
+                out.writeLong(day.getValue()[0]);
+                out.writeLong(day.getValue()[1]);
+            }
+        }
+
+        static CustomerState readFrom(DataInputStream in) throws IOException {
+            CustomerState state = new CustomerState();
+            state.lastSequence = in.readLong();
+            state.latestAcceptedDay = in.readInt();
+            int ids = in.readInt();
+            for (int i = 0; i < ids; i++) {
+                state.loadIds.add(in.readUTF());
+            }
+            int days = in.readInt();
+            for (int i = 0; i < days; i++) {
+                state.acceptedByDay.put(in.readInt(), new long[] {in.readLong(), in.readLong()});
+            }
+            return state;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.velocity.limits.journal;
+
+import com.velocity.limits.entity.CustomerLoad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of recorded loads, split into fixed-size memory-mapped segment
+ * files. Each load gets the next sequence number, starting at 1.
+ *
+ * <p>A segment starts with a header holding the sequence of its first record, followed
+ * by records of {@code [length][crc32c][payload]}. The length is written last, so a
+ * record torn by a crash reads as zero length or fails its checksum; either marks the
+ * end of the journal.
+ *
+ * <p>Appends are written to the mapped pages and so survive a process crash. They only
+ * survive an OS crash once forced, on each append with {@code forceOnWrite} or by
+ * {@link #flush}.
+ */
+public final class LoadJournal implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(LoadJournal.class);
+
+    private static final int MAGIC = 0x564C4A31;
+    private static final int SEGMENT_HEADER_SIZE = 12;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Receives replayed loads in sequence order.
+     */
+    @FunctionalInterface
+    public interface Replay {
+        void accept(long sequence, CustomerLoad load);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean forceOnWrite;
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private final CRC32C crc = new CRC32C();
+
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long nextSequence;
+    private long tailSequence;
+
+    private LoadJournal(Path directory, int segmentSize, boolean forceOnWrite) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.forceOnWrite = forceOnWrite;
+    }
+
+    /**
+     * Opens the journal in {@code directory}, replaying every load after
+     * {@code afterSequence} to {@code replay}, and positions it for appending.
+     *
+     * @throws IOException if a segment other than the last is corrupt
+     */
+    public static LoadJournal open(Path directory, int segmentSize, boolean forceOnWrite,
+                                   long afterSequence, Replay replay) throws IOException {
+        Files.createDirectories(directory);
+        LoadJournal journal = new LoadJournal(directory, segmentSize, forceOnWrite);
+        journal.recover(afterSequence, replay);
+        return journal;
+    }
+
+    /**
+     * Appends {@code load} and returns its sequence number.
+     */
+    public synchronized long append(CustomerLoad load) throws IOException {
+        int length = encode(load);
+        if (RECORD_HEADER_SIZE + length > segmentSize - SEGMENT_HEADER_SIZE) {
+            throw new IOException("Load record of " + length + " bytes does not fit a journal segment");
+        }
+        if (segment.remaining() < RECORD_HEADER_SIZE + length) {
+            roll();
+        }
+
+        int position = segment.position();
+        crc.reset();
+        crc.update(scratch.array(), 0, length);
+        segment.putInt(position + 4, (int) crc.getValue());
+        segment.put(position + RECORD_HEADER_SIZE, scratch.array(), 0, length);
+        segment.putInt(position, length);
+        segment.position(position + RECORD_HEADER_SIZE + length);
+        if (forceOnWrite) {
+            segment.force();
+        }
+        return nextSequence++;
+    }
+
+    /**
+     * The sequence of the last appended load, or 0 if there is none.
+     */
+    public synchronized long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    public synchronized void flush() {
+        segment.force();
+    }
+
+    /**
+     * Deletes segments holding only loads up to and including {@code sequence}.
+     */
+    public synchronized void deleteThrough(long sequence) throws IOException {
+        while (segments.size() > 1) {
+            Map.Entry<Long, Path> oldest = segments.firstEntry();
+            long nextFirst = segments.higherKey(oldest.getKey());
+            if (nextFirst - 1 > sequence) {
+                break;
+            }
+            Files.deleteIfExists(oldest.getValue());
+            segments.remove(oldest.getKey());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void recover(long afterSequence, Replay replay) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                .forEach(path -> segments.put(firstSequenceOf(path), path));
+        }
+
+        nextSequence = afterSequence + 1;
+        int tailPosition = -1;
+        for (Map.Entry<Long, Path> entry : segments.entrySet()) {
+            Long nextFirst = segments.higherKey(entry.getKey());
+            if (nextFirst != null && nextFirst - 1 <= afterSequence) {
+                continue;
+            }
+            boolean last = nextFirst == null;
+            tailPosition = replaySegment(entry.getKey(), entry.getValue(), afterSequence, replay, last);
+        }
+
+        if (segments.isEmpty() || tailSequence != nextSequence) {
+            // Also when a snapshot is ahead of the journal, so sequences stay contiguous per segment
+            roll();
+        } else {
+            Path last = segments.lastEntry().getValue();
+            channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            segment.position(tailPosition);
+        }
+    }
+
+    /**
+     * Replays one segment and returns the position after its last valid record.
+     */
+    private int replaySegment(long firstSequence, Path path, long afterSequence, Replay replay, boolean last)
+            throws IOException {
+        try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            if (buffer.getInt(0) != MAGIC || buffer.getLong(4) != firstSequence) {
+                throw new IOException("Not a journal segment: " + path);
+            }
+
+            long sequence = firstSequence;
+            int position = SEGMENT_HEADER_SIZE;
+            while (position + RECORD_HEADER_SIZE <= segmentSize) {
+                int length = buffer.getInt(position);
+                if (length == 0) {
+                    break;
+                }
+                if (length < 0 || position + RECORD_HEADER_SIZE + length > segmentSize
+                        || !checksumMatches(buffer, position, length)) {
+                    if (!last) {
+                        throw new IOException("Corrupt journal segment " + path + " at offset " + position);
+                    }
+                    log.warn("Truncating torn journal tail: segment={}, offset={}", path, position);
+                    for (int i = position; i < segmentSize; i++) {
+                        buffer.put(i, (byte) 0);
+                    }
+                    buffer.force();
+                    break;
+                }
+                if (sequence > afterSequence) {
+                    replay.accept(sequence, decode(buffer.slice(position + RECORD_HEADER_SIZE, length)));
+                }
+                sequence++;
+                position += RECORD_HEADER_SIZE + length;
+            }
+            nextSequence = Math.max(nextSequence, sequence);
+            tailSequence = sequence;
+            return position;
+        }
+    }
+
+    private boolean checksumMatches(ByteBuffer buffer, int position, int length) {
+        crc.reset();
+        crc.update(buffer.slice(position + RECORD_HEADER_SIZE, length));
+        return (int) crc.getValue() == buffer.getInt(position + 4);
+    }
+
+    private void roll() throws IOException {
+        if (segment != null) {
+            segment.force();
+            channel.close();
+        }
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.putInt(MAGIC).putLong(nextSequence);
+        segments.put(nextSequence, path);
+    }
+
+    private static long firstSequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private int encode(CustomerLoad load) {
+        byte[] loadId = load.getLoadId().getBytes(StandardCharsets.UTF_8);
+        byte[] customerId = load.getCustomerId().getBytes(StandardCharsets.UTF_8);
+        int length = 4 + loadId.length + 4 + customerId.length + 8 + 8 + 4 + 4 + 4 + 4 + 1;
+        if (scratch.capacity() < length) {
+            scratch = ByteBuffer.allocate(Math.max(length, scratch.capacity() * 2));
+        }
+        ZonedDateTime time = load.getLoadTime();
+        scratch.clear();
+        scratch.putInt(loadId.length).put(loadId)
+            .putInt(customerId.length).put(customerId)
+            .putLong(load.getAmountCents())
+            .putLong(time.toEpochSecond())
+            .putInt(time.getNano())
+            .putInt(time.getOffset().getTotalSeconds())
+            .putInt(load.getEpochDay())
+            .putInt(load.getEpochWeek())
+            .put((byte) (load.isAccepted() ? 1 : 0));
+        return length;
+    }
+
+    private static CustomerLoad decode(ByteBuffer payload) {
+        CustomerLoad load = new CustomerLoad();
+        load.setLoadId(readString(payload));
+        load.setCustomerId(readString(payload));
+        load.setAmountCents(payload.getLong());
+        long epochSecond = payload.getLong();
+        int nano = payload.getInt();
+        ZoneOffset offset = ZoneOffset.ofTotalSeconds(payload.getInt());
+        load.setLoadTime(ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nano), offset));
+        load.setEpochDay(payload.getInt());
+        load.setEpochWeek(payload.getInt());
+        load.setAccepted(payload.get() == 1);
+        return load;
+    }
+
+    private static String readString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
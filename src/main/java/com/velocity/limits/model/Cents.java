@@ -0,0 +1,73 @@
+package com.velocity.limits.model;
+
+/**
+ * Money amounts as a {@code long} count of cents.
+ */
+public final class Cents {
+    private static final long MAX_DOLLARS = Long.MAX_VALUE / 100 - 1;
+
+    private Cents() {
+    }
+
+    /**
+     * Parses an amount such as {@code "$123.45"}, {@code "123.4"} or {@code "$123"}.
+     * The dollar sign is optional; anything else that is not a non-negative amount with
+     * at most two decimal places is rejected.
+     *
+     * @throws IllegalArgumentException if the amount is malformed or has sub-cent digits
+     */
+    public static long parse(CharSequence amount) {
+        int length = amount.length();
+        int i = length > 0 && amount.charAt(0) == '$' ? 1 : 0;
+
+        int dollarsStart = i;
+        long dollars = 0;
+        while (i < length && isDigit(amount.charAt(i))) {
+            dollars = dollars * 10 + (amount.charAt(i) - '0');
+            if (dollars > MAX_DOLLARS) {
+                throw invalid(amount);
+            }
+            i++;
+        }
+        if (i == dollarsStart) {
+            throw invalid(amount);
+        }
+
+        long cents = 0;
+        if (i < length && amount.charAt(i) == '.') {
+            i++;
+            int fractionStart = i;
+            while (i < length && isDigit(amount.charAt(i))) {
+                cents = cents * 10 + (amount.charAt(i) - '0');
+                i++;
+            }
+            int fractionDigits = i - fractionStart;
+            if (fractionDigits == 0 || fractionDigits > 2) {
+                throw invalid(amount);
+            }
+            if (fractionDigits == 1) {
+                cents *= 10;
+            }
+        }
+        if (i != length) {
+            throw invalid(amount);
+        }
+        return dollars * 100 + cents;
+    }
+
+    /**
+     * Formats cents as a plain decimal amount, e.g. {@code 12345} as {@code "123.45"}.
+     */
+    public static String format(long cents) {
+        long fraction = Math.abs(cents % 100);
+        return (cents < 0 ? "-" : "") + Math.abs(cents / 100) + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static IllegalArgumentException invalid(CharSequence amount) {
+        return new IllegalArgumentException("Invalid amount: " + amount);
+    }
+}
@@ -0,0 +1,57 @@
+package com.velocity.limits.model;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+
+/**
+ * Day, week and month numbers used to bucket loads for velocity limits. A day runs from
+ * midnight to midnight in the load's own offset, a week is the ISO week, Monday
+ * through Sunday, and a month is the calendar month. All are plain counters, so
+ * windows compare by equality.
+ */
+public final class EpochWindows {
+    private static final int SECONDS_PER_DAY = 86_400;
+
+    // 1970-01-01 was a Thursday, three days after the Monday that starts week 0
+    private static final int EPOCH_DAY_OF_WEEK_OFFSET = 3;
+
+    private EpochWindows() {
+    }
+
+    /**
+     * Days since 1970-01-01, counted in the time's own offset.
+     */
+    public static int epochDay(ZonedDateTime time) {
+        long localSeconds = time.toEpochSecond() + time.getOffset().getTotalSeconds();
+        return Math.toIntExact(Math.floorDiv(localSeconds, SECONDS_PER_DAY));
+    }
+
+    /**
+     * ISO weeks since the week containing 1970-01-01.
+     */
+    public static int epochWeek(int epochDay) {
+        return Math.floorDiv(epochDay + EPOCH_DAY_OF_WEEK_OFFSET, 7);
+    }
+
+    /**
+     * The epoch day of the Monday starting {@code epochWeek}.
+     */
+    public static int firstDayOfWeek(int epochWeek) {
+        return epochWeek * 7 - EPOCH_DAY_OF_WEEK_OFFSET;
+    }
+
+    /**
+     * Calendar months since January 1970.
+     */
+    public static int epochMonth(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return (date.getYear() - 1970) * 12 + date.getMonthValue() - 1;
+    }
+
+    /**
+     * The epoch day of the first of {@code epochMonth}.
+     */
+    public static int firstDayOfMonth(int epochMonth) {
+        return (int) LocalDate.of(1970 + Math.floorDiv(epochMonth, 12), Math.floorMod(epochMonth, 12) + 1, 1).toEpochDay();
+    }
+}
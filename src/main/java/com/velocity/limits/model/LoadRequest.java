@@ -1,10 +1,15 @@
 package com.velocity.limits.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
-import java.math.BigDecimal;
 import java.time.ZonedDateTime;
 
 @Data
@@ -19,11 +24,35 @@ public class LoadRequest {
     
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss'Z'", timezone = "UTC")
     private ZonedDateTime time;
-    
-    public BigDecimal getLoadAmountValue() {
-        if (loadAmount == null) {
-            return null;
+
+    private static final long UNPARSED = -1;
+
+    // Parsed on first use and cleared whenever loadAmount changes
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private long loadAmountCents = UNPARSED;
+
+    public void setLoadAmount(String loadAmount) {
+        this.loadAmount = loadAmount;
+        this.loadAmountCents = UNPARSED;
+    }
+
+    /**
+     * The load amount in cents.
+     *
+     * @throws IllegalArgumentException if the amount is missing, malformed or has sub-cent digits
+     */
+    @JsonIgnore
+    public long getLoadAmountCents() {
+        if (loadAmountCents == UNPARSED) {
+            if (loadAmount == null) {
+                throw new IllegalArgumentException("Load amount is required");
+            }
+            loadAmountCents = Cents.parse(loadAmount);
         }
-        return new BigDecimal(loadAmount.replace("$", ""));
+        return loadAmountCents;
     }
 } 
\ No newline at end of file
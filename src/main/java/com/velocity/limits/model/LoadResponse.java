@@ -1,5 +1,6 @@
 package com.velocity.limits.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import lombok.Builder;
@@ -7,12 +8,33 @@ import lombok.Data;
 
 @Data
 @Builder
-@JsonPropertyOrder({"id", "customer_id", "accepted"})
+@JsonPropertyOrder({"id", "customer_id", "accepted", "rejected_by", "error"})
 public class LoadResponse {
+    /**
+     * The load was sent to a node that does not decide its customer; send it again.
+     */
+    public static final String MISDIRECTED = "misdirected";
+
+    /**
+     * The node deciding the load's customer failed or could not be reached, so the load
+     * may or may not have been decided. Sending it again gives its decision if it was
+     * not, and no response, as for any duplicate, if it was.
+     */
+    public static final String UNAVAILABLE = "unavailable";
+
     private String id;
     
     @JsonProperty("customer_id")
     private String customerId;
     
     private boolean accepted;
+
+    // The limit rule a rejected load broke, only set with load.limits.report-rule
+    @JsonProperty("rejected_by")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String rejectedBy;
+
+    // Why the load was not decided, with accepted false; null for a decided load
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String error;
 } 
\ No newline at end of file
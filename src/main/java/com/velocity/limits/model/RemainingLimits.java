@@ -0,0 +1,24 @@
+package com.velocity.limits.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+@Data
+@Builder
+@JsonPropertyOrder({"customer_id", "time", "remaining"})
+public class RemainingLimits {
+    @JsonProperty("customer_id")
+    private String customerId;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss'Z'", timezone = "UTC")
+    private ZonedDateTime time;
+
+    // Keyed by limit rule in check order: loads left for count limits, a dollar amount for the others
+    private Map<String, Object> remaining;
+}
@@ -0,0 +1,10 @@
+package com.velocity.limits.model;
+
+/**
+ * Accepted load totals for a customer in the day, week and month containing a load,
+ * see {@link EpochWindows}. Amounts are in cents.
+ */
+public record VelocityTotals(long dailyCount, long dailyAmountCents, long weeklyCount, long weeklyAmountCents,
+                             long monthlyAmountCents) {
+    public static final VelocityTotals EMPTY = new VelocityTotals(0, 0, 0, 0, 0);
+}
@@ -1,18 +1,84 @@
 package com.velocity.limits.repository;
 
 import com.velocity.limits.entity.CustomerLoad;
+import com.velocity.limits.entity.RetiredLoadKey;
+import com.velocity.limits.model.EpochWindows;
+import com.velocity.limits.model.VelocityTotals;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 
-import java.math.BigDecimal;
-import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
 
 public interface CustomerLoadRepository extends JpaRepository<CustomerLoad, Long> {
     boolean existsByLoadIdAndCustomerId(String loadId, String customerId);
     
-    @Query("SELECT SUM(c.amount) FROM CustomerLoad c WHERE c.customerId = ?1 AND c.loadTime >= ?2 AND c.loadTime <= ?3 AND c.accepted = true" )
-    BigDecimal sumAmountByCustomerIdAndLoadTimeBetween(String customerId, ZonedDateTime start, ZonedDateTime end);
-    
-    @Query("SELECT COUNT(c) FROM CustomerLoad c WHERE c.customerId = ?1 AND c.loadTime >= ?2 AND c.loadTime <= ?3 AND c.accepted = true")
-    long countByCustomerIdAndLoadTimeBetween(String customerId, ZonedDateTime start, ZonedDateTime end);
-} 
\ No newline at end of file
+    /**
+     * Daily, weekly and monthly totals of accepted loads for a load on {@code epochDay},
+     * in one round trip. The epoch day must fall inside the epoch week.
+     */
+    default VelocityTotals sumTotalsByCustomerId(String customerId, int epochDay, int epochWeek) {
+        int monthStart = EpochWindows.firstDayOfMonth(EpochWindows.epochMonth(epochDay));
+        int monthEnd = EpochWindows.firstDayOfMonth(EpochWindows.epochMonth(epochDay) + 1) - 1;
+        return sumTotalsInWindows(customerId, epochDay, epochWeek, monthStart, monthEnd,
+            Math.min(epochWeek, EpochWindows.epochWeek(monthStart)),
+            Math.max(epochWeek, EpochWindows.epochWeek(monthEnd)));
+    }
+
+    /**
+     * Totals over the loads in weeks {@code fromWeek} to {@code toWeek}, which must cover
+     * both {@code epochWeek} and the days {@code monthStart} to {@code monthEnd}, so the
+     * scan stays on the customer's window index.
+     */
+    @Query("SELECT new com.velocity.limits.model.VelocityTotals("
+            + "COALESCE(SUM(CASE WHEN c.epochDay = ?2 THEN 1L ELSE 0L END), 0L), "
+            + "COALESCE(SUM(CASE WHEN c.epochDay = ?2 THEN c.amountCents ELSE 0L END), 0L), "
+            + "COALESCE(SUM(CASE WHEN c.epochWeek = ?3 THEN 1L ELSE 0L END), 0L), "
+            + "COALESCE(SUM(CASE WHEN c.epochWeek = ?3 THEN c.amountCents ELSE 0L END), 0L), "
+            + "COALESCE(SUM(CASE WHEN c.epochDay BETWEEN ?4 AND ?5 THEN c.amountCents ELSE 0L END), 0L)) "
+            + "FROM CustomerLoad c WHERE c.customerId = ?1 AND c.epochWeek BETWEEN ?6 AND ?7 AND c.accepted = true")
+    VelocityTotals sumTotalsInWindows(String customerId, int epochDay, int epochWeek, int monthStart, int monthEnd,
+                                      int fromWeek, int toWeek);
+
+    @Query("SELECT c.id AS id, c.loadId AS loadId, c.customerId AS customerId FROM CustomerLoad c WHERE c.id > ?1 ORDER BY c.id")
+    List<LoadKeyView> findLoadKeysAfter(long id, Pageable page);
+
+    @Query("SELECT MAX(c.epochDay) FROM CustomerLoad c WHERE c.customerId = ?1 AND c.accepted = true")
+    Integer findLatestAcceptedEpochDay(String customerId);
+
+    @Query("SELECT MAX(c.epochDay) FROM CustomerLoad c")
+    Integer findLatestEpochDay();
+
+    @Query("SELECT DISTINCT c.epochWeek FROM CustomerLoad c WHERE c.epochDay < ?1 AND c.accepted IN ?2 ORDER BY c.epochWeek")
+    List<Integer> findEpochWeeksWithLoadsBefore(int beforeDay, Collection<Boolean> acceptedStates);
+
+    /**
+     * Per-customer totals of the loads in {@code epochWeek} before {@code beforeDay}
+     * whose accepted flag is one of {@code acceptedStates}.
+     */
+    @Query("SELECT c.customerId AS customerId, "
+            + "SUM(CASE WHEN c.accepted = true THEN 1L ELSE 0L END) AS acceptedCount, "
+            + "SUM(CASE WHEN c.accepted = true THEN c.amountCents ELSE 0L END) AS acceptedAmountCents, "
+            + "SUM(CASE WHEN c.accepted = false THEN 1L ELSE 0L END) AS rejectedCount "
+            + "FROM CustomerLoad c WHERE c.epochWeek = ?1 AND c.epochDay < ?2 AND c.accepted IN ?3 GROUP BY c.customerId")
+    List<WeeklyRollupView> rollupWeek(int epochWeek, int beforeDay, Collection<Boolean> acceptedStates);
+
+    @Query("SELECT new com.velocity.limits.entity.RetiredLoadKey(c.loadId, c.customerId, c.epochDay) "
+            + "FROM CustomerLoad c WHERE c.epochWeek = ?1 AND c.epochDay < ?2 AND c.accepted IN ?3 AND c.epochDay >= ?4")
+    List<RetiredLoadKey> findKeysToRetire(int epochWeek, int beforeDay, Collection<Boolean> acceptedStates, int fromDay);
+
+    @Modifying
+    @Query("DELETE FROM CustomerLoad c WHERE c.epochWeek = ?1 AND c.epochDay < ?2 AND c.accepted IN ?3")
+    int deleteCompacted(int epochWeek, int beforeDay, Collection<Boolean> acceptedStates);
+
+    @Query("SELECT DISTINCT c.customerId FROM CustomerLoad c")
+    List<String> findCustomerIds();
+
+    List<CustomerLoad> findByCustomerId(String customerId);
+
+    @Modifying
+    @Query("DELETE FROM CustomerLoad c WHERE c.customerId = ?1")
+    int deleteByCustomerId(String customerId);
+}
\ No newline at end of file
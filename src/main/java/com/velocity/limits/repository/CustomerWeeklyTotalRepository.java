@@ -0,0 +1,39 @@
+package com.velocity.limits.repository;
+
+import com.velocity.limits.entity.CustomerWeeklyTotal;
+import com.velocity.limits.model.VelocityTotals;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface CustomerWeeklyTotalRepository extends JpaRepository<CustomerWeeklyTotal, Long> {
+    List<CustomerWeeklyTotal> findByEpochWeek(int epochWeek);
+
+    /**
+     * Rolled-up weekly count and amount for {@code epochWeek}, and the rolled-up amount of
+     * weeks {@code fromWeek} to {@code toWeek} as the monthly amount. Daily figures are zero.
+     */
+    @Query("SELECT new com.velocity.limits.model.VelocityTotals(0L, 0L, "
+            + "COALESCE(SUM(CASE WHEN w.epochWeek = ?2 THEN w.acceptedCount ELSE 0L END), 0L), "
+            + "COALESCE(SUM(CASE WHEN w.epochWeek = ?2 THEN w.acceptedAmountCents ELSE 0L END), 0L), "
+            + "COALESCE(SUM(w.acceptedAmountCents), 0L)) "
+            + "FROM CustomerWeeklyTotal w WHERE w.customerId = ?1 AND w.epochWeek BETWEEN ?3 AND ?4")
+    VelocityTotals sumRollups(String customerId, int epochWeek, int fromWeek, int toWeek);
+
+    @Query("SELECT MAX(w.epochWeek) FROM CustomerWeeklyTotal w")
+    Integer findLatestEpochWeek();
+
+    @Query("SELECT DISTINCT w.customerId FROM CustomerWeeklyTotal w")
+    List<String> findCustomerIds();
+
+    List<CustomerWeeklyTotal> findByCustomerId(String customerId);
+
+    Optional<CustomerWeeklyTotal> findByCustomerIdAndEpochWeek(String customerId, int epochWeek);
+
+    @Modifying
+    @Query("DELETE FROM CustomerWeeklyTotal w WHERE w.customerId = ?1")
+    int deleteByCustomerId(String customerId);
+}
@@ -0,0 +1,7 @@
+package com.velocity.limits.repository;
+
+import com.velocity.limits.entity.FileCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface FileCheckpointRepository extends JpaRepository<FileCheckpoint, String> {
+}
@@ -0,0 +1,12 @@
+package com.velocity.limits.repository;
+
+/**
+ * The identifying columns of a recorded load.
+ */
+public interface LoadKeyView {
+    Long getId();
+
+    String getLoadId();
+
+    String getCustomerId();
+}
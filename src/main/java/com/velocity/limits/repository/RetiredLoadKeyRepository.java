@@ -0,0 +1,29 @@
+package com.velocity.limits.repository;
+
+import com.velocity.limits.entity.RetiredLoadKey;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface RetiredLoadKeyRepository extends JpaRepository<RetiredLoadKey, Long> {
+    boolean existsByLoadIdAndCustomerId(String loadId, String customerId);
+
+    @Query("SELECT k.id AS id, k.loadId AS loadId, k.customerId AS customerId FROM RetiredLoadKey k WHERE k.id > ?1 ORDER BY k.id")
+    List<LoadKeyView> findLoadKeysAfter(long id, Pageable page);
+
+    @Modifying
+    @Query("DELETE FROM RetiredLoadKey k WHERE k.epochDay < ?1")
+    int deleteOlderThan(int epochDay);
+
+    @Query("SELECT DISTINCT k.customerId FROM RetiredLoadKey k")
+    List<String> findCustomerIds();
+
+    List<RetiredLoadKey> findByCustomerId(String customerId);
+
+    @Modifying
+    @Query("DELETE FROM RetiredLoadKey k WHERE k.customerId = ?1")
+    int deleteByCustomerId(String customerId);
+}
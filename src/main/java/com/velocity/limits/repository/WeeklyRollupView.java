@@ -0,0 +1,14 @@
+package com.velocity.limits.repository;
+
+/**
+ * One customer's totals over a set of loads being compacted.
+ */
+public interface WeeklyRollupView {
+    String getCustomerId();
+
+    long getAcceptedCount();
+
+    long getAcceptedAmountCents();
+
+    long getRejectedCount();
+}
@@ -0,0 +1,126 @@
+package com.velocity.limits.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps how many single-load requests are decided at once, with a limit that adapts to
+ * observed latency, so that under overload excess requests are turned away at once
+ * instead of queueing for a database connection until every caller times out.
+ *
+ * <p>The limit follows a latency gradient: a slow-moving average of decision times is
+ * the baseline, and each sample moves the limit towards {@code limit * baseline / sample}
+ * plus a small allowance for queueing. Decisions getting slower than the baseline,
+ * which is what queueing looks like, shrink the limit; decisions at the baseline let it
+ * grow, but only while the limit is actually in use.
+ */
+@Component
+public class AdmissionLimiter {
+    // Samples the baseline average spans, roughly
+    private static final double BASELINE_WINDOW = 600;
+    // Samples slower than the baseline by this factor still count as no slower
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long retryAfterSeconds;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter shedCounter;
+
+    private volatile double limit;
+    private double baselineNanos;
+
+    public AdmissionLimiter(MeterRegistry meterRegistry,
+                            @Value("${load.admission.enabled:true}") boolean enabled,
+                            @Value("${load.admission.initial-limit:20}") int initialLimit,
+                            @Value("${load.admission.min-limit:4}") int minLimit,
+                            @Value("${load.admission.max-limit:200}") int maxLimit,
+                            @Value("${load.admission.retry-after-seconds:1}") long retryAfterSeconds) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("load.admission limits must satisfy 1 <= min-limit <= max-limit");
+        }
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+
+        Gauge.builder("load.admission.in.flight", inFlight, AtomicInteger::get)
+            .description("Single-load requests being decided")
+            .register(meterRegistry);
+        Gauge.builder("load.admission.limit", this, limiter -> limiter.limit)
+            .description("Current adaptive limit on single-load requests decided at once")
+            .register(meterRegistry);
+        this.shedCounter = Counter.builder("load.admission.shed.total")
+            .description("Single-load requests rejected with 429 because the limit was reached")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Takes a slot for one decision, which must be given back with {@link #release}.
+     *
+     * @return the start time to pass to {@link #release}
+     * @throws LoadShedException if the limit is reached
+     */
+    public long acquire() {
+        if (enabled) {
+            int current;
+            do {
+                current = inFlight.get();
+                if (current >= (int) limit) {
+                    shedCounter.increment();
+                    throw new LoadShedException(retryAfterSeconds);
+                }
+            } while (!inFlight.compareAndSet(current, current + 1));
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Gives back a slot taken with {@link #acquire}. Only decisions that ran to the end
+     * should be {@code measured}; failures that return early would look like spare
+     * capacity.
+     */
+    public void release(long startedNanos, boolean measured) {
+        if (!enabled) {
+            return;
+        }
+        int current = inFlight.getAndDecrement();
+        if (measured) {
+            sample(System.nanoTime() - startedNanos, current);
+        }
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    private synchronized void sample(long nanos, int inFlightAtEnd) {
+        double rtt = Math.max(1, nanos);
+        if (baselineNanos == 0) {
+            baselineNanos = rtt;
+        } else {
+            baselineNanos += (rtt - baselineNanos) / BASELINE_WINDOW;
+            // A baseline dragged up by a long overload would hide the next one
+            if (baselineNanos > 2 * rtt) {
+                baselineNanos *= 0.95;
+            }
+        }
+
+        double current = limit;
+        if (inFlightAtEnd < current / 2 && rtt <= baselineNanos * TOLERANCE) {
+            // Not limited by the limit, so this says nothing about raising it
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baselineNanos / rtt));
+        double target = current * gradient + Math.sqrt(current);
+        limit = Math.max(minLimit, Math.min(maxLimit, current * (1 - SMOOTHING) + target * SMOOTHING));
+    }
+}
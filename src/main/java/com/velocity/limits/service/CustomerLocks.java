@@ -0,0 +1,50 @@
+package com.velocity.limits.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks keyed by customer. Loads for the same customer are serialized while
+ * loads for different customers almost always take different stripes and run in
+ * parallel.
+ *
+ * <p>A lock is held until the decision's transaction completes, not just for the
+ * decision: until then its load is neither visible to another transaction's duplicate
+ * check nor, if it rolls back, gone from the aggregate store. A transaction holding
+ * several stripes must not wait for another one, since its holder may be waiting for
+ * one of them; see {@code LoadBatch}.
+ */
+@Component
+public class CustomerLocks {
+    private final Lock[] stripes;
+    private final int mask;
+
+    public CustomerLocks(@Value("${load.locks.stripes:1024}") int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new Lock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public Lock lockFor(String customerId) {
+        int hash = customerId.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    /**
+     * Returns once every lock held when it was called has been released, so every
+     * decision then in progress has completed. Takes one stripe at a time, so it never
+     * waits while holding one; the caller must hold none either.
+     */
+    public void awaitReleased() {
+        for (Lock stripe : stripes) {
+            stripe.lock();
+            stripe.unlock();
+        }
+    }
+}
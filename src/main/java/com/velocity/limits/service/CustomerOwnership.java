@@ -0,0 +1,10 @@
+package com.velocity.limits.service;
+
+/**
+ * Whether this instance decides loads for a customer. Checked under the customer's
+ * lock, so a customer moving to another node cannot be decided here once it has left.
+ */
+public interface CustomerOwnership {
+
+    boolean owns(String customerId);
+}
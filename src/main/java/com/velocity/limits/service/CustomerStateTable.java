@@ -0,0 +1,450 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.model.EpochWindows;
+import com.velocity.limits.model.VelocityTotals;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Per-customer day, week and month buckets in fixed 80-byte slots of direct buffers,
+ * so tens of millions of customers cost no heap objects for the GC to trace. Buckets
+ * are keyed by {@link EpochWindows} numbers derived from the load's epoch day.
+ *
+ * <p>The table is split into segments, each an open-addressing hash table with linear
+ * probing, guarded by its own monitor. A segment holds at most
+ * {@code maxCustomers / segments} customers; beyond that a CLOCK sweep evicts a
+ * customer not looked up since the hand last passed it. Customers with loads whose
+ * transaction has not completed are pinned and never evicted, since reloading them
+ * would miss those loads. A customer whose loads were rolled back is marked stale,
+ * answers no totals and is removed once no other transaction has them pinned.
+ * Removal shifts the rest of the probe run back, so no tombstones are left behind.
+ *
+ * <p>Customer ids are stored inline and must be ASCII of at most
+ * {@link #MAX_KEY_LENGTH} characters, see {@link #fits}.
+ */
+final class CustomerStateTable {
+    static final int MAX_KEY_LENGTH = 26;
+    static final int SLOT_SIZE = 80;
+    static final int NONE = Integer.MIN_VALUE;
+
+    // Slot layout
+    private static final int HASH = 0;
+    private static final int FLAGS = 4;
+    private static final int KEY_LENGTH = 5;
+    private static final int KEY = 6;
+    private static final int DAY = 32;
+    private static final int DAY_COUNT = 36;
+    private static final int WEEK = 40;
+    private static final int WEEK_COUNT = 44;
+    private static final int MONTH = 48;
+    private static final int PINS = 52;
+    private static final int DAY_AMOUNT = 56;
+    private static final int WEEK_AMOUNT = 64;
+    private static final int MONTH_AMOUNT = 72;
+
+    private static final byte USED = 1;
+    private static final byte REFERENCED = 2;
+    private static final byte STALE = 4;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    CustomerStateTable(long maxCustomers, int segmentCount) {
+        int count = Integer.highestOneBit(Math.max(1, segmentCount - 1)) << 1;
+        long perSegment = Math.max(1, (maxCustomers + count - 1) / count);
+        // Keep probe runs short: at most three quarters of the slots are used
+        long slots = Long.highestOneBit(Math.max(2, perSegment * 4 / 3 - 1)) << 1;
+        if (slots * SLOT_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many customers per segment: " + perSegment
+                + ", raise the segment count");
+        }
+        this.segments = new Segment[count];
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment((int) slots, (int) perSegment);
+        }
+    }
+
+    /**
+     * Whether {@code customerId} can be stored: ASCII and at most {@link #MAX_KEY_LENGTH} long.
+     */
+    static boolean fits(String customerId) {
+        int length = customerId.length();
+        if (length > MAX_KEY_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (customerId.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean contains(String customerId) {
+        int hash = hash(customerId);
+        return segmentFor(hash).contains(hash, customerId);
+    }
+
+    /**
+     * The customer's totals for a load on {@code loadDay}, or null if the customer is
+     * not in the table, is stale or the load precedes their buckets.
+     */
+    VelocityTotals totals(String customerId, int loadDay) {
+        int hash = hash(customerId);
+        return segmentFor(hash).totals(hash, customerId, loadDay);
+    }
+
+    /**
+     * Adds an accepted load to the customer's buckets, pinning the customer until
+     * {@link #unpin} if {@code pin} is set. Returns false, changing nothing, if the
+     * customer is not in the table.
+     */
+    boolean add(String customerId, int loadDay, long amountCents, boolean pin) {
+        int hash = hash(customerId);
+        return segmentFor(hash).add(hash, customerId, loadDay, amountCents, pin);
+    }
+
+    /**
+     * Pins the customer against eviction until {@link #unpin}. Returns false if the
+     * customer is not in the table.
+     */
+    boolean pin(String customerId) {
+        int hash = hash(customerId);
+        return segmentFor(hash).pin(hash, customerId);
+    }
+
+    void unpin(String customerId) {
+        unpin(customerId, false);
+    }
+
+    /**
+     * Releases a pin taken by {@link #add} or {@link #pin}. If {@code discard} is set the
+     * pinned loads will never commit, so the customer is marked stale and removed once
+     * the last pin is released; other transactions' loads in the buckets are then
+     * seeded again from persistence after they commit.
+     */
+    void unpin(String customerId, boolean discard) {
+        int hash = hash(customerId);
+        segmentFor(hash).unpin(hash, customerId, discard);
+    }
+
+    /**
+     * Inserts the customer unless already present, with buckets for the windows
+     * containing {@code day} holding {@code totals}, evicting another customer if the
+     * segment is full. A {@code day} of {@link #NONE} inserts empty buckets.
+     */
+    void putIfAbsent(String customerId, int day, VelocityTotals totals) {
+        int hash = hash(customerId);
+        segmentFor(hash).putIfAbsent(hash, customerId, day, totals);
+    }
+
+    void remove(String customerId) {
+        int hash = hash(customerId);
+        segmentFor(hash).remove(hash, customerId);
+    }
+
+    void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    long evictions() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            evictions += segment.evictions();
+        }
+        return evictions;
+    }
+
+    /**
+     * Off-heap bytes reserved for slots.
+     */
+    long capacityBytes() {
+        return (long) segments.length * segments[0].slots.capacity();
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    private static int hash(String customerId) {
+        int h = customerId.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 15);
+    }
+
+    private static final class Segment {
+        private final ByteBuffer slots;
+        private final int mask;
+        private final int maxSize;
+        private int size;
+        private int clockHand;
+        private long evictions;
+
+        Segment(int slotCount, int maxSize) {
+            this.slots = ByteBuffer.allocateDirect(slotCount * SLOT_SIZE);
+            this.mask = slotCount - 1;
+            this.maxSize = maxSize;
+        }
+
+        synchronized boolean contains(int hash, String customerId) {
+            return find(hash, customerId) >= 0;
+        }
+
+        synchronized VelocityTotals totals(int hash, String customerId, int loadDay) {
+            int slot = find(hash, customerId);
+            if (slot < 0) {
+                return null;
+            }
+            touch(slot);
+            int base = slot * SLOT_SIZE;
+            if ((slots.get(base + FLAGS) & STALE) != 0) {
+                return null;
+            }
+            int day = slots.getInt(base + DAY);
+            // Weeks and months only move forward with days, so a later day is in the
+            // same or a later week and month
+            if (loadDay < day) {
+                return null;
+            }
+            boolean sameDay = loadDay == day;
+            boolean sameWeek = sameDay || EpochWindows.epochWeek(loadDay) == slots.getInt(base + WEEK);
+            boolean sameMonth = sameDay || EpochWindows.epochMonth(loadDay) == slots.getInt(base + MONTH);
+            return new VelocityTotals(
+                sameDay ? slots.getInt(base + DAY_COUNT) : 0,
+                sameDay ? slots.getLong(base + DAY_AMOUNT) : 0,
+                sameWeek ? slots.getInt(base + WEEK_COUNT) : 0,
+                sameWeek ? slots.getLong(base + WEEK_AMOUNT) : 0,
+                sameMonth ? slots.getLong(base + MONTH_AMOUNT) : 0
+            );
+        }
+
+        synchronized boolean add(int hash, String customerId, int loadDay, long amountCents, boolean pin) {
+            int slot = find(hash, customerId);
+            if (slot < 0) {
+                return false;
+            }
+            touch(slot);
+            int base = slot * SLOT_SIZE;
+            if (pin) {
+                slots.putInt(base + PINS, slots.getInt(base + PINS) + 1);
+            }
+            int day = slots.getInt(base + DAY);
+            if (loadDay < day) {
+                // Out of order, but the load can still fall in the current week or month
+                if (EpochWindows.epochWeek(loadDay) == slots.getInt(base + WEEK)) {
+                    slots.putInt(base + WEEK_COUNT, slots.getInt(base + WEEK_COUNT) + 1);
+                    slots.putLong(base + WEEK_AMOUNT, slots.getLong(base + WEEK_AMOUNT) + amountCents);
+                }
+                if (EpochWindows.epochMonth(loadDay) == slots.getInt(base + MONTH)) {
+                    slots.putLong(base + MONTH_AMOUNT, slots.getLong(base + MONTH_AMOUNT) + amountCents);
+                }
+                return true;
+            }
+            if (loadDay > day) {
+                slots.putInt(base + DAY, loadDay);
+                slots.putInt(base + DAY_COUNT, 0);
+                slots.putLong(base + DAY_AMOUNT, 0);
+                int week = EpochWindows.epochWeek(loadDay);
+                if (week != slots.getInt(base + WEEK)) {
+                    slots.putInt(base + WEEK, week);
+                    slots.putInt(base + WEEK_COUNT, 0);
+                    slots.putLong(base + WEEK_AMOUNT, 0);
+                }
+                int month = EpochWindows.epochMonth(loadDay);
+                if (month != slots.getInt(base + MONTH)) {
+                    slots.putInt(base + MONTH, month);
+                    slots.putLong(base + MONTH_AMOUNT, 0);
+                }
+            }
+            slots.putInt(base + DAY_COUNT, slots.getInt(base + DAY_COUNT) + 1);
+            slots.putLong(base + DAY_AMOUNT, slots.getLong(base + DAY_AMOUNT) + amountCents);
+            slots.putInt(base + WEEK_COUNT, slots.getInt(base + WEEK_COUNT) + 1);
+            slots.putLong(base + WEEK_AMOUNT, slots.getLong(base + WEEK_AMOUNT) + amountCents);
+            slots.putLong(base + MONTH_AMOUNT, slots.getLong(base + MONTH_AMOUNT) + amountCents);
+            return true;
+        }
+
+        synchronized boolean pin(int hash, String customerId) {
+            int slot = find(hash, customerId);
+            if (slot < 0) {
+                return false;
+            }
+            int pins = slot * SLOT_SIZE + PINS;
+            slots.putInt(pins, slots.getInt(pins) + 1);
+            return true;
+        }
+
+        synchronized void unpin(int hash, String customerId, boolean discard) {
+            int slot = find(hash, customerId);
+            if (slot < 0) {
+                return;
+            }
+            int base = slot * SLOT_SIZE;
+            int pins = slots.getInt(base + PINS) - 1;
+            slots.putInt(base + PINS, pins);
+            byte flags = slots.get(base + FLAGS);
+            if (discard) {
+                flags |= STALE;
+                slots.put(base + FLAGS, flags);
+            }
+            if (pins <= 0 && (flags & STALE) != 0) {
+                delete(slot);
+            }
+        }
+
+        synchronized void putIfAbsent(int hash, String customerId, int day, VelocityTotals totals) {
+            if (find(hash, customerId) >= 0) {
+                return;
+            }
+            if (size >= maxSize && !evict() && size == mask) {
+                // One slot must stay empty to end probe runs
+                throw new IllegalStateException("Customer state segment is full of pinned customers");
+            }
+            int slot = hash & mask;
+            while (isUsed(slot)) {
+                slot = (slot + 1) & mask;
+            }
+            int base = slot * SLOT_SIZE;
+            slots.putInt(base + HASH, hash);
+            slots.put(base + FLAGS, (byte) (USED | REFERENCED));
+            slots.put(base + KEY_LENGTH, (byte) customerId.length());
+            for (int i = 0; i < customerId.length(); i++) {
+                slots.put(base + KEY + i, (byte) customerId.charAt(i));
+            }
+            slots.putInt(base + DAY, day);
+            slots.putInt(base + DAY_COUNT, Math.toIntExact(totals.dailyCount()));
+            slots.putLong(base + DAY_AMOUNT, totals.dailyAmountCents());
+            slots.putInt(base + WEEK, day == NONE ? NONE : EpochWindows.epochWeek(day));
+            slots.putInt(base + WEEK_COUNT, Math.toIntExact(totals.weeklyCount()));
+            slots.putLong(base + WEEK_AMOUNT, totals.weeklyAmountCents());
+            slots.putInt(base + MONTH, day == NONE ? NONE : EpochWindows.epochMonth(day));
+            slots.putLong(base + MONTH_AMOUNT, totals.monthlyAmountCents());
+            slots.putInt(base + PINS, 0);
+            size++;
+        }
+
+        synchronized void remove(int hash, String customerId) {
+            int slot = find(hash, customerId);
+            if (slot >= 0) {
+                delete(slot);
+            }
+        }
+
+        synchronized void clear() {
+            for (int slot = 0; slot <= mask; slot++) {
+                slots.put(slot * SLOT_SIZE + FLAGS, (byte) 0);
+            }
+            size = 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long evictions() {
+            return evictions;
+        }
+
+        private int find(int hash, String customerId) {
+            int slot = hash & mask;
+            while (isUsed(slot)) {
+                if (slots.getInt(slot * SLOT_SIZE + HASH) == hash && keyEquals(slot, customerId)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private boolean keyEquals(int slot, String customerId) {
+            int base = slot * SLOT_SIZE;
+            int length = customerId.length();
+            if (slots.get(base + KEY_LENGTH) != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (slots.get(base + KEY + i) != (byte) customerId.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isUsed(int slot) {
+            return (slots.get(slot * SLOT_SIZE + FLAGS) & USED) != 0;
+        }
+
+        private void touch(int slot) {
+            int flags = slot * SLOT_SIZE + FLAGS;
+            byte current = slots.get(flags);
+            if ((current & REFERENCED) == 0) {
+                slots.put(flags, (byte) (current | REFERENCED));
+            }
+        }
+
+        /**
+         * Advances the clock hand, clearing reference bits, until it reaches an unpinned
+         * customer not referenced since its last pass, and removes that customer.
+         * Returns false if two full turns find none, so every customer is pinned.
+         */
+        private boolean evict() {
+            for (int step = 0; step < 2 * (mask + 1); step++) {
+                int slot = clockHand;
+                clockHand = (clockHand + 1) & mask;
+                int base = slot * SLOT_SIZE;
+                byte current = slots.get(base + FLAGS);
+                if ((current & USED) == 0 || slots.getInt(base + PINS) > 0) {
+                    continue;
+                }
+                if ((current & REFERENCED) != 0) {
+                    slots.put(base + FLAGS, USED);
+                    continue;
+                }
+                delete(slot);
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Empties {@code slot}, moving later entries of its probe run back into the gap.
+         */
+        private void delete(int slot) {
+            int hole = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                if (!isUsed(next)) {
+                    break;
+                }
+                int home = slots.getInt(next * SLOT_SIZE + HASH) & mask;
+                // The entry may move back only if the hole is not before its home slot
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    copy(next, hole);
+                    hole = next;
+                }
+            }
+            slots.put(hole * SLOT_SIZE + FLAGS, (byte) 0);
+            size--;
+        }
+
+        private void copy(int from, int to) {
+            int source = from * SLOT_SIZE;
+            int target = to * SLOT_SIZE;
+            for (int offset = 0; offset < SLOT_SIZE; offset += Long.BYTES) {
+                slots.putLong(target + offset, slots.getLong(source + offset));
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.velocity.limits.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Approximate per-customer counts in a fixed amount of memory, and the customers with
+ * the highest ones. A Count-Min sketch of {@link #DEPTH} rows counts every customer; its
+ * estimates never undercount, and overcount by at most about {@code e / width} of the
+ * total in all but {@code e^-DEPTH} of cases. Customers whose estimate could place them
+ * among the top are kept in a small table of candidates.
+ *
+ * <p>Counters are updated with atomic adds and candidates with compare-and-set, so
+ * {@link #add} takes no lock. The top customers are only sorted when asked for.
+ */
+final class HeavyHitterSketch {
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int DEPTH = 4;
+    // Each row takes its index from its own 16 bits of one 64-bit hash
+    private static final int MAX_WIDTH = 1 << 16;
+    // Candidate slots probed per customer, like a bucket in a hash table
+    private static final int PROBES = 8;
+
+    private final long[] counts;
+    private final int widthMask;
+    private final AtomicReferenceArray<String> candidates;
+    private final int candidateMask;
+    // Customers below this estimate skip the candidate table. Raised to the estimate of
+    // each candidate evicted, and to the lowest of the top customers whenever they are read.
+    private volatile long threshold;
+
+    /**
+     * @param width counters per row, rounded up to a power of two, at most 65536
+     * @param candidates candidate slots, rounded up to a power of two
+     */
+    HeavyHitterSketch(int width, int candidates) {
+        int rowWidth = Integer.highestOneBit(Math.min(MAX_WIDTH, Math.max(2, width)) * 2 - 1);
+        int slots = Integer.highestOneBit(Math.max(PROBES, candidates) * 2 - 1);
+        this.counts = new long[DEPTH * rowWidth];
+        this.widthMask = rowWidth - 1;
+        this.candidates = new AtomicReferenceArray<>(slots);
+        this.candidateMask = slots - 1;
+    }
+
+    void add(String customerId) {
+        long hash = mix(customerId.hashCode());
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            long count = (long) COUNTS.getAndAdd(counts, index(hash, row), 1L) + 1;
+            estimate = Math.min(estimate, count);
+        }
+        if (estimate >= threshold) {
+            offer(customerId, (int) mix(hash), estimate);
+        }
+    }
+
+    /**
+     * Customers counted so far, exactly: every add counts once in each row.
+     */
+    long total() {
+        long total = 0;
+        for (int i = 0; i <= widthMask; i++) {
+            total += (long) COUNTS.getOpaque(counts, i);
+        }
+        return total;
+    }
+
+    /**
+     * The customer's count so far: never less than the true count.
+     */
+    long estimate(String customerId) {
+        long hash = mix(customerId.hashCode());
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, (long) COUNTS.getOpaque(counts, index(hash, row)));
+        }
+        return estimate;
+    }
+
+    private int index(long hash, int row) {
+        return row * (widthMask + 1) + ((int) (hash >>> (row * 16)) & widthMask);
+    }
+
+    /**
+     * Up to {@code k} customers with the highest estimates, highest first.
+     */
+    List<HeavyHitters.HeavyHitter> top(int k) {
+        Comparator<HeavyHitters.HeavyHitter> byCount = Comparator.comparingLong(HeavyHitters.HeavyHitter::loads);
+        PriorityQueue<HeavyHitters.HeavyHitter> heap = new PriorityQueue<>(k + 1, byCount);
+        // A customer can briefly hold two slots while it is inserted concurrently
+        Set<String> seen = new HashSet<>();
+        for (int slot = 0; slot <= candidateMask; slot++) {
+            String customerId = candidates.get(slot);
+            if (customerId == null || !seen.add(customerId)) {
+                continue;
+            }
+            heap.add(new HeavyHitters.HeavyHitter(customerId, estimate(customerId)));
+            if (heap.size() > k) {
+                heap.poll();
+            }
+        }
+        if (heap.size() == k) {
+            raiseThreshold(heap.peek().loads());
+        }
+        List<HeavyHitters.HeavyHitter> top = new ArrayList<>(heap);
+        top.sort(byCount.reversed());
+        return top;
+    }
+
+    /**
+     * Makes the customer a candidate if it is not one: in a free slot of its bucket, or
+     * in place of the candidate there with the lowest estimate, if that is lower.
+     */
+    private void offer(String customerId, int hash, long estimate) {
+        int victim = -1;
+        String victimId = null;
+        long victimEstimate = estimate;
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (hash + i) & candidateMask;
+            String current = candidates.get(slot);
+            if (current == null) {
+                if (candidates.compareAndSet(slot, null, customerId)) {
+                    return;
+                }
+                current = candidates.get(slot);
+            }
+            if (current.equals(customerId)) {
+                return;
+            }
+            long currentEstimate = estimate(current);
+            if (currentEstimate < victimEstimate) {
+                victim = slot;
+                victimId = current;
+                victimEstimate = currentEstimate;
+            }
+        }
+        if (victim >= 0 && candidates.compareAndSet(victim, victimId, customerId)) {
+            raiseThreshold(victimEstimate);
+        }
+    }
+
+    private void raiseThreshold(long estimate) {
+        if (estimate > threshold) {
+            threshold = estimate;
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -0,0 +1,135 @@
+package com.velocity.limits.service;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The customers with the most load attempts and the most rejections, counted in
+ * windows of {@code load.heavy-hitters.window-ms} by a {@link HeavyHitterSketch} each,
+ * so memory stays fixed however many customers there are.
+ *
+ * <p>When a window closes, its top {@code load.heavy-hitters.top} customers of each
+ * kind are published as the {@code load.heavy.hitters} gauge, tagged {@code kind} and
+ * {@code customer}. Only those customers have a series, so the gauge's cardinality is
+ * bounded by twice the top count. Counts are estimates that may run slightly high,
+ * never low. The window's total loads of each kind are published alongside as
+ * {@code load.heavy.hitters.window.loads}, so a customer's share doesn't depend on
+ * the window length.
+ */
+@Component
+public class HeavyHitters {
+    public record HeavyHitter(@JsonProperty("customer_id") String customerId, long loads) {}
+
+    public record Window(Instant from, Instant to, List<HeavyHitter> attempts, List<HeavyHitter> rejections) {}
+
+    private final boolean enabled;
+    private final int top;
+    private final int width;
+    private final MultiGauge gauge;
+    private final AtomicLong closedAttempts = new AtomicLong();
+    private final AtomicLong closedRejections = new AtomicLong();
+
+    private volatile HeavyHitterSketch attempts;
+    private volatile HeavyHitterSketch rejections;
+    private volatile Instant windowStart = Instant.now();
+    private volatile Window closed;
+
+    public HeavyHitters(MeterRegistry meterRegistry,
+                        @Value("${load.heavy-hitters.enabled:true}") boolean enabled,
+                        @Value("${load.heavy-hitters.top:10}") int top,
+                        @Value("${load.heavy-hitters.width:4096}") int width) {
+        this.enabled = enabled;
+        this.top = Math.max(1, top);
+        this.width = width;
+        this.attempts = newSketch();
+        this.rejections = newSketch();
+        this.closed = new Window(windowStart, windowStart, List.of(), List.of());
+        this.gauge = MultiGauge.builder("load.heavy.hitters")
+            .description("Loads by the customers with the most attempts or rejections in the last closed window")
+            .register(meterRegistry);
+        Gauge.builder("load.heavy.hitters.window.loads", closedAttempts, AtomicLong::get)
+            .description("Loads of all customers in the last closed window")
+            .tag("kind", "attempts")
+            .register(meterRegistry);
+        Gauge.builder("load.heavy.hitters.window.loads", closedRejections, AtomicLong::get)
+            .description("Loads of all customers in the last closed window")
+            .tag("kind", "rejections")
+            .register(meterRegistry);
+    }
+
+    public void recordAttempt(String customerId) {
+        if (enabled) {
+            attempts.add(customerId);
+        }
+    }
+
+    public void recordRejection(String customerId) {
+        if (enabled) {
+            rejections.add(customerId);
+        }
+    }
+
+    /**
+     * The last closed window.
+     */
+    public Window closedWindow() {
+        return closed;
+    }
+
+    /**
+     * The window still being counted, up to now.
+     */
+    public Window currentWindow() {
+        return new Window(windowStart, Instant.now(), attempts.top(top), rejections.top(top));
+    }
+
+    /**
+     * Closes the current window and publishes its top customers. A load counted just as
+     * the sketches are swapped may be missed by both windows.
+     */
+    @Scheduled(initialDelayString = "${load.heavy-hitters.window-ms:60000}",
+               fixedRateString = "${load.heavy-hitters.window-ms:60000}")
+    public void closeWindow() {
+        if (!enabled) {
+            return;
+        }
+        HeavyHitterSketch windowAttempts = attempts;
+        HeavyHitterSketch windowRejections = rejections;
+        Instant from = windowStart;
+        Instant to = Instant.now();
+        attempts = newSketch();
+        rejections = newSketch();
+        windowStart = to;
+
+        Window window = new Window(from, to, windowAttempts.top(top), windowRejections.top(top));
+        closed = window;
+        closedAttempts.set(windowAttempts.total());
+        closedRejections.set(windowRejections.total());
+        List<MultiGauge.Row<?>> rows = new ArrayList<>(2 * top);
+        addRows(rows, "attempts", window.attempts());
+        addRows(rows, "rejections", window.rejections());
+        gauge.register(rows, true);
+    }
+
+    private static void addRows(List<MultiGauge.Row<?>> rows, String kind, List<HeavyHitter> hitters) {
+        for (HeavyHitter hitter : hitters) {
+            rows.add(MultiGauge.Row.of(Tags.of("kind", kind, "customer", hitter.customerId()), hitter.loads()));
+        }
+    }
+
+    private HeavyHitterSketch newSketch() {
+        // Candidates well beyond the top count, so a customer climbing into it is already tracked
+        return new HeavyHitterSketch(width, 16 * top);
+    }
+}
@@ -0,0 +1,123 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.entity.CustomerLoad;
+import com.velocity.limits.model.EpochWindows;
+import com.velocity.limits.model.VelocityTotals;
+import com.velocity.limits.repository.CustomerLoadRepository;
+import com.velocity.limits.repository.CustomerWeeklyTotalRepository;
+import com.velocity.limits.repository.LoadKeyView;
+import com.velocity.limits.repository.RetiredLoadKeyRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Records every load as a {@link CustomerLoad} row through JPA.
+ *
+ * <p>Weeks before {@link #compactingBefore} may have been rolled up by
+ * {@link LoadRetentionJob}; totals for them add the rolled-up weekly figures to
+ * whatever detail rows remain.
+ */
+@Component
+@ConditionalOnProperty(name = "load.persistence.mode", havingValue = "jpa", matchIfMissing = true)
+@RequiredArgsConstructor
+public class JpaLoadPersistence implements LoadPersistence {
+    private static final int KEY_PAGE_SIZE = 10_000;
+
+    private final CustomerLoadRepository loadRepository;
+    private final CustomerWeeklyTotalRepository weeklyTotalRepository;
+    private final RetiredLoadKeyRepository retiredKeyRepository;
+
+    private volatile int compactedBeforeWeek = Integer.MIN_VALUE;
+
+    /**
+     * Sets the compaction horizon from the rollups already stored.
+     */
+    @PostConstruct
+    public void initCompactionHorizon() {
+        compactedBeforeWeek = Integer.MIN_VALUE;
+        Integer latestRolledUp = weeklyTotalRepository.findLatestEpochWeek();
+        if (latestRolledUp != null) {
+            compactingBefore(latestRolledUp + 1);
+        }
+    }
+
+    /**
+     * Marks weeks before {@code epochWeek} as possibly compacted. Must be called before
+     * their loads are rolled up.
+     */
+    public void compactingBefore(int epochWeek) {
+        if (epochWeek > compactedBeforeWeek) {
+            compactedBeforeWeek = epochWeek;
+        }
+    }
+
+    @Override
+    public boolean isCompacted(int epochWeek) {
+        return epochWeek < compactedBeforeWeek;
+    }
+
+    @Override
+    public boolean exists(String loadId, String customerId) {
+        // Compacted loads only leave their key behind
+        return loadRepository.existsByLoadIdAndCustomerId(loadId, customerId)
+            || retiredKeyRepository.existsByLoadIdAndCustomerId(loadId, customerId);
+    }
+
+    /**
+     * In compacted weeks the daily figures only cover loads not yet rolled up, while the
+     * weekly and monthly figures include the rollups. A rolled-up week that straddles
+     * the start or end of the month counts in full towards the monthly amount.
+     */
+    @Override
+    public VelocityTotals totals(String customerId, int epochDay, int epochWeek) {
+        VelocityTotals totals = loadRepository.sumTotalsByCustomerId(customerId, epochDay, epochWeek);
+        int epochMonth = EpochWindows.epochMonth(epochDay);
+        int monthStartWeek = EpochWindows.epochWeek(EpochWindows.firstDayOfMonth(epochMonth));
+        if (!isCompacted(monthStartWeek)) {
+            return totals;
+        }
+        int monthEndWeek = EpochWindows.epochWeek(EpochWindows.firstDayOfMonth(epochMonth + 1) - 1);
+        VelocityTotals rolledUp = weeklyTotalRepository.sumRollups(customerId, epochWeek, monthStartWeek, monthEndWeek);
+        return new VelocityTotals(totals.dailyCount(), totals.dailyAmountCents(),
+            totals.weeklyCount() + rolledUp.weeklyCount(),
+            totals.weeklyAmountCents() + rolledUp.weeklyAmountCents(),
+            totals.monthlyAmountCents() + rolledUp.monthlyAmountCents());
+    }
+
+    @Override
+    public Integer latestAcceptedEpochDay(String customerId) {
+        return loadRepository.findLatestAcceptedEpochDay(customerId);
+    }
+
+    @Override
+    public void record(CustomerLoad load) {
+        loadRepository.save(load);
+    }
+
+    @Override
+    public void forEachKey(BiConsumer<String, String> action) {
+        forEachKey(loadRepository::findLoadKeysAfter, action);
+        forEachKey(retiredKeyRepository::findLoadKeysAfter, action);
+    }
+
+    private static void forEachKey(BiFunction<Long, Pageable, List<LoadKeyView>> keysAfter,
+                                   BiConsumer<String, String> action) {
+        long lastId = 0;
+        List<LoadKeyView> page;
+        do {
+            page = keysAfter.apply(lastId, PageRequest.ofSize(KEY_PAGE_SIZE));
+            for (LoadKeyView key : page) {
+                action.accept(key.getLoadId(), key.getCustomerId());
+                lastId = key.getId();
+            }
+        } while (page.size() == KEY_PAGE_SIZE);
+    }
+}
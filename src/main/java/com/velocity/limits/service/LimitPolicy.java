@@ -0,0 +1,49 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.model.Cents;
+import com.velocity.limits.model.VelocityTotals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One set of limits, compiled from configuration by {@link LimitRules}: the rules in
+ * the order they are checked, with their limits alongside. All of them are checked
+ * against the one {@link VelocityTotals} fetched for a load.
+ */
+final class LimitPolicy {
+    private final LimitRule[] rules;
+    private final long[] limits;
+
+    LimitPolicy(LimitRule[] rules, long[] limits) {
+        this.rules = rules;
+        this.limits = limits;
+    }
+
+    /**
+     * The first rule a load of {@code amountCents} would break, or null if it is
+     * within every limit.
+     */
+    LimitRule firstBroken(VelocityTotals totals, long amountCents) {
+        for (int i = 0; i < rules.length; i++) {
+            if (rules[i].isBroken(totals, amountCents, limits[i])) {
+                return rules[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * What is left of each limit given {@code totals}, keyed by rule in check order: a
+     * number of loads for count limits, a dollar amount such as {@code "$4900.00"} for
+     * the others.
+     */
+    Map<String, Object> remaining(VelocityTotals totals) {
+        Map<String, Object> remaining = new LinkedHashMap<>(rules.length * 2);
+        for (int i = 0; i < rules.length; i++) {
+            long left = rules[i].remaining(totals, limits[i]);
+            remaining.put(rules[i].key, rules[i].isCount() ? (Object) left : "$" + Cents.format(left));
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,73 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.model.Cents;
+import com.velocity.limits.model.VelocityTotals;
+
+/**
+ * Velocity limits a load can be checked against, each configured as
+ * {@code load.limits.<key>}. Count limits cap the accepted loads before this one in
+ * the window; amount limits cap the window's total including it.
+ */
+enum LimitRule {
+    DAILY_COUNT("daily-count"),
+    DAILY_AMOUNT("daily-amount"),
+    WEEKLY_COUNT("weekly-count"),
+    WEEKLY_AMOUNT("weekly-amount"),
+    MONTHLY_AMOUNT("monthly-amount"),
+    SINGLE_AMOUNT("single-amount");
+
+    final String key;
+
+    LimitRule(String key) {
+        this.key = key;
+    }
+
+    static LimitRule forKey(String key) {
+        for (LimitRule rule : values()) {
+            if (rule.key.equals(key)) {
+                return rule;
+            }
+        }
+        throw new IllegalArgumentException("Unknown limit rule: " + key);
+    }
+
+    /**
+     * Parses a configured limit: a whole number for count limits, an amount in cents
+     * for the others.
+     */
+    long parseLimit(String value) {
+        return isCount() ? Long.parseLong(value.trim()) : Cents.parse(value.trim());
+    }
+
+    boolean isCount() {
+        return this == DAILY_COUNT || this == WEEKLY_COUNT;
+    }
+
+    boolean isBroken(VelocityTotals totals, long amountCents, long limit) {
+        return switch (this) {
+            case DAILY_COUNT -> totals.dailyCount() >= limit;
+            case DAILY_AMOUNT -> totals.dailyAmountCents() + amountCents > limit;
+            case WEEKLY_COUNT -> totals.weeklyCount() >= limit;
+            case WEEKLY_AMOUNT -> totals.weeklyAmountCents() + amountCents > limit;
+            case MONTHLY_AMOUNT -> totals.monthlyAmountCents() + amountCents > limit;
+            case SINGLE_AMOUNT -> amountCents > limit;
+        };
+    }
+
+    /**
+     * What is left of {@code limit} given {@code totals}: the loads a count limit still
+     * accepts, or the largest amount in cents an amount limit still accepts. Never
+     * negative.
+     */
+    long remaining(VelocityTotals totals, long limit) {
+        long used = switch (this) {
+            case DAILY_COUNT -> totals.dailyCount();
+            case DAILY_AMOUNT -> totals.dailyAmountCents();
+            case WEEKLY_COUNT -> totals.weeklyCount();
+            case WEEKLY_AMOUNT -> totals.weeklyAmountCents();
+            case MONTHLY_AMOUNT -> totals.monthlyAmountCents();
+            case SINGLE_AMOUNT -> 0;
+        };
+        return Math.max(0, limit - used);
+    }
+}
@@ -0,0 +1,68 @@
+package com.velocity.limits.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The limit rules from configuration, compiled into one {@link LimitPolicy} per tier.
+ *
+ * <p>{@code load.limits.rules} lists the rules in the order they are checked, and each
+ * takes its limit from {@code load.limits.<rule>}. A tier named in
+ * {@code load.limits.tiers} applies to the customers in
+ * {@code load.limits.tier.<tier>.customers} and may override any of those limits with
+ * {@code load.limits.tier.<tier>.<rule>}. Misconfiguration fails startup.
+ */
+@Component
+public class LimitRules {
+    private static final Logger log = LoggerFactory.getLogger(LimitRules.class);
+    private static final String PREFIX = "load.limits.";
+
+    private final LimitPolicy defaultPolicy;
+    private final Map<String, LimitPolicy> customerPolicies = new HashMap<>();
+
+    public LimitRules(Environment environment) {
+        String[] keys = environment.getProperty(PREFIX + "rules", String[].class,
+            new String[] {"daily-count", "daily-amount", "weekly-amount"});
+        LimitRule[] rules = new LimitRule[keys.length];
+        long[] limits = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            rules[i] = LimitRule.forKey(keys[i].trim());
+            limits[i] = rules[i].parseLimit(environment.getRequiredProperty(PREFIX + rules[i].key));
+        }
+        this.defaultPolicy = new LimitPolicy(rules, limits);
+
+        for (String tier : environment.getProperty(PREFIX + "tiers", String[].class, new String[0])) {
+            String tierPrefix = PREFIX + "tier." + tier.trim() + ".";
+            long[] tierLimits = limits.clone();
+            for (int i = 0; i < rules.length; i++) {
+                String limit = environment.getProperty(tierPrefix + rules[i].key);
+                if (limit != null) {
+                    tierLimits[i] = rules[i].parseLimit(limit);
+                }
+            }
+            LimitPolicy policy = new LimitPolicy(rules, tierLimits);
+            String[] customers = environment.getProperty(tierPrefix + "customers", String[].class, new String[0]);
+            for (String customerId : customers) {
+                if (customerPolicies.put(customerId.trim(), policy) != null) {
+                    throw new IllegalArgumentException("Customer is in more than one limit tier: " + customerId);
+                }
+            }
+            log.info("Limit tier {} applies to {} customers", tier.trim(), customers.length);
+        }
+    }
+
+    /**
+     * The limits that apply to {@code customerId}.
+     */
+    LimitPolicy policyFor(String customerId) {
+        if (customerPolicies.isEmpty()) {
+            return defaultPolicy;
+        }
+        return customerPolicies.getOrDefault(customerId, defaultPolicy);
+    }
+}
@@ -0,0 +1,73 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.model.LoadRequest;
+import com.velocity.limits.model.LoadResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides loads on a small pool of its own, so a caller can wait for the decision
+ * without holding a thread. Decisions mostly wait on a database connection, so more
+ * threads than {@code load.async.threads}, by default the size of the connection pool,
+ * would only queue inside the pool instead of here.
+ *
+ * <p>Once {@code load.async.queue-capacity} decisions are waiting, further ones fail
+ * straight away with {@link RejectedExecutionException} rather than queueing without
+ * bound.
+ */
+@Component
+public class LoadDecisionExecutor {
+    private final LoadLimitService loadLimitService;
+    private final ThreadPoolExecutor executor;
+    private final Counter rejectedCounter;
+
+    public LoadDecisionExecutor(LoadLimitService loadLimitService,
+                                MeterRegistry meterRegistry,
+                                @Value("${load.async.threads:10}") int threads,
+                                @Value("${load.async.queue-capacity:10000}") int queueCapacity) {
+        this.loadLimitService = loadLimitService;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            task -> new Thread(task, "load-decision-" + threadNumber.incrementAndGet()));
+
+        Gauge.builder("load.async.queue.depth", executor, e -> e.getQueue().size())
+            .description("Asynchronous decisions waiting for a thread")
+            .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("load.async.rejected.total")
+            .description("Asynchronous decisions refused because the queue was full")
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Completes with the decision, null for a duplicate, or the exception
+     * {@link LoadLimitService#processLoad} threw.
+     *
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public CompletableFuture<LoadResponse> decide(LoadRequest request) {
+        try {
+            return CompletableFuture.supplyAsync(() -> loadLimitService.processLoad(request), executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw e;
+        }
+    }
+}
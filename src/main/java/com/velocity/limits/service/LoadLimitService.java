@@ -1,57 +1,69 @@
 package com.velocity.limits.service;
 
 import com.velocity.limits.entity.CustomerLoad;
+import com.velocity.limits.model.EpochWindows;
 import com.velocity.limits.model.LoadRequest;
 import com.velocity.limits.model.LoadResponse;
-import com.velocity.limits.repository.CustomerLoadRepository;
+import com.velocity.limits.model.RemainingLimits;
+import com.velocity.limits.model.VelocityTotals;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.slf4j.MDC;
-import io.micrometer.core.annotation.Timed;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 
-import java.math.BigDecimal;
-import java.time.DayOfWeek;
 import java.time.ZonedDateTime;
-import java.time.temporal.TemporalAdjusters;
-import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 @Service
 @RequiredArgsConstructor
 public class LoadLimitService {
     private static final Logger log = LoggerFactory.getLogger(LoadLimitService.class);
 
-    @Value("${load.limits.daily-amount}")
-    private BigDecimal dailyLimit;
-
-    @Value("${load.limits.weekly-amount}")
-    private BigDecimal weeklyLimit;
-
-    @Value("${load.limits.daily-count}")
-    private int dailyLoadLimit;
-
-    private final CustomerLoadRepository loadRepository;
+    @Value("${load.limits.report-rule:false}")
+    private boolean reportRule;
+
+    private final LoadPersistence persistence;
+    private final VelocityAggregateStore aggregateStore;
+    private final CustomerLocks customerLocks;
+    private final SeenLoadFilter seenLoadFilter;
+    private final LimitRules limitRules;
+    private final CustomerOwnership ownership;
+    private final HeavyHitters heavyHitters;
+    private final PlatformTransactionManager transactionManager;
     private final MeterRegistry meterRegistry;
 
+    private TransactionTemplate transaction;
+
     private Counter loadAttemptsCounter;
     private Counter loadAcceptedCounter;
     private Counter loadRejectedCounter;
     private Counter duplicateLoadsCounter;
-    private Counter dailyLimitExceededCounter;
-    private Counter weeklyLimitExceededCounter;
-    private Counter dailyCountExceededCounter;
+    private Counter dedupFilterNegativeCounter;
+    private Counter dedupFilterPositiveCounter;
+    private Counter dedupFilterFalsePositiveCounter;
+    private final Counter[] limitExceededCounters = new Counter[LimitRule.values().length];
     private Timer loadProcessingTimer;
+    private Timer remainingLimitsTimer;
+    private final Timer[] stageTimers = new Timer[LoadStage.values().length];
     private Counter validationFailuresCounter;
 
     @PostConstruct
-    public void initMetrics() {
+    public void init() {
+        transaction = new TransactionTemplate(transactionManager);
+        initMetrics();
+    }
+
+    private void initMetrics() {
         loadAttemptsCounter = Counter.builder("load.attempts.total")
             .description("Total number of load attempts")
             .register(meterRegistry);
@@ -68,69 +80,186 @@ public class LoadLimitService {
             .description("Total number of duplicate load attempts")
             .register(meterRegistry);
 
-        dailyLimitExceededCounter = Counter.builder("load.daily.limit.exceeded.total")
-            .description("Number of times daily amount limit was exceeded")
+        dedupFilterNegativeCounter = Counter.builder("load.dedup.filter.negatives.total")
+            .description("Loads the seen-load filter reported as new, skipping the duplicate query")
             .register(meterRegistry);
 
-        weeklyLimitExceededCounter = Counter.builder("load.weekly.limit.exceeded.total")
-            .description("Number of times weekly amount limit was exceeded")
+        dedupFilterPositiveCounter = Counter.builder("load.dedup.filter.positives.total")
+            .description("Loads the seen-load filter reported as possibly seen, checked against the database")
             .register(meterRegistry);
 
-        dailyCountExceededCounter = Counter.builder("load.daily.count.exceeded.total")
-            .description("Number of times daily load count limit was exceeded")
+        dedupFilterFalsePositiveCounter = Counter.builder("load.dedup.filter.false.positives.total")
+            .description("Possibly-seen loads the database reported as new")
             .register(meterRegistry);
 
+        for (LimitRule rule : LimitRule.values()) {
+            limitExceededCounters[rule.ordinal()] = Counter.builder("load.limit.exceeded.total")
+                .description("Loads rejected, by the first limit rule they broke")
+                .tag("rule", rule.key)
+                .register(meterRegistry);
+        }
+
         loadProcessingTimer = Timer.builder("load.processing.time")
             .description("Time taken to process load requests")
+            .publishPercentileHistogram()
             .register(meterRegistry);
 
+        remainingLimitsTimer = Timer.builder("load.limits.query.time")
+            .description("Time taken to answer remaining-limit queries")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+
+        for (LoadStage stage : LoadStage.values()) {
+            stageTimers[stage.ordinal()] = Timer.builder("load.stage.time")
+                .description("Time taken by one stage of a load decision")
+                .tag("stage", stage.tag)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        }
+
         validationFailuresCounter = Counter.builder("load.validation.failures.total")
             .description("Number of load requests that failed validation")
             .register(meterRegistry);
     }
 
-    @Timed(value = "load.process.time", description = "Time taken to process load request")
-    @Transactional
+    /**
+     * Decides a load and saves it, holding the customer's lock until the load commits,
+     * so the next decision for the customer sees it in its totals and duplicate check.
+     *
+     * <p>Without a surrounding transaction the decision runs in its own. A caller that
+     * runs it in theirs, like {@code LoadBatch}, must hold
+     * {@link CustomerLocks#lockFor the customer's lock} until that transaction completes.
+     *
+     * @throws IllegalArgumentException if the request is invalid; a surrounding
+     *                                  transaction is not marked for rollback
+     */
     public LoadResponse processLoad(LoadRequest request) {
         return loadProcessingTimer.record(() -> {
             try {
+                long started = System.nanoTime();
+                LoadStageEvent event = beginStage();
                 validateRequest(request);
+                endStage(LoadStage.VALIDATE, started, event, request);
+
+                int epochDay = EpochWindows.epochDay(request.getTime());
+                int epochWeek = EpochWindows.epochWeek(epochDay);
                 
                 MDC.put("customerId", request.getCustomerId());
                 MDC.put("loadId", request.getId());
                 
                 loadAttemptsCounter.increment();
-                log.debug("Processing load request: id={}, customer={}, amount={}, time={}", 
-                    request.getId(), request.getCustomerId(), request.getLoadAmount(), request.getTime());
-
-                if (loadRepository.existsByLoadIdAndCustomerId(request.getId(), request.getCustomerId())) {
-                    duplicateLoadsCounter.increment();
-                    return null;
+                heavyHitters.recordAttempt(request.getCustomerId());
+                if (log.isDebugEnabled()) {
+                    log.debug("Processing load request: id={}, customer={}, amount={}, time={}",
+                        request.getId(), request.getCustomerId(), request.getLoadAmount(), request.getTime());
                 }
 
-                boolean accepted = checkLimits(request);
-                
-                if (accepted) {
-                    loadAcceptedCounter.increment();
-                } else {
-                    loadRejectedCounter.increment();
+                // The duplicate check, limit check and save must not interleave with another
+                // load for the same customer
+                Lock customerLock = customerLocks.lockFor(request.getCustomerId());
+                started = System.nanoTime();
+                event = beginStage();
+                customerLock.lock();
+                endStage(LoadStage.LOCK, started, event, request);
+                try {
+                    if (!ownership.owns(request.getCustomerId())) {
+                        throw new NotOwnerException(request.getCustomerId());
+                    }
+                    if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                        return decide(request, epochDay, epochWeek);
+                    }
+                    return transaction.execute(status -> decide(request, epochDay, epochWeek));
+                } finally {
+                    customerLock.unlock();
                 }
-
-                // Save all attempts, both accepted and rejected
-                saveLoad(request, accepted);
-
-                return LoadResponse.builder()
-                        .id(request.getId())
-                        .customerId(request.getCustomerId())
-                        .accepted(accepted)
-                        .build();
             } finally {
                 MDC.clear();
             }
         });
     }
 
-    private void validateRequest(LoadRequest request) {
+    /**
+     * What {@code customerId} has left under each of their limit rules in the day, week
+     * and month containing {@code time}. Served from the aggregate cache without the
+     * customer's lock, so it may count a load whose transaction has not committed yet.
+     * Customers not in the cache are answered from persistence and not cached.
+     *
+     * @throws NotOwnerException if another node decides this customer's loads
+     */
+    public RemainingLimits remainingLimits(String customerId, ZonedDateTime time) {
+        return remainingLimitsTimer.record(() -> {
+            if (customerId == null || customerId.isBlank()) {
+                throw new IllegalArgumentException("Customer ID is required");
+            }
+            if (time == null) {
+                throw new IllegalArgumentException("Time is required");
+            }
+            if (!ownership.owns(customerId)) {
+                throw new NotOwnerException(customerId);
+            }
+            int epochDay = EpochWindows.epochDay(time);
+            VelocityTotals totals = aggregateStore.peekTotals(customerId, epochDay, EpochWindows.epochWeek(epochDay));
+            return RemainingLimits.builder()
+                .customerId(customerId)
+                .time(time)
+                .remaining(limitRules.policyFor(customerId).remaining(totals))
+                .build();
+        });
+    }
+
+    private LoadResponse decide(LoadRequest request, int epochDay, int epochWeek) {
+        long started = System.nanoTime();
+        LoadStageEvent event = beginStage();
+        boolean duplicate = isDuplicate(request);
+        endStage(LoadStage.DEDUP, started, event, request);
+        if (duplicate) {
+            duplicateLoadsCounter.increment();
+            return null;
+        }
+
+        LimitRule broken = checkLimits(request, epochDay, epochWeek);
+        boolean accepted = broken == null;
+
+        if (accepted) {
+            loadAcceptedCounter.increment();
+        } else {
+            loadRejectedCounter.increment();
+            heavyHitters.recordRejection(request.getCustomerId());
+        }
+
+        // Save all attempts, both accepted and rejected
+        started = System.nanoTime();
+        event = beginStage();
+        saveLoad(request, epochDay, epochWeek, accepted);
+        endStage(LoadStage.SAVE, started, event, request);
+
+        return LoadResponse.builder()
+                .id(request.getId())
+                .customerId(request.getCustomerId())
+                .accepted(accepted)
+                .rejectedBy(reportRule && broken != null ? broken.key : null)
+                .build();
+    }
+
+    private boolean isDuplicate(LoadRequest request) {
+        // Loads saved earlier in this transaction may not be flushed yet
+        if (PendingLoadKeys.contains(request.getId(), request.getCustomerId())) {
+            return true;
+        }
+        if (!seenLoadFilter.mightContain(request.getId(), request.getCustomerId())) {
+            dedupFilterNegativeCounter.increment();
+            return false;
+        }
+        dedupFilterPositiveCounter.increment();
+        boolean exists = persistence.exists(request.getId(), request.getCustomerId());
+        if (!exists) {
+            dedupFilterFalsePositiveCounter.increment();
+        }
+        return exists;
+    }
+
+    // Package-private, like checkLimits, so LoadDecisionBenchmark can measure it on its own
+    void validateRequest(LoadRequest request) {
         try {
             if (request == null) {
                 throw new IllegalArgumentException("Load request cannot be null");
@@ -141,10 +270,10 @@ public class LoadLimitService {
             if (request.getCustomerId() == null || request.getCustomerId().trim().isEmpty()) {
                 throw new IllegalArgumentException("Customer ID is required");
             }
-            if (request.getLoadAmountValue() == null) {
+            if (request.getLoadAmount() == null) {
                 throw new IllegalArgumentException("Load amount is required");
             }
-            if (request.getLoadAmountValue().compareTo(BigDecimal.ZERO) <= 0) {
+            if (request.getLoadAmountCents() <= 0) {
                 throw new IllegalArgumentException("Load amount must be greater than zero");
             }
             if (request.getTime() == null) {
@@ -157,105 +286,82 @@ public class LoadLimitService {
         }
     }
 
-    private record TimeWindow(ZonedDateTime start, ZonedDateTime end) {}
-
-    private boolean checkLimits(LoadRequest request) {
-        ZonedDateTime loadTime = request.getTime();
-        TimeWindow dailyWindow = getDailyTimeWindow(loadTime);
-        TimeWindow weeklyWindow = getWeeklyTimeWindow(loadTime);
-
-        log.debug("Checking limits for time={}, startOfWeek={}, endOfWeek={}", 
-            loadTime, weeklyWindow.start(), weeklyWindow.end());
-
-        if (!checkDailyLoadCount(request, dailyWindow)) {
-            return false;
-        }
-
-        if (!checkDailyAmountLimit(request, dailyWindow)) {
-            return false;
-        }
-
-        if (!checkWeeklyAmountLimit(request, weeklyWindow)) {
-            return false;
+    /**
+     * Checks the load against every limit rule that applies to its customer, using
+     * one totals lookup, and returns the first rule it breaks or null if it is within
+     * all of them.
+     */
+    LimitRule checkLimits(LoadRequest request, int epochDay, int epochWeek) {
+        long started = System.nanoTime();
+        LoadStageEvent event = beginStage();
+        VelocityTotals totals = aggregateStore.getTotals(request.getCustomerId(), epochDay, epochWeek);
+        started = endStage(LoadStage.TOTALS, started, event, request);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Checking limits for epochDay={}, totals={}", epochDay, totals);
         }
 
-        return true;
-    }
-
-
-    private TimeWindow getDailyTimeWindow(ZonedDateTime time) {
-        ZonedDateTime startOfDay = time.toLocalDate().atStartOfDay(time.getZone());
-        return new TimeWindow(
-            startOfDay,
-            startOfDay.plusDays(1).minusNanos(1)
-        );
-    }
-
-    private TimeWindow getWeeklyTimeWindow(ZonedDateTime time) {
-        ZonedDateTime startOfWeek = time
-                .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
-                .truncatedTo(ChronoUnit.DAYS);
-        return new TimeWindow(
-            startOfWeek,
-            startOfWeek.plusDays(7).minusSeconds(1)
-        );
-    }
-
-    private boolean checkDailyLoadCount(LoadRequest request, TimeWindow window) {
-        long dailyLoadCount = loadRepository.countByCustomerIdAndLoadTimeBetween(
-                request.getCustomerId(), window.start(), window.end());
-        if (dailyLoadCount >= dailyLoadLimit) {
-            dailyCountExceededCounter.increment();
-            log.debug("Daily load count limit exceeded: customer={}, count={}", 
-                request.getCustomerId(), dailyLoadCount);
-            return false;
+        event = beginStage();
+        LimitRule broken = limitRules.policyFor(request.getCustomerId())
+            .firstBroken(totals, request.getLoadAmountCents());
+        endStage(LoadStage.LIMITS, started, event, request);
+        if (broken != null) {
+            limitExceededCounters[broken.ordinal()].increment();
+            if (log.isDebugEnabled()) {
+                log.debug("Limit exceeded: customer={}, rule={}, attempted={}",
+                    request.getCustomerId(), broken.key, request.getLoadAmount());
+            }
         }
-        return true;
+        return broken;
     }
 
-    private boolean checkDailyAmountLimit(LoadRequest request, TimeWindow window) {
-        BigDecimal dailyTotal = loadRepository.sumAmountByCustomerIdAndLoadTimeBetween(
-                request.getCustomerId(), window.start(), window.end());
-        dailyTotal = dailyTotal == null ? BigDecimal.ZERO : dailyTotal;
-        
-        if (dailyTotal.add(request.getLoadAmountValue()).compareTo(dailyLimit) > 0) {
-            dailyLimitExceededCounter.increment();
-            log.debug("Daily amount limit exceeded: customer={}, current={}, attempted={}", 
-                request.getCustomerId(), dailyTotal, request.getLoadAmount());
-            return false;
-        }
-        return true;
+    private static LoadStageEvent beginStage() {
+        LoadStageEvent event = new LoadStageEvent();
+        event.begin();
+        return event;
     }
 
-    private boolean checkWeeklyAmountLimit(LoadRequest request, TimeWindow window) {
-        BigDecimal weeklyTotal = loadRepository.sumAmountByCustomerIdAndLoadTimeBetween(
-                request.getCustomerId(), window.start(), window.end());
-        weeklyTotal = weeklyTotal == null ? BigDecimal.ZERO : weeklyTotal;
-        
-        if (weeklyTotal.add(request.getLoadAmountValue()).compareTo(weeklyLimit) > 0) {
-            weeklyLimitExceededCounter.increment();
-            log.debug("Weekly amount limit exceeded: customer={}, current={}, attempted={}", 
-                request.getCustomerId(), weeklyTotal, request.getLoadAmount());
-            return false;
+    /**
+     * Records a stage that started at {@code startedNanos} and returns the current
+     * time, so the next stage can start from it.
+     */
+    private long endStage(LoadStage stage, long startedNanos, LoadStageEvent event, LoadRequest request) {
+        long now = System.nanoTime();
+        stageTimers[stage.ordinal()].record(now - startedNanos, TimeUnit.NANOSECONDS);
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = stage.tag;
+            event.loadId = request.getId();
+            event.customerId = request.getCustomerId();
+            event.commit();
         }
-        return true;
+        return now;
     }
 
-    private void saveLoad(LoadRequest request, boolean accepted) {
+    private void saveLoad(LoadRequest request, int epochDay, int epochWeek, boolean accepted) {
         try {
             CustomerLoad load = new CustomerLoad();
             load.setLoadId(request.getId());
             load.setCustomerId(request.getCustomerId());
-            load.setAmount(request.getLoadAmountValue());
+            load.setAmountCents(request.getLoadAmountCents());
             load.setLoadTime(request.getTime());
+            load.setEpochDay(epochDay);
+            load.setEpochWeek(epochWeek);
             load.setAccepted(accepted);
-            loadRepository.save(load);
-            log.debug("Load attempt saved: id={}, customer={}, accepted={}", 
-                request.getId(), request.getCustomerId(), accepted);
+            persistence.record(load);
+            PendingLoadKeys.add(request.getId(), request.getCustomerId());
+            seenLoadFilter.put(request.getId(), request.getCustomerId());
+            if (accepted) {
+                aggregateStore.recordAccepted(request.getCustomerId(), epochDay, epochWeek, load.getAmountCents());
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Load attempt saved: id={}, customer={}, accepted={}",
+                    request.getId(), request.getCustomerId(), accepted);
+            }
         } catch (Exception e) {
             log.error("Error saving load: id={}, customer={}", 
                 request.getId(), request.getCustomerId(), e);
             throw new RuntimeException("Failed to save load", e);
         }
     }
-} 
\ No newline at end of file
+} 
\ No newline at end of file
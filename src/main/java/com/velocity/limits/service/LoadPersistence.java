@@ -0,0 +1,43 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.entity.CustomerLoad;
+import com.velocity.limits.model.VelocityTotals;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Where load decisions are recorded and read back from, selected with
+ * {@code load.persistence.mode}: {@code jpa} (the default) or {@code journal}.
+ */
+public interface LoadPersistence {
+
+    /**
+     * Whether a load with this id has been recorded for the customer.
+     */
+    boolean exists(String loadId, String customerId);
+
+    /**
+     * Totals of the customer's accepted loads on {@code epochDay} and in {@code epochWeek}.
+     */
+    VelocityTotals totals(String customerId, int epochDay, int epochWeek);
+
+    /**
+     * The day of the customer's latest accepted load, or null if there is none.
+     */
+    Integer latestAcceptedEpochDay(String customerId);
+
+    /**
+     * Whether totals for {@code epochWeek} must always be read through {@link #totals},
+     * because recorded loads in it may have been compacted.
+     */
+    default boolean isCompacted(int epochWeek) {
+        return false;
+    }
+
+    void record(CustomerLoad load);
+
+    /**
+     * Passes the (loadId, customerId) of every recorded load to {@code action}.
+     */
+    void forEachKey(BiConsumer<String, String> action);
+}
@@ -0,0 +1,196 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.entity.CustomerWeeklyTotal;
+import com.velocity.limits.model.EpochWindows;
+import com.velocity.limits.repository.CustomerLoadRepository;
+import com.velocity.limits.repository.CustomerWeeklyTotalRepository;
+import com.velocity.limits.repository.RetiredLoadKeyRepository;
+import com.velocity.limits.repository.WeeklyRollupView;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Compacts {@code CustomerLoad} history that can no longer affect a decision.
+ *
+ * <p>Cutoffs are measured back from an event-time watermark: the latest load day seen,
+ * less the allowed lateness. Load times come from the input, so the wall clock says
+ * nothing about which history is still live. On each run:
+ * <ul>
+ *   <li>weeks more than {@code detail-weeks} before the watermark week are rolled up
+ *   into {@link CustomerWeeklyTotal} and their detail rows deleted;</li>
+ *   <li>rejected attempts older than {@code rejected-days} are counted into the same
+ *   rollup and deleted, as they never count towards a limit;</li>
+ *   <li>the keys of deleted loads are kept as retired keys, so duplicates are still
+ *   detected, until they are older than {@code dedup-horizon-days}.</li>
+ * </ul>
+ * Each week is compacted in its own transaction.
+ */
+@Component
+@ConditionalOnProperty(name = "load.persistence.mode", havingValue = "jpa", matchIfMissing = true)
+@RequiredArgsConstructor
+public class LoadRetentionJob {
+    private static final Logger log = LoggerFactory.getLogger(LoadRetentionJob.class);
+    private static final List<Boolean> ALL_LOADS = List.of(true, false);
+    private static final List<Boolean> REJECTED_LOADS = List.of(false);
+
+    private final CustomerLoadRepository loadRepository;
+    private final CustomerWeeklyTotalRepository weeklyTotalRepository;
+    private final RetiredLoadKeyRepository retiredKeyRepository;
+    private final JpaLoadPersistence persistence;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${load.retention.enabled:true}")
+    private boolean enabled;
+
+    @Value("${load.retention.allowed-lateness-days:7}")
+    private int allowedLatenessDays;
+
+    @Value("${load.retention.detail-weeks:8}")
+    private int detailWeeks;
+
+    @Value("${load.retention.rejected-days:7}")
+    private int rejectedDays;
+
+    @Value("${load.retention.dedup-horizon-days:90}")
+    private int dedupHorizonDays;
+
+    private final AtomicInteger watermarkDay = new AtomicInteger();
+    private Timer runTimer;
+    private Counter acceptedReclaimedCounter;
+    private Counter rejectedReclaimedCounter;
+    private Counter expiredKeysCounter;
+
+    @PostConstruct
+    public void initMetrics() {
+        runTimer = Timer.builder("load.retention.run.time")
+            .description("Time taken by a retention run")
+            .register(meterRegistry);
+
+        acceptedReclaimedCounter = Counter.builder("load.retention.rows.reclaimed.total")
+            .description("Load rows rolled up and deleted by retention")
+            .tag("kind", "accepted")
+            .register(meterRegistry);
+
+        rejectedReclaimedCounter = Counter.builder("load.retention.rows.reclaimed.total")
+            .description("Load rows rolled up and deleted by retention")
+            .tag("kind", "rejected")
+            .register(meterRegistry);
+
+        expiredKeysCounter = Counter.builder("load.retention.keys.expired.total")
+            .description("Retired load keys dropped past the dedup horizon")
+            .register(meterRegistry);
+
+        Gauge.builder("load.retention.watermark.epoch.day", watermarkDay, AtomicInteger::get)
+            .description("Event-time watermark of the last retention run, in epoch days")
+            .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${load.retention.interval-ms:3600000}",
+               fixedDelayString = "${load.retention.interval-ms:3600000}")
+    public void scheduledRun() {
+        if (enabled) {
+            runTimer.record(this::run);
+        }
+    }
+
+    /**
+     * Runs one compaction pass. Safe to call concurrently with load processing.
+     */
+    public void run() {
+        Integer latestDay = loadRepository.findLatestEpochDay();
+        if (latestDay == null) {
+            return;
+        }
+        int watermark = latestDay - allowedLatenessDays;
+        watermarkDay.set(watermark);
+
+        int detailCutoffWeek = EpochWindows.epochWeek(watermark) - detailWeeks;
+        int detailCutoffDay = EpochWindows.firstDayOfWeek(detailCutoffWeek);
+        int rejectedCutoffDay = watermark - rejectedDays;
+        int keepKeysFromDay = watermark - dedupHorizonDays;
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        // Decisions must stop trusting cached totals for these weeks before any are rolled up
+        persistence.compactingBefore(detailCutoffWeek);
+        for (int week : loadRepository.findEpochWeeksWithLoadsBefore(detailCutoffDay, ALL_LOADS)) {
+            compactWeek(transaction, week, Integer.MAX_VALUE, ALL_LOADS, keepKeysFromDay);
+        }
+        for (int week : loadRepository.findEpochWeeksWithLoadsBefore(rejectedCutoffDay, REJECTED_LOADS)) {
+            compactWeek(transaction, week, rejectedCutoffDay, REJECTED_LOADS, keepKeysFromDay);
+        }
+
+        Integer expired = transaction.execute(status -> retiredKeyRepository.deleteOlderThan(keepKeysFromDay));
+        expiredKeysCounter.increment(expired == null ? 0 : expired);
+
+        log.info("Retention run complete: watermarkDay={}, detailCutoffWeek={}, rejectedCutoffDay={}, expiredKeys={}",
+            watermark, detailCutoffWeek, rejectedCutoffDay, expired);
+    }
+
+    private void compactWeek(TransactionTemplate transaction, int week, int beforeDay,
+                             Collection<Boolean> acceptedStates, int keepKeysFromDay) {
+        try {
+            transaction.executeWithoutResult(status -> compactWeek(week, beforeDay, acceptedStates, keepKeysFromDay));
+        } catch (RuntimeException e) {
+            log.warn("Compaction of week {} failed, will retry on the next run", week, e);
+        }
+    }
+
+    private void compactWeek(int week, int beforeDay, Collection<Boolean> acceptedStates, int keepKeysFromDay) {
+        List<WeeklyRollupView> rollups = loadRepository.rollupWeek(week, beforeDay, acceptedStates);
+        if (rollups.isEmpty()) {
+            return;
+        }
+
+        Map<String, CustomerWeeklyTotal> totals = weeklyTotalRepository.findByEpochWeek(week).stream()
+            .collect(Collectors.toMap(CustomerWeeklyTotal::getCustomerId, Function.identity()));
+        long acceptedRows = 0;
+        long rejectedRows = 0;
+        for (WeeklyRollupView rollup : rollups) {
+            CustomerWeeklyTotal total = totals.computeIfAbsent(rollup.getCustomerId(), customerId -> {
+                CustomerWeeklyTotal created = new CustomerWeeklyTotal();
+                created.setCustomerId(customerId);
+                created.setEpochWeek(week);
+                return created;
+            });
+            total.setAcceptedCount(total.getAcceptedCount() + rollup.getAcceptedCount());
+            total.setAcceptedAmountCents(total.getAcceptedAmountCents() + rollup.getAcceptedAmountCents());
+            total.setRejectedCount(total.getRejectedCount() + rollup.getRejectedCount());
+            acceptedRows += rollup.getAcceptedCount();
+            rejectedRows += rollup.getRejectedCount();
+        }
+        weeklyTotalRepository.saveAll(totals.values());
+
+        retiredKeyRepository.saveAll(loadRepository.findKeysToRetire(week, beforeDay, acceptedStates, keepKeysFromDay));
+        int deleted = loadRepository.deleteCompacted(week, beforeDay, acceptedStates);
+        if (deleted != acceptedRows + rejectedRows) {
+            // A load arrived for this week since the rollup was read; roll back and retry next run
+            throw new IllegalStateException("Week " + week + " changed during compaction: rolled up "
+                + (acceptedRows + rejectedRows) + " rows, deleted " + deleted);
+        }
+
+        acceptedReclaimedCounter.increment(acceptedRows);
+        rejectedReclaimedCounter.increment(rejectedRows);
+        log.debug("Compacted week {}: accepted={}, rejected={}", week, acceptedRows, rejectedRows);
+    }
+}
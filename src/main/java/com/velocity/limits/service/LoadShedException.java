@@ -0,0 +1,18 @@
+package com.velocity.limits.service;
+
+/**
+ * Thrown when a load is turned away by {@link AdmissionLimiter} before being decided.
+ * The caller may send it again after {@link #getRetryAfterSeconds()}.
+ */
+public class LoadShedException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public LoadShedException(long retryAfterSeconds) {
+        super("Too many loads being decided, retry after " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,16 @@
+package com.velocity.limits.service;
+
+/**
+ * Stages of one load decision in {@link LoadLimitService}, each timed as
+ * {@code load.stage.time} and recorded as a {@link LoadStageEvent}.
+ */
+enum LoadStage {
+    VALIDATE,
+    LOCK,
+    DEDUP,
+    TOTALS,
+    LIMITS,
+    SAVE;
+
+    final String tag = name().toLowerCase();
+}
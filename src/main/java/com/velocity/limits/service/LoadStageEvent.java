@@ -0,0 +1,32 @@
+package com.velocity.limits.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one {@link LoadStage} of a load decision. Disabled unless a recording
+ * enables it, e.g.
+ * {@code -XX:StartFlightRecording:com.velocity.limits.LoadStage#enabled=true,filename=loads.jfr}.
+ * Fields are only filled in when the event is committed.
+ */
+@Name("com.velocity.limits.LoadStage")
+@Label("Load Stage")
+@Description("One stage of a velocity limit decision")
+@Category({"Velocity Limits"})
+@Enabled(false)
+@StackTrace(false)
+class LoadStageEvent extends Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Load Id")
+    String loadId;
+
+    @Label("Customer Id")
+    String customerId;
+}
@@ -0,0 +1,13 @@
+package com.velocity.limits.service;
+
+/**
+ * A load reached an instance that does not own its customer. It was not decided or
+ * recorded, so it can be retried against the owner. Batches answer it with a
+ * {@link com.velocity.limits.model.LoadResponse#MISDIRECTED} line and carry on.
+ */
+public class NotOwnerException extends RuntimeException {
+
+    public NotOwnerException(String customerId) {
+        super("Customer is not owned by this node: " + customerId);
+    }
+}
@@ -0,0 +1,47 @@
+package com.velocity.limits.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Loads saved in the current transaction. When a batch runs with commit-time flushing,
+ * these rows are not yet visible to repository queries, so the duplicate check
+ * consults this set first.
+ */
+final class PendingLoadKeys {
+    private record LoadKey(String loadId, String customerId) {}
+
+    private PendingLoadKeys() {
+    }
+
+    static boolean contains(String loadId, String customerId) {
+        Set<LoadKey> keys = currentKeys();
+        return keys != null && keys.contains(new LoadKey(loadId, customerId));
+    }
+
+    static void add(String loadId, String customerId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Set<LoadKey> keys = currentKeys();
+        if (keys == null) {
+            keys = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(PendingLoadKeys.class, keys);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PendingLoadKeys.class);
+                }
+            });
+        }
+        keys.add(new LoadKey(loadId, customerId));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<LoadKey> currentKeys() {
+        return (Set<LoadKey>) TransactionSynchronizationManager.getResource(PendingLoadKeys.class);
+    }
+}
@@ -0,0 +1,105 @@
+package com.velocity.limits.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Bloom filter over the (loadId, customerId) of every recorded or retired load. A negative answer
+ * means the load is definitely new and the duplicate query can be skipped; a positive
+ * answer only means it may have been seen.
+ *
+ * <p>Bits are set with atomic ORs, so reads and writes need no locking. Keys are never
+ * removed: a rolled-back load only adds to the false-positive rate.
+ */
+@Component
+public class SeenLoadFilter {
+    private static final Logger log = LoggerFactory.getLogger(SeenLoadFilter.class);
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final LoadPersistence persistence;
+    private final boolean enabled;
+    private final long[] words;
+    private final long bitCount;
+    private final int hashCount;
+
+    public SeenLoadFilter(LoadPersistence persistence,
+                          @Value("${load.dedup.filter.enabled:true}") boolean enabled,
+                          @Value("${load.dedup.filter.expected-loads:10000000}") long expectedLoads,
+                          @Value("${load.dedup.filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.persistence = persistence;
+        this.enabled = enabled;
+
+        long bits = enabled
+            ? (long) Math.ceil(-expectedLoads * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)))
+            : 64;
+        this.words = new long[(int) Math.max(1, (bits + 63) >>> 6)];
+        this.bitCount = (long) words.length << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / Math.max(1, expectedLoads) * Math.log(2)));
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long[] count = new long[1];
+        persistence.forEachKey((loadId, customerId) -> {
+            put(loadId, customerId);
+            count[0]++;
+        });
+        log.info("Seen-load filter rebuilt from {} loads: bits={}, hashes={}", count[0], bitCount, hashCount);
+    }
+
+    public boolean mightContain(String loadId, String customerId) {
+        if (!enabled) {
+            return true;
+        }
+        long h1 = hash(loadId, customerId, 0x9E3779B97F4A7C15L);
+        long h2 = hash(loadId, customerId, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            long word = (long) WORDS.getAcquire(words, (int) (bit >>> 6));
+            if ((word & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void put(String loadId, String customerId) {
+        if (!enabled) {
+            return;
+        }
+        long h1 = hash(loadId, customerId, 0x9E3779B97F4A7C15L);
+        long h2 = hash(loadId, customerId, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            WORDS.getAndBitwiseOrRelease(words, (int) (bit >>> 6), 1L << bit);
+        }
+    }
+
+    private static long hash(String loadId, String customerId, long seed) {
+        long h = seed;
+        for (int i = 0; i < loadId.length(); i++) {
+            h = (h ^ loadId.charAt(i)) * 0x100000001B3L;
+        }
+        // Separator so ("ab", "c") and ("a", "bc") hash differently
+        h = (h ^ 0xFFFF) * 0x100000001B3L;
+        for (int i = 0; i < customerId.length(); i++) {
+            h = (h ^ customerId.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -0,0 +1,17 @@
+package com.velocity.limits.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Without {@code load.cluster.enabled}, every customer is decided here.
+ */
+@Component
+@ConditionalOnProperty(name = "load.cluster.enabled", havingValue = "false", matchIfMissing = true)
+public class SingleNodeOwnership implements CustomerOwnership {
+
+    @Override
+    public boolean owns(String customerId) {
+        return true;
+    }
+}
@@ -0,0 +1,287 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.model.EpochWindows;
+import com.velocity.limits.model.VelocityTotals;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Running totals of accepted loads per customer, so limit checks don't need to
+ * aggregate the customer's whole history on every request.
+ *
+ * <p>Each customer keeps one day, one week and one month bucket, keyed by
+ * {@link EpochWindows} numbers and positioned at the most
+ * recent accepted load. A customer is seeded from {@link LoadPersistence} the
+ * first time they are seen; requests that fall before the current buckets (out of
+ * order loads) or in compacted weeks are answered from it instead.
+ *
+ * <p>Buckets live off-heap in a {@link CustomerStateTable} bounded by
+ * {@code load.aggregates.max-customers}, all reserved up front (see
+ * {@link CustomerStateTable#capacityBytes()}). Evicted customers are seeded again on their
+ * next load. The few customer ids the table cannot store keep their buckets on the
+ * heap instead, without a bound.
+ *
+ * <p>A customer read for a limit check in a transaction is pinned until it completes,
+ * so their buckets are still cached when the load is recorded. Seeding them in between
+ * could miss the load, since a batch does not flush its inserts until it commits.
+ */
+@Component
+public class VelocityAggregateStore {
+    private static final Logger log = LoggerFactory.getLogger(VelocityAggregateStore.class);
+
+    private final LoadPersistence persistence;
+
+    private final CustomerStateTable table;
+
+    private final Map<String, CustomerAggregate> oversized = new ConcurrentHashMap<>();
+
+    public VelocityAggregateStore(LoadPersistence persistence,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${load.aggregates.max-customers:100000}") long maxCustomers,
+                                  @Value("${load.aggregates.segments:64}") int segments) {
+        this.persistence = persistence;
+        this.table = new CustomerStateTable(maxCustomers, segments);
+        log.info("Velocity aggregate table sized for {} customers: offHeapBytes={}", maxCustomers, table.capacityBytes());
+
+        Gauge.builder("load.aggregates.customers", table, CustomerStateTable::size)
+            .description("Customers with cached day, week and month totals")
+            .register(meterRegistry);
+        FunctionCounter.builder("load.aggregates.evictions.total", table, CustomerStateTable::evictions)
+            .description("Customers evicted from the aggregate table to make room")
+            .register(meterRegistry);
+    }
+
+    public VelocityTotals getTotals(String customerId, int epochDay, int epochWeek) {
+        boolean fits = CustomerStateTable.fits(customerId);
+        if (fits && TransactionSynchronizationManager.isSynchronizationActive()) {
+            pinUntilCompletion(customerId);
+        }
+        // The load's month can start up to 30 days before it
+        if (persistence.isCompacted(EpochWindows.epochWeek(epochDay - 30))) {
+            return persistence.totals(customerId, epochDay, epochWeek);
+        }
+        VelocityTotals totals;
+        if (fits) {
+            totals = table.totals(customerId, epochDay);
+            if (totals == null && !table.contains(customerId)) {
+                seed(customerId);
+                totals = table.totals(customerId, epochDay);
+            }
+        } else {
+            totals = oversized.computeIfAbsent(customerId, this::seedOversized).totals(epochDay);
+        }
+        if (totals != null) {
+            return totals;
+        }
+        log.debug("Load precedes cached buckets, querying persistence: customer={}, epochDay={}", customerId, epochDay);
+        return persistence.totals(customerId, epochDay, epochWeek);
+    }
+
+    /**
+     * Like {@link #getTotals}, but a customer that is not cached is answered from
+     * persistence without being seeded, for callers that don't hold the customer's lock.
+     * A seed read just before a load commits could otherwise be stored after it, and the
+     * cache would then miss that load.
+     */
+    public VelocityTotals peekTotals(String customerId, int epochDay, int epochWeek) {
+        if (!persistence.isCompacted(EpochWindows.epochWeek(epochDay - 30))) {
+            VelocityTotals totals;
+            if (CustomerStateTable.fits(customerId)) {
+                totals = table.totals(customerId, epochDay);
+            } else {
+                CustomerAggregate aggregate = oversized.get(customerId);
+                totals = aggregate == null ? null : aggregate.totals(epochDay);
+            }
+            if (totals != null) {
+                return totals;
+            }
+        }
+        return persistence.totals(customerId, epochDay, epochWeek);
+    }
+
+    /**
+     * Adds an accepted load to the customer's buckets. Until the surrounding transaction
+     * completes, the customer is not evicted. If it does not commit, the customer is
+     * answered from persistence until every other transaction adding to their buckets
+     * has completed too, then dropped and re-seeded on next use.
+     */
+    public void recordAccepted(String customerId, int epochDay, int epochWeek, long amountCents) {
+        boolean transactional = TransactionSynchronizationManager.isSynchronizationActive();
+        if (!CustomerStateTable.fits(customerId)) {
+            CustomerAggregate aggregate = oversized.computeIfAbsent(customerId, this::seedOversized);
+            aggregate.add(epochDay, amountCents, transactional);
+            if (transactional) {
+                afterCompletion(committed -> {
+                    if (aggregate.unpin(!committed)) {
+                        oversized.remove(customerId, aggregate);
+                    }
+                });
+            }
+            return;
+        }
+
+        if (table.add(customerId, epochDay, amountCents, transactional)) {
+            if (transactional) {
+                afterCompletion(committed -> table.unpin(customerId, !committed));
+            }
+        } else {
+            // Evicted since the limit check, which getTotals prevents in a transaction by
+            // pinning the customer. Without one the load has already committed, so
+            // seeding again picks it up.
+            seed(customerId);
+        }
+    }
+
+    /**
+     * Drops the customer's buckets, so they are seeded again from persistence on next use.
+     */
+    public void evict(String customerId) {
+        if (CustomerStateTable.fits(customerId)) {
+            table.remove(customerId);
+        } else {
+            oversized.remove(customerId);
+        }
+    }
+
+    public void clear() {
+        table.clear();
+        oversized.clear();
+    }
+
+    /**
+     * Pins the customer, seeding them first if they are not cached, and unpins them
+     * when the surrounding transaction completes.
+     */
+    private void pinUntilCompletion(String customerId) {
+        // Other customers seeded meanwhile may evict them again before the pin
+        while (!table.pin(customerId)) {
+            seed(customerId);
+        }
+        afterCompletion(committed -> table.unpin(customerId));
+    }
+
+    private static void afterCompletion(Consumer<Boolean> action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.accept(status == STATUS_COMMITTED);
+            }
+        });
+    }
+
+    private void seed(String customerId) {
+        Integer latestDay = persistence.latestAcceptedEpochDay(customerId);
+        if (latestDay == null) {
+            table.putIfAbsent(customerId, CustomerStateTable.NONE, VelocityTotals.EMPTY);
+            return;
+        }
+        table.putIfAbsent(customerId, latestDay,
+            persistence.totals(customerId, latestDay, EpochWindows.epochWeek(latestDay)));
+    }
+
+    private CustomerAggregate seedOversized(String customerId) {
+        CustomerAggregate aggregate = new CustomerAggregate();
+        Integer latestDay = persistence.latestAcceptedEpochDay(customerId);
+        if (latestDay != null) {
+            VelocityTotals totals = persistence.totals(customerId, latestDay, EpochWindows.epochWeek(latestDay));
+            aggregate.day = latestDay;
+            aggregate.dayCount = totals.dailyCount();
+            aggregate.dayAmountCents = totals.dailyAmountCents();
+            aggregate.week = EpochWindows.epochWeek(latestDay);
+            aggregate.weekCount = totals.weeklyCount();
+            aggregate.weekAmountCents = totals.weeklyAmountCents();
+            aggregate.month = EpochWindows.epochMonth(latestDay);
+            aggregate.monthAmountCents = totals.monthlyAmountCents();
+        }
+        return aggregate;
+    }
+
+    /**
+     * Day, week and month buckets for one customer whose id does not fit the table,
+     * kept like a {@link CustomerStateTable} slot. No accepted load exists after the
+     * current buckets, so a later window starts from zero.
+     */
+    private static final class CustomerAggregate {
+        private int day = CustomerStateTable.NONE;
+        private long dayCount;
+        private long dayAmountCents;
+        private int week = CustomerStateTable.NONE;
+        private long weekCount;
+        private long weekAmountCents;
+        private int month = CustomerStateTable.NONE;
+        private long monthAmountCents;
+        private int pins;
+        private boolean stale;
+
+        synchronized VelocityTotals totals(int loadDay) {
+            if (stale || loadDay < day) {
+                return null;
+            }
+            boolean sameDay = loadDay == day;
+            boolean sameWeek = sameDay || EpochWindows.epochWeek(loadDay) == week;
+            boolean sameMonth = sameDay || EpochWindows.epochMonth(loadDay) == month;
+            return new VelocityTotals(
+                sameDay ? dayCount : 0,
+                sameDay ? dayAmountCents : 0,
+                sameWeek ? weekCount : 0,
+                sameWeek ? weekAmountCents : 0,
+                sameMonth ? monthAmountCents : 0
+            );
+        }
+
+        synchronized void add(int loadDay, long amountCents, boolean pin) {
+            if (pin) {
+                pins++;
+            }
+            int loadWeek = EpochWindows.epochWeek(loadDay);
+            int loadMonth = EpochWindows.epochMonth(loadDay);
+            if (loadDay > day) {
+                day = loadDay;
+                dayCount = 0;
+                dayAmountCents = 0;
+            }
+            if (loadDay == day) {
+                dayCount++;
+                dayAmountCents += amountCents;
+            }
+            if (loadWeek > week) {
+                week = loadWeek;
+                weekCount = 0;
+                weekAmountCents = 0;
+            }
+            if (loadWeek == week) {
+                weekCount++;
+                weekAmountCents += amountCents;
+            }
+            if (loadMonth > month) {
+                month = loadMonth;
+                monthAmountCents = 0;
+            }
+            if (loadMonth == month) {
+                monthAmountCents += amountCents;
+            }
+        }
+
+        /**
+         * Releases a pin taken by {@link #add}, marking the buckets stale if
+         * {@code discard} is set. Returns true if they are stale and no longer pinned,
+         * so they should be dropped.
+         */
+        synchronized boolean unpin(boolean discard) {
+            pins--;
+            stale |= discard;
+            return stale && pins <= 0;
+        }
+    }
+}
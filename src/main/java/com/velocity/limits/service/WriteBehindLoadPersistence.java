@@ -0,0 +1,377 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.entity.CustomerLoad;
+import com.velocity.limits.model.VelocityTotals;
+import com.velocity.limits.repository.CustomerLoadRepository;
+import com.velocity.limits.repository.CustomerWeeklyTotalRepository;
+import com.velocity.limits.repository.RetiredLoadKeyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Records loads as {@link CustomerLoad} rows like {@link JpaLoadPersistence}, but off the
+ * decision path: {@link #record} hands each load to a bounded queue, and a single writer
+ * thread saves them in batches, each in its own transaction. The writer holds a
+ * connection of its own from startup, so it never waits for the pool behind decisions
+ * that are waiting for it.
+ *
+ * <p>With {@code durability=enqueue} a decision returns once its load is queued, so a
+ * crash loses whatever is still queued. With {@code durability=flush} it waits until
+ * the batch holding its load commits; concurrent decisions share that commit. Either
+ * way the rows are written independently of the caller's transaction and are not
+ * undone if it rolls back.
+ *
+ * <p>When the queue is full, {@link #record} waits up to {@code offer-timeout-ms} and
+ * then fails the decision. Reads for a customer with queued loads wait until those are
+ * written, so they never miss a decided load. Waits for a write fail after
+ * {@code await-timeout-ms}; the load may still be written later.
+ *
+ * <p>A batch that fails {@code max-attempts} times is written one load at a time, and
+ * loads that still fail are dropped and logged, so one bad load cannot stall the
+ * writer. A decision waiting for a dropped load fails.
+ */
+@Component
+@ConditionalOnProperty(name = "load.persistence.mode", havingValue = "write-behind")
+public class WriteBehindLoadPersistence implements LoadPersistence {
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindLoadPersistence.class);
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private record QueuedLoad(long sequence, long enqueuedNanos, CustomerLoad load) {}
+
+    private final JpaLoadPersistence delegate;
+    private final SessionFactory sessionFactory;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final boolean ackAfterFlush;
+    private final long offerTimeoutMillis;
+    private final long awaitTimeoutMillis;
+    private final int maxAttempts;
+
+    private final BlockingQueue<QueuedLoad> queue;
+    // Sequence of each customer's latest queued load, removed once it is written
+    private final Map<String, Long> queuedByCustomer = new ConcurrentHashMap<>();
+    private final Object flushMonitor = new Object();
+    // Sequences of dropped loads whose decision waits for them, see record
+    private final Set<Long> dropped = ConcurrentHashMap.newKeySet();
+    private long nextSequence;
+    private volatile long flushedSequence;
+    private volatile boolean running = true;
+    private Thread writer;
+    // Used by the writer thread only; null until opened and after a failure
+    private Session session;
+
+    private Timer flushTimer;
+    private DistributionSummary flushSizeSummary;
+    private Timer lagTimer;
+    private Timer backpressureTimer;
+    private Counter rejectedCounter;
+    private Counter flushFailuresCounter;
+    private Counter droppedCounter;
+
+    public WriteBehindLoadPersistence(CustomerLoadRepository loadRepository,
+                                      CustomerWeeklyTotalRepository weeklyTotalRepository,
+                                      RetiredLoadKeyRepository retiredKeyRepository,
+                                      EntityManagerFactory entityManagerFactory,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${load.write-behind.queue-capacity:100000}") int queueCapacity,
+                                      @Value("${load.write-behind.batch-size:500}") int batchSize,
+                                      @Value("${load.write-behind.durability:enqueue}") String durability,
+                                      @Value("${load.write-behind.offer-timeout-ms:1000}") long offerTimeoutMillis,
+                                      @Value("${load.write-behind.await-timeout-ms:10000}") long awaitTimeoutMillis,
+                                      @Value("${load.write-behind.max-attempts:5}") int maxAttempts) {
+        if (!durability.equals("enqueue") && !durability.equals("flush")) {
+            throw new IllegalArgumentException("load.write-behind.durability must be enqueue or flush: " + durability);
+        }
+        this.delegate = new JpaLoadPersistence(loadRepository, weeklyTotalRepository, retiredKeyRepository);
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.meterRegistry = meterRegistry;
+        this.batchSize = Math.max(1, batchSize);
+        this.ackAfterFlush = durability.equals("flush");
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.awaitTimeoutMillis = awaitTimeoutMillis;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        delegate.initCompactionHorizon();
+
+        Gauge.builder("load.write-behind.queue.depth", queue, BlockingQueue::size)
+            .description("Decided loads waiting to be written")
+            .register(meterRegistry);
+        flushTimer = Timer.builder("load.write-behind.flush.time")
+            .description("Time taken to write and commit one batch of loads")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        flushSizeSummary = DistributionSummary.builder("load.write-behind.flush.size")
+            .description("Loads written per batch")
+            .register(meterRegistry);
+        lagTimer = Timer.builder("load.write-behind.lag")
+            .description("Time from a load being queued to its batch committing")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        backpressureTimer = Timer.builder("load.write-behind.backpressure.time")
+            .description("Time decisions waited for room in a full queue")
+            .register(meterRegistry);
+        rejectedCounter = Counter.builder("load.write-behind.rejected.total")
+            .description("Decisions failed because the queue stayed full")
+            .register(meterRegistry);
+        flushFailuresCounter = Counter.builder("load.write-behind.flush.failures.total")
+            .description("Batch writes that failed")
+            .register(meterRegistry);
+        droppedCounter = Counter.builder("load.write-behind.dropped.total")
+            .description("Loads dropped after their batch ran out of attempts and they failed on their own")
+            .register(meterRegistry);
+
+        // Taken before any load is queued, while the pool is not yet busy with decisions
+        session = openSession();
+        writer = new Thread(this::writeLoop, "load-write-behind");
+        writer.start();
+    }
+
+    /**
+     * Stops taking loads and waits for the writer to drain the queue.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join();
+    }
+
+    @Override
+    public void record(CustomerLoad load) {
+        QueuedLoad queued;
+        synchronized (this) {
+            // Sequences must enter the queue in order, so the writer can track progress with one number
+            queued = new QueuedLoad(++nextSequence, System.nanoTime(), load);
+            Long previous = queuedByCustomer.put(load.getCustomerId(), queued.sequence());
+            if (!offer(queued)) {
+                nextSequence--;
+                if (previous == null) {
+                    queuedByCustomer.remove(load.getCustomerId(), queued.sequence());
+                } else {
+                    queuedByCustomer.replace(load.getCustomerId(), queued.sequence(), previous);
+                }
+                rejectedCounter.increment();
+                throw new IllegalStateException("Write-behind queue full, load not recorded: " + load.getLoadId());
+            }
+        }
+        if (ackAfterFlush) {
+            awaitFlushed(queued.sequence());
+            if (dropped.remove(queued.sequence())) {
+                throw new IllegalStateException("Load could not be written: " + load.getLoadId());
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(String loadId, String customerId) {
+        awaitQueued(customerId);
+        return delegate.exists(loadId, customerId);
+    }
+
+    @Override
+    public VelocityTotals totals(String customerId, int epochDay, int epochWeek) {
+        awaitQueued(customerId);
+        return delegate.totals(customerId, epochDay, epochWeek);
+    }
+
+    @Override
+    public Integer latestAcceptedEpochDay(String customerId) {
+        awaitQueued(customerId);
+        return delegate.latestAcceptedEpochDay(customerId);
+    }
+
+    @Override
+    public boolean isCompacted(int epochWeek) {
+        return delegate.isCompacted(epochWeek);
+    }
+
+    @Override
+    public void forEachKey(BiConsumer<String, String> action) {
+        delegate.forEachKey(action);
+    }
+
+    private boolean offer(QueuedLoad queued) {
+        if (queue.offer(queued)) {
+            return true;
+        }
+        long started = System.nanoTime();
+        try {
+            return queue.offer(queued, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            backpressureTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void awaitQueued(String customerId) {
+        Long sequence = queuedByCustomer.get(customerId);
+        if (sequence != null) {
+            awaitFlushed(sequence);
+        }
+    }
+
+    private void awaitFlushed(long sequence) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(awaitTimeoutMillis);
+        synchronized (flushMonitor) {
+            while (flushedSequence < sequence) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new IllegalStateException("Load " + sequence + " not written within " + awaitTimeoutMillis + " ms");
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(flushMonitor, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for load " + sequence + " to be written", e);
+                }
+            }
+        }
+    }
+
+    private void writeLoop() {
+        List<QueuedLoad> batch = new ArrayList<>(batchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                QueuedLoad first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeUntilDone(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Write-behind writer interrupted with {} loads queued", queue.size());
+        } finally {
+            closeSession();
+        }
+    }
+
+    private void writeUntilDone(List<QueuedLoad> batch) throws InterruptedException {
+        List<CustomerLoad> loads = new ArrayList<>(batch.size());
+        for (QueuedLoad queued : batch) {
+            loads.add(queued.load());
+        }
+        for (int attempt = 1; ; attempt++) {
+            long started = System.nanoTime();
+            try {
+                write(loads);
+                break;
+            } catch (RuntimeException e) {
+                flushFailuresCounter.increment();
+                if (attempt >= maxAttempts) {
+                    log.error("Writing {} queued loads failed {} times, writing them one at a time",
+                        loads.size(), attempt, e);
+                    writeEach(batch);
+                    break;
+                }
+                log.error("Writing {} queued loads failed, retrying in {} ms", loads.size(), RETRY_DELAY_MILLIS, e);
+                Thread.sleep(RETRY_DELAY_MILLIS);
+            } finally {
+                flushTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        }
+        flushSizeSummary.record(batch.size());
+
+        long now = System.nanoTime();
+        for (QueuedLoad queued : batch) {
+            lagTimer.record(now - queued.enqueuedNanos(), TimeUnit.NANOSECONDS);
+            queuedByCustomer.remove(queued.load().getCustomerId(), queued.sequence());
+        }
+        synchronized (flushMonitor) {
+            flushedSequence = batch.get(batch.size() - 1).sequence();
+            flushMonitor.notifyAll();
+        }
+    }
+
+    private void writeEach(List<QueuedLoad> batch) {
+        for (QueuedLoad queued : batch) {
+            CustomerLoad load = queued.load();
+            try {
+                write(List.of(load));
+            } catch (RuntimeException e) {
+                droppedCounter.increment();
+                if (ackAfterFlush) {
+                    dropped.add(queued.sequence());
+                }
+                log.error("Dropping load that could not be written: id={}, customer={}",
+                    load.getLoadId(), load.getCustomerId(), e);
+            }
+        }
+    }
+
+    /**
+     * Inserts {@code loads} in one transaction on the writer's own session, reopening it
+     * if an earlier failure closed it.
+     */
+    private void write(List<CustomerLoad> loads) {
+        try {
+            if (session == null) {
+                session = openSession();
+            }
+            Transaction tx = session.beginTransaction();
+            for (CustomerLoad load : loads) {
+                // Ids assigned by a failed attempt were rolled back with it
+                load.setId(null);
+                session.persist(load);
+            }
+            tx.commit();
+            session.clear();
+        } catch (RuntimeException e) {
+            // The session is unusable after a failure; the next write opens another
+            closeSession();
+            throw e;
+        }
+    }
+
+    private Session openSession() {
+        return sessionFactory.withOptions()
+            .connectionHandlingMode(PhysicalConnectionHandlingMode.IMMEDIATE_ACQUISITION_AND_HOLD)
+            .openSession();
+    }
+
+    private void closeSession() {
+        if (session == null) {
+            return;
+        }
+        try {
+            session.close();
+        } catch (RuntimeException e) {
+            log.warn("Closing the write-behind session failed", e);
+        } finally {
+            session = null;
+        }
+    }
+}
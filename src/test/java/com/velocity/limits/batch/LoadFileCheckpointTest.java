@@ -0,0 +1,125 @@
+package com.velocity.limits.batch;
+
+import com.velocity.limits.VelocityLimitsApplication;
+import com.velocity.limits.entity.FileCheckpoint;
+import com.velocity.limits.repository.FileCheckpointRepository;
+import com.velocity.limits.service.CustomerLocks;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadFileCheckpointTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Starts the application, which processes the input file, and stops it again. The
+     * database is a file, so it outlives each run.
+     */
+    private FileCheckpoint run(Path input, Path output) {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(VelocityLimitsApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:file:" + directory.resolve("db"),
+                    "--load.file.input-path=" + input,
+                    "--load.file.output-path=" + output,
+                    "--load.file.checkpoint=true",
+                    "--load.file.batch-size=7")) {
+            return context.getBean(FileCheckpointRepository.class)
+                .findById(input.toAbsolutePath().normalize().toString()).orElseThrow();
+        }
+    }
+
+    @Test
+    void shouldResumeAfterLastCommittedBatchWithoutLosingOrRepeatingResponses() throws IOException {
+        List<String> lines = Files.readAllLines(Path.of("src/main/resources/input.txt"));
+        Path input = directory.resolve("input.txt");
+        Path output = directory.resolve("output.txt");
+        Files.write(input, lines.subList(0, 600));
+
+        FileCheckpoint checkpoint = run(input, output);
+        assertEquals(Files.size(input), checkpoint.getInputOffset());
+        assertTrue(checkpoint.getPendingOutput().length > 0);
+
+        // As if the process died while writing the last batch's responses
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+            channel.truncate(checkpoint.getOutputLength() + 10);
+        }
+        Files.write(input, lines.subList(600, lines.size()), StandardOpenOption.APPEND);
+        run(input, output);
+
+        assertEquals(Files.readAllLines(Path.of("src/main/output/output.txt")), Files.readAllLines(output));
+    }
+
+    @Test
+    void shouldNotCheckpointPastLineWaitingForItsCustomersLock() throws Exception {
+        Path empty = Files.createFile(directory.resolve("empty.txt"));
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(VelocityLimitsApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:checkpoint-contended",
+                    "--load.file.input-path=" + empty,
+                    "--load.file.output-path=" + directory.resolve("empty-output.txt"),
+                    "--load.file.checkpoint=true",
+                    "--load.file.batch-size=7")) {
+            CustomerLocks locks = context.getBean(CustomerLocks.class);
+            String first = "checkpoint-a";
+            String second = "checkpoint-b0";
+            for (int i = 1; locks.lockFor(first) == locks.lockFor(second); i++) {
+                second = "checkpoint-b" + i;
+            }
+            String line = "{\"id\":\"%s\",\"customer_id\":\"%s\",\"load_amount\":\"$10.00\",\"time\":\"2030-03-04T00:00:00Z\"}\n";
+            String decided = line.formatted("1", first) + line.formatted("2", first);
+            Path input = directory.resolve("contended.txt");
+            Path output = directory.resolve("contended-output.txt");
+            Files.writeString(input, decided + line.formatted("3", second));
+            String key = input.toAbsolutePath().normalize().toString();
+            FileCheckpointRepository checkpoints = context.getBean(FileCheckpointRepository.class);
+
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<?> processing;
+            Lock lock = locks.lockFor(second);
+            lock.lock();
+            try {
+                processing = executor.submit(() -> {
+                    context.getBean(LoadFileProcessor.class).process(input, output);
+                    return null;
+                });
+                // The batch commits the first two lines before waiting for the third's lock
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                Optional<FileCheckpoint> checkpoint;
+                while ((checkpoint = checkpoints.findById(key)).isEmpty()) {
+                    assertTrue(System.nanoTime() < deadline, "No checkpoint before the contended line");
+                    Thread.sleep(10);
+                }
+                // A run resumed from here must still decide the third line
+                assertEquals(decided.length(), checkpoint.get().getInputOffset());
+            } finally {
+                lock.unlock();
+            }
+            try {
+                processing.get(10, TimeUnit.SECONDS);
+            } finally {
+                executor.shutdownNow();
+            }
+            assertEquals(Files.size(input), checkpoints.findById(key).orElseThrow().getInputOffset());
+            assertEquals(3, Files.readAllLines(output).size());
+        }
+    }
+}
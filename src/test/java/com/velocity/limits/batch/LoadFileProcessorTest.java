@@ -0,0 +1,27 @@
+package com.velocity.limits.batch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:partitioned-file-test",
+    "load.file.workers=4",
+    "load.file.output-path=target/partitioned-output.txt"
+})
+class LoadFileProcessorTest {
+
+    @Test
+    void partitionedRunShouldMatchExpectedOutput() throws IOException {
+        // The input file is processed on startup with 4 workers
+        assertEquals(
+            Files.readAllLines(Path.of("src/main/output/output.txt")),
+            Files.readAllLines(Path.of("target/partitioned-output.txt"))
+        );
+    }
+}
@@ -0,0 +1,68 @@
+package com.velocity.limits.batch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.velocity.limits.model.LoadRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadFileReaderTest {
+
+    private LoadFileReader readerFor(String content, int bufferSize) {
+        return new LoadFileReader(
+            Channels.newChannel(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))),
+            new JsonFactory(),
+            bufferSize
+        );
+    }
+
+    @Test
+    void shouldParseLinesLongerThanBuffer() throws IOException {
+        String content = "{\"id\":\"1\",\"customer_id\":\"528\",\"load_amount\":\"$3318.47\",\"time\":\"2000-01-01T00:00:00Z\"}\r\n"
+            + "{\"customer_id\":\"154\",\"id\":\"2\",\"extra\":{\"a\":[1]},\"load_amount\":\"$1.00\",\"time\":\"2000-01-02T01:01:22Z\"}";
+
+        try (LoadFileReader reader = readerFor(content, 8)) {
+            LoadRequest request = new LoadRequest();
+
+            assertTrue(reader.next(request));
+            assertEquals("1", request.getId());
+            assertEquals("528", request.getCustomerId());
+            assertEquals(331847, request.getLoadAmountCents());
+            assertEquals(ZonedDateTime.parse("2000-01-01T00:00:00Z").toInstant(), request.getTime().toInstant());
+
+            assertTrue(reader.next(request));
+            assertEquals("2", request.getId());
+            assertEquals("154", request.getCustomerId());
+            assertEquals(100, request.getLoadAmountCents());
+
+            assertFalse(reader.next(request));
+        }
+    }
+
+    @Test
+    void shouldContinueAfterMalformedLine() throws IOException {
+        String content = "not json\n{\"id\":\"3\",\"customer_id\":\"1\"}\n";
+
+        try (LoadFileReader reader = readerFor(content, 1024)) {
+            LoadRequest request = new LoadRequest();
+            request.setLoadAmount("$5.00");
+
+            assertThrows(JsonProcessingException.class, () -> reader.next(request));
+            assertEquals("not json", reader.currentLine());
+
+            assertTrue(reader.next(request));
+            assertEquals("3", request.getId());
+            assertNull(request.getLoadAmount());
+            assertNull(request.getTime());
+
+            assertFalse(reader.next(request));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.velocity.limits.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.velocity.limits.model.LoadResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadResponseWriterTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private static List<LoadResponse> responses() {
+        List<LoadResponse> responses = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            responses.add(LoadResponse.builder().id(String.valueOf(i)).customerId(String.valueOf(i % 37))
+                .accepted(i % 3 != 0).build());
+        }
+        responses.add(LoadResponse.builder().id("quote\"back\\slash/").customerId("tab\tnl\ncr\rbs\bff\f\u0001\u001f\u007f")
+            .accepted(true).build());
+        responses.add(LoadResponse.builder().id("kundé").customerId("客户😀").accepted(false)
+            .rejectedBy("daily-count").build());
+        responses.add(LoadResponse.builder().id("7").customerId("elsewhere").error(LoadResponse.MISDIRECTED).build());
+        responses.add(LoadResponse.builder().accepted(false).build());
+        return responses;
+    }
+
+    /**
+     * What the input file runner wrote before: Jackson per response through a BufferedWriter.
+     */
+    private String expected(List<LoadResponse> responses) throws IOException {
+        StringWriter out = new StringWriter();
+        for (LoadResponse response : responses) {
+            out.write(objectMapper.writeValueAsString(response));
+            out.write(System.lineSeparator());
+        }
+        return out.toString();
+    }
+
+    @Test
+    void shouldWriteSameBytesAsJackson() throws IOException {
+        List<LoadResponse> responses = responses();
+        for (boolean backgroundWriter : new boolean[] {false, true}) {
+            // Smaller than a line, so lines are split across buffers
+            Path output = directory.resolve("output-" + backgroundWriter + ".txt");
+            try (LoadResponseWriter writer = LoadResponseWriter.open(output, 16, backgroundWriter)) {
+                for (LoadResponse response : responses) {
+                    writer.write(response);
+                }
+            }
+
+            assertEquals(expected(responses), Files.readString(output, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void shouldWriteEverythingBufferedOnFlush() throws IOException {
+        Path output = directory.resolve("output.txt");
+        Files.writeString(output, "left over from an earlier run, longer than the new output");
+        try (LoadResponseWriter writer = LoadResponseWriter.open(output, 1 << 16, true)) {
+            writer.write(responses().get(1));
+            writer.flush();
+
+            assertEquals(expected(responses().subList(1, 2)), Files.readString(output));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.velocity.limits.batch;
+
+import com.velocity.limits.model.LoadRequest;
+import com.velocity.limits.model.LoadResponse;
+import com.velocity.limits.service.LoadLimitService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class LoadStreamProcessorTest {
+
+    @Autowired
+    private LoadStreamProcessor loadStreamProcessor;
+
+    @Autowired
+    private LoadLimitService loadLimitService;
+
+    @Test
+    void shouldReleaseCustomersWhileTheClientPauses() throws Exception {
+        PipedOutputStream client = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(client);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> processing = executor.submit(() -> {
+                loadStreamProcessor.process(in, out);
+                return null;
+            });
+            client.write("""
+                {"id":"1","customer_id":"paused-1","load_amount":"$100.00","time":"2030-02-04T00:00:00Z"}
+                """.getBytes(StandardCharsets.UTF_8));
+            client.flush();
+
+            // The client sends nothing more for now: the first decision is already answered
+            String first = "{\"id\":\"1\",\"customer_id\":\"paused-1\",\"accepted\":true}\n";
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!out.toString(StandardCharsets.UTF_8).equals(first)) {
+                assertTrue(System.nanoTime() < deadline, "No response while the client paused: " + out);
+                Thread.sleep(10);
+            }
+
+            // and the customer is free for other requests
+            LoadRequest request = new LoadRequest();
+            request.setId("2");
+            request.setCustomerId("paused-1");
+            request.setLoadAmount("$100.00");
+            request.setTime(ZonedDateTime.parse("2030-02-04T01:00:00Z"));
+            Future<LoadResponse> concurrent = executor.submit(() -> loadLimitService.processLoad(request));
+            assertTrue(concurrent.get(10, TimeUnit.SECONDS).isAccepted());
+
+            client.write("""
+                {"id":"3","customer_id":"paused-1","load_amount":"$100.00","time":"2030-02-04T02:00:00Z"}
+                """.getBytes(StandardCharsets.UTF_8));
+            client.close();
+            processing.get(10, TimeUnit.SECONDS);
+            assertEquals(first + "{\"id\":\"3\",\"customer_id\":\"paused-1\",\"accepted\":true}\n",
+                out.toString(StandardCharsets.UTF_8));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.velocity.limits.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterMembershipTest {
+    private static final String A = "http://a";
+    private static final String B = "http://b";
+    private static final String C = "http://c";
+
+    private static ClusterMembership membership(List<String> nodes) {
+        return new ClusterMembership(A, nodes.toArray(String[]::new), 128, "jpa", new SimpleMeterRegistry());
+    }
+
+    /**
+     * A customer that moves from {@code from} to {@code to} between the two rings.
+     */
+    private static String moving(List<String> before, List<String> after, String from, String to) {
+        ShardRing previous = new ShardRing(before, 128);
+        ShardRing next = new ShardRing(after, 128);
+        for (int i = 0; ; i++) {
+            String candidate = "customer-" + i;
+            if (previous.ownerOf(candidate).equals(from) && next.ownerOf(candidate).equals(to)) {
+                return candidate;
+            }
+        }
+    }
+
+    @Test
+    void shouldIgnoreHandoffReportsFromAnEarlierRebalance() {
+        List<String> twoNodes = List.of(A, B);
+        List<String> threeNodes = List.of(A, B, C);
+        ClusterMembership membership = membership(twoNodes);
+
+        membership.beginRebalance(new Rebalance("first", twoNodes, threeNodes));
+        membership.handoffCompleted("first", A);
+        membership.handoffCompleted("first", B);
+        assertNull(membership.previous());
+        // c's report for the first rebalance is retried after it has ended
+        membership.handoffCompleted("first", C);
+
+        membership.beginRebalance(new Rebalance("second", threeNodes, twoNodes));
+        String customerId = moving(threeNodes, twoNodes, C, A);
+        membership.handoffCompleted("first", C);
+        assertEquals(C, membership.route(customerId));
+        assertFalse(membership.owns(customerId));
+
+        membership.handoffCompleted("second", C);
+        assertNull(membership.route(customerId));
+        membership.handoffCompleted("second", A);
+        membership.handoffCompleted("second", B);
+        assertNull(membership.previous());
+    }
+
+    @Test
+    void shouldStopDecidingLeavingCustomersOnceFenced() {
+        List<String> twoNodes = List.of(A, B);
+        List<String> threeNodes = List.of(A, B, C);
+        ClusterMembership membership = membership(twoNodes);
+        membership.beginRebalance(new Rebalance("grow", twoNodes, threeNodes));
+        // Not handed off: first seen after the last handoff pass
+        String customerId = moving(twoNodes, threeNodes, A, C);
+        assertNull(membership.route(customerId));
+
+        membership.fence("earlier");
+        assertNull(membership.route(customerId));
+        membership.fence("grow");
+        assertEquals(C, membership.route(customerId));
+        assertFalse(membership.owns(customerId));
+        // Customers staying here are unaffected
+        assertNull(membership.route(moving(twoNodes, threeNodes, A, A)));
+    }
+
+    @Test
+    void shouldCountHandoffReportThatArrivesBeforeItsRebalance() {
+        List<String> twoNodes = List.of(A, B);
+        List<String> threeNodes = List.of(A, B, C);
+        ClusterMembership membership = membership(threeNodes);
+
+        membership.handoffCompleted("shrink", C);
+        membership.beginRebalance(new Rebalance("shrink", threeNodes, twoNodes));
+        assertNull(membership.route(moving(threeNodes, twoNodes, C, A)));
+
+        membership.handoffCompleted("shrink", A);
+        membership.handoffCompleted("shrink", B);
+        assertNull(membership.previous());
+    }
+}
@@ -0,0 +1,240 @@
+package com.velocity.limits.cluster;
+
+import com.velocity.limits.VelocityLimitsApplication;
+import com.velocity.limits.batch.LoadStreamProcessor;
+import com.velocity.limits.repository.CustomerLoadRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs real nodes on local ports, each with its own in-memory database.
+ */
+class ClusterTest {
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private ConfigurableApplicationContext start(String name, int port, List<String> ring) throws IOException {
+        Path input = Files.createFile(directory.resolve(name + "-input.txt"));
+        ConfigurableApplicationContext node = new SpringApplicationBuilder(VelocityLimitsApplication.class).run(
+            "--server.port=" + port,
+            "--spring.datasource.url=jdbc:h2:mem:cluster-" + name,
+            "--load.file.input-path=" + input,
+            "--load.file.output-path=" + directory.resolve(name + "-output.txt"),
+            "--load.cluster.enabled=true",
+            "--load.cluster.self-url=" + url(port),
+            "--load.cluster.nodes=" + String.join(",", ring));
+        nodes.add(node);
+        return node;
+    }
+
+    private static String url(int port) {
+        return "http://localhost:" + port;
+    }
+
+    private HttpResponse<String> send(String method, String uri, String contentType, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri))
+            .header("Content-Type", contentType)
+            .method(method, HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> load(String node, String id, String customerId, String time)
+            throws IOException, InterruptedException {
+        return send("POST", node + "/api/loads", "application/json",
+            "{\"id\":\"" + id + "\",\"customer_id\":\"" + customerId + "\",\"load_amount\":\"$10.00\",\"time\":\"" + time + "\"}");
+    }
+
+    private static long rows(ConfigurableApplicationContext node, String customerId) {
+        return node.getBean(CustomerLoadRepository.class).findByCustomerId(customerId).size();
+    }
+
+    private boolean rebalancing(String node) throws IOException, InterruptedException {
+        return !send("GET", node + "/api/cluster/nodes", "application/json", "").body().contains("\"previous\":null");
+    }
+
+    private void awaitRebalanced(List<String> nodes) throws IOException, InterruptedException {
+        for (String node : nodes) {
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (rebalancing(node)) {
+                assertTrue(System.currentTimeMillis() < deadline, "Rebalance did not finish on " + node);
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    @Test
+    void shouldRouteLoadsToOwnerAndMoveCustomersWhenNodeJoins() throws Exception {
+        String a = url(freePort());
+        String b = url(freePort());
+        String c = url(freePort());
+        List<String> twoNodes = List.of(a, b);
+        ConfigurableApplicationContext nodeA = start("a", URI.create(a).getPort(), twoNodes);
+        ConfigurableApplicationContext nodeB = start("b", URI.create(b).getPort(), twoNodes);
+
+        // A customer owned by b that moves to c once c joins
+        ShardRing before = new ShardRing(twoNodes, 128);
+        ShardRing after = new ShardRing(List.of(a, b, c), 128);
+        String customerId = null;
+        for (int i = 0; customerId == null; i++) {
+            String candidate = "customer-" + i;
+            if (before.ownerOf(candidate).equals(b) && after.ownerOf(candidate).equals(c)) {
+                customerId = candidate;
+            }
+        }
+
+        for (int i = 1; i <= 3; i++) {
+            HttpResponse<String> response = load(a, String.valueOf(i), customerId, "2030-01-07T0" + i + ":00:00Z");
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().contains("\"accepted\":true"), response.body());
+        }
+        assertEquals(0, rows(nodeA, customerId));
+        assertEquals(3, rows(nodeB, customerId));
+
+        // A bulk request split between both nodes is answered in request order
+        String local = "customer-0";
+        for (int i = 1; !before.ownerOf(local).equals(a); i++) {
+            local = "customer-" + i;
+        }
+        String line = "{\"id\":\"%s\",\"customer_id\":\"%s\",\"load_amount\":\"$10.00\",\"time\":\"2030-01-07T05:00:00Z\"}\n";
+        HttpResponse<String> bulk = send("POST", b + "/api/loads", "application/x-ndjson",
+            line.formatted("5", local) + line.formatted("1", customerId) + line.formatted("5", customerId)
+                + line.formatted("6", local));
+        assertEquals(200, bulk.statusCode());
+        assertEquals("""
+            {"id":"5","customer_id":"%s","accepted":true}
+            {"id":"5","customer_id":"%s","accepted":false}
+            {"id":"6","customer_id":"%s","accepted":true}
+            """.formatted(local, customerId, local), bulk.body());
+        assertEquals(2, rows(nodeA, local));
+        assertEquals(4, rows(nodeB, customerId));
+
+        // A bulk line that reaches a node not owning its customer is answered, not dropped
+        ByteArrayOutputStream misdirected = new ByteArrayOutputStream();
+        nodeA.getBean(LoadStreamProcessor.class).process(
+            new ByteArrayInputStream(line.formatted("7", customerId).getBytes(StandardCharsets.UTF_8)), misdirected);
+        assertEquals("{\"id\":\"7\",\"customer_id\":\"%s\",\"accepted\":false,\"error\":\"misdirected\"}\n"
+            .formatted(customerId), misdirected.toString(StandardCharsets.UTF_8));
+        assertEquals(0, rows(nodeA, customerId));
+
+        ConfigurableApplicationContext nodeC = start("c", URI.create(c).getPort(), List.of(a, b, c));
+        assertEquals(202, send("PUT", a + "/api/cluster/nodes", "application/json",
+            "[\"" + a + "\",\"" + b + "\",\"" + c + "\"]").statusCode());
+        awaitRebalanced(List.of(a, b, c));
+
+        assertEquals(0, rows(nodeB, customerId));
+        assertEquals(4, rows(nodeC, customerId));
+        // The daily count moved with the customer
+        HttpResponse<String> fourth = load(b, "4", customerId, "2030-01-07T04:00:00Z");
+        assertTrue(fourth.body().contains("\"accepted\":false"), fourth.body());
+        assertEquals(5, rows(nodeC, customerId));
+        // The dedup keys moved too
+        assertEquals(204, load(a, "1", customerId, "2030-01-07T01:00:00Z").statusCode());
+        // Limit queries are routed to the owner like loads
+        HttpResponse<String> limits = send("GET", a + "/api/customers/" + customerId + "/limits?time=2030-01-07T06:00:00Z",
+            "application/json", "");
+        assertEquals(200, limits.statusCode());
+        assertTrue(limits.body().contains("\"daily-count\":0"), limits.body());
+    }
+
+    @Test
+    void shouldFinishRebalanceWhenChangeIsRetriedAfterANodeWasUnreachable() throws Exception {
+        String a = url(freePort());
+        String b = url(freePort());
+        String c = url(freePort());
+        List<String> twoNodes = List.of(a, b);
+        List<String> threeNodes = List.of(a, b, c);
+        start("a", URI.create(a).getPort(), twoNodes);
+        ConfigurableApplicationContext nodeB = start("b", URI.create(b).getPort(), twoNodes);
+
+        ShardRing before = new ShardRing(twoNodes, 128);
+        ShardRing after = new ShardRing(threeNodes, 128);
+        String customerId = null;
+        for (int i = 0; customerId == null; i++) {
+            String candidate = "customer-" + i;
+            if (before.ownerOf(candidate).equals(b) && after.ownerOf(candidate).equals(c)) {
+                customerId = candidate;
+            }
+        }
+        assertEquals(200, load(a, "1", customerId, "2030-01-07T01:00:00Z").statusCode());
+
+        // c is not running yet: a and b start the rebalance and keep it
+        String change = "[\"" + a + "\",\"" + b + "\",\"" + c + "\"]";
+        assertEquals(502, send("PUT", a + "/api/cluster/nodes", "application/json", change).statusCode());
+        assertTrue(rebalancing(a));
+        assertTrue(rebalancing(b));
+
+        ConfigurableApplicationContext nodeC = start("c", URI.create(c).getPort(), threeNodes);
+        assertEquals(202, send("PUT", a + "/api/cluster/nodes", "application/json", change).statusCode());
+        awaitRebalanced(threeNodes);
+
+        assertEquals(0, rows(nodeB, customerId));
+        assertEquals(1, rows(nodeC, customerId));
+    }
+
+    @Test
+    void shouldAnswerEveryBulkLineWhenAnOwnerIsDown() throws Exception {
+        String a = url(freePort());
+        // Nothing listens here
+        String down = url(freePort());
+        List<String> ring = List.of(a, down);
+        ConfigurableApplicationContext nodeA = start("a", URI.create(a).getPort(), ring);
+
+        ShardRing shards = new ShardRing(ring, 128);
+        String local = null;
+        String remote = null;
+        for (int i = 0; local == null || remote == null; i++) {
+            String candidate = "customer-" + i;
+            if (shards.ownerOf(candidate).equals(a)) {
+                local = local == null ? candidate : local;
+            } else {
+                remote = remote == null ? candidate : remote;
+            }
+        }
+
+        String line = "{\"id\":\"%s\",\"customer_id\":\"%s\",\"load_amount\":\"$10.00\",\"time\":\"2030-01-07T05:00:00Z\"}\n";
+        HttpResponse<String> bulk = send("POST", a + "/api/loads", "application/x-ndjson",
+            line.formatted("1", local) + line.formatted("1", remote) + line.formatted("2", local));
+        assertEquals(200, bulk.statusCode());
+        assertEquals("""
+            {"id":"1","customer_id":"%s","accepted":true}
+            {"id":"1","customer_id":"%s","accepted":false,"error":"unavailable"}
+            {"id":"2","customer_id":"%s","accepted":true}
+            """.formatted(local, remote, local), bulk.body());
+        assertEquals(2, rows(nodeA, local));
+    }
+}
@@ -0,0 +1,44 @@
+package com.velocity.limits.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardRingTest {
+    private static final int CUSTOMERS = 30_000;
+
+    @Test
+    void shouldSpreadCustomersEvenly() {
+        ShardRing ring = new ShardRing(List.of("http://a", "http://b", "http://c"), 128);
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            owned.merge(ring.ownerOf(String.valueOf(i)), 1, Integer::sum);
+        }
+
+        assertEquals(3, owned.size());
+        for (int count : owned.values()) {
+            assertTrue(count > CUSTOMERS / 3 * 0.8 && count < CUSTOMERS / 3 * 1.2, owned.toString());
+        }
+    }
+
+    @Test
+    void shouldOnlyMoveCustomersToJoiningNode() {
+        ShardRing before = new ShardRing(List.of("http://a", "http://b", "http://c"), 128);
+        ShardRing after = new ShardRing(List.of("http://c", "http://a", "http://b", "http://d"), 128);
+        int moved = 0;
+        for (int i = 0; i < CUSTOMERS; i++) {
+            String customerId = String.valueOf(i);
+            String owner = after.ownerOf(customerId);
+            if (!owner.equals(before.ownerOf(customerId))) {
+                assertEquals("http://d", owner);
+                moved++;
+            }
+        }
+
+        assertTrue(moved > CUSTOMERS / 4 * 0.8 && moved < CUSTOMERS / 4 * 1.2, String.valueOf(moved));
+    }
+}
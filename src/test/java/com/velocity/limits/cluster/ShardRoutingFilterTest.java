@@ -0,0 +1,82 @@
+package com.velocity.limits.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardRoutingFilterTest {
+
+    private static ShardRoutingFilter filter() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ClusterMembership membership = new ClusterMembership("http://a", new String[] {"http://a", "http://b"}, 128,
+            "jpa", new SimpleMeterRegistry());
+        return new ShardRoutingFilter(membership, new ClusterClient(objectMapper, 1000), objectMapper, null, 100,
+            new SimpleMeterRegistry());
+    }
+
+    @Test
+    void shouldRejectMalformedOrNegativeHops() throws ServletException, IOException {
+        ShardRoutingFilter filter = filter();
+        for (String hops : new String[] {"many", "-1", String.valueOf(Integer.MIN_VALUE), "99999999999"}) {
+            MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/loads");
+            request.addHeader(ClusterClient.HOPS_HEADER, hops);
+            request.setContentType("application/json");
+            request.setContent("{\"id\":\"1\",\"customer_id\":\"1\"}".getBytes(StandardCharsets.UTF_8));
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            MockFilterChain chain = new MockFilterChain();
+
+            filter.doFilter(request, response, chain);
+
+            assertEquals(400, response.getStatus(), hops);
+            assertNull(chain.getRequest(), hops);
+        }
+    }
+
+    @Test
+    void shouldReadBufferedBodyWithReadListener() throws IOException {
+        byte[] body = "{\"id\":\"1\"}\n".getBytes(StandardCharsets.UTF_8);
+        ServletInputStream in = new ShardRoutingFilter.BufferedRequest(new MockHttpServletRequest(), body)
+            .getInputStream();
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        List<String> events = new ArrayList<>();
+
+        in.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                events.add("data");
+                byte[] buffer = new byte[4];
+                while (in.isReady() && !in.isFinished()) {
+                    read.write(buffer, 0, in.read(buffer));
+                }
+            }
+
+            @Override
+            public void onAllDataRead() {
+                events.add("done");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                events.add("error");
+            }
+        });
+
+        assertEquals(List.of("data", "done"), events);
+        assertArrayEquals(body, read.toByteArray());
+        assertTrue(in.isFinished());
+    }
+}
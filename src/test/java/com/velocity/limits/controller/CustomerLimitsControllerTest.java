@@ -0,0 +1,81 @@
+package com.velocity.limits.controller;
+
+import com.velocity.limits.model.LoadRequest;
+import com.velocity.limits.service.LoadLimitService;
+import com.velocity.limits.service.VelocityAggregateStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.ZonedDateTime;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:customer-limits")
+class CustomerLimitsControllerTest {
+
+    @Autowired
+    private LoadLimitService loadLimitService;
+
+    @Autowired
+    private VelocityAggregateStore aggregateStore;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(new CustomerLimitsController(loadLimitService)).build();
+    }
+
+    private void load(String id, String customerId, String amount, String time) {
+        LoadRequest request = new LoadRequest();
+        request.setId(id);
+        request.setCustomerId(customerId);
+        request.setLoadAmount(amount);
+        request.setTime(ZonedDateTime.parse(time));
+        loadLimitService.processLoad(request);
+    }
+
+    @Test
+    void shouldReportRemainingLimitsAtTheGivenTime() throws Exception {
+        load("1", "limits-1", "$1000.00", "2030-01-07T01:00:00Z");
+        load("2", "limits-1", "$2500.50", "2030-01-08T01:00:00Z");
+        // Rejected, so it uses up nothing
+        load("3", "limits-1", "$4000.00", "2030-01-08T02:00:00Z");
+
+        String tuesday = """
+            {"customer_id":"limits-1","time":"2030-01-08T12:00:00Z",
+             "remaining":{"daily-count":2,"daily-amount":"$2499.50","weekly-amount":"$16499.50"}}""";
+        mockMvc.perform(get("/api/customers/limits-1/limits").param("time", "2030-01-08T12:00:00Z"))
+            .andExpect(status().isOk())
+            .andExpect(content().json(tuesday, true));
+
+        // Not cached: answered the same from persistence
+        aggregateStore.evict("limits-1");
+        mockMvc.perform(get("/api/customers/limits-1/limits").param("time", "2030-01-08T12:00:00Z"))
+            .andExpect(status().isOk())
+            .andExpect(content().json(tuesday, true));
+
+        // The following Monday starts a new week
+        mockMvc.perform(get("/api/customers/limits-1/limits").param("time", "2030-01-14T00:00:00Z"))
+            .andExpect(status().isOk())
+            .andExpect(content().json("""
+                {"remaining":{"daily-count":3,"daily-amount":"$5000.00","weekly-amount":"$20000.00"}}"""));
+    }
+
+    @Test
+    void shouldDefaultToNowAndRejectInvalidTimes() throws Exception {
+        mockMvc.perform(get("/api/customers/limits-2/limits"))
+            .andExpect(status().isOk())
+            .andExpect(content().json("""
+                {"customer_id":"limits-2","remaining":{"daily-count":3}}"""));
+
+        mockMvc.perform(get("/api/customers/limits-2/limits").param("time", "yesterday"))
+            .andExpect(status().isBadRequest());
+    }
+}
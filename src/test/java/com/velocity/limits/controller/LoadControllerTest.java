@@ -0,0 +1,102 @@
+package com.velocity.limits.controller;
+
+import com.velocity.limits.batch.LoadStreamProcessor;
+import com.velocity.limits.service.AdmissionLimiter;
+import com.velocity.limits.service.LoadDecisionExecutor;
+import com.velocity.limits.service.LoadLimitService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+class LoadControllerTest {
+
+    @Autowired
+    private LoadLimitService loadLimitService;
+
+    @Autowired
+    private LoadStreamProcessor loadStreamProcessor;
+
+    @Autowired
+    private LoadDecisionExecutor loadDecisionExecutor;
+
+    @Autowired
+    private AdmissionLimiter admissionLimiter;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders
+            .standaloneSetup(new LoadController(loadLimitService, loadStreamProcessor, loadDecisionExecutor, admissionLimiter))
+            .build();
+    }
+
+    @Test
+    void shouldStreamBulkResponsesInOrderAndSkipDuplicates() throws Exception {
+        String body = """
+            {"id":"1","customer_id":"bulk-1","load_amount":"$4000.00","time":"2030-01-07T00:00:00Z"}
+            {"id":"1","customer_id":"bulk-1","load_amount":"$4000.00","time":"2030-01-07T00:00:00Z"}
+            not json
+            {"id":"2","customer_id":"bulk-1","load_amount":"$4000.00","time":"2030-01-07T01:00:00Z"}
+            {"id":"1","customer_id":"bulk-2","load_amount":"$100.00","time":"2030-01-07T02:00:00Z"}
+            """;
+
+        mockMvc.perform(post("/api/loads").contentType(LoadController.NDJSON).content(body))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(LoadController.NDJSON))
+            .andExpect(content().string("""
+                {"id":"1","customer_id":"bulk-1","accepted":true}
+                {"id":"2","customer_id":"bulk-1","accepted":false}
+                {"id":"1","customer_id":"bulk-2","accepted":true}
+                """));
+    }
+
+    @Test
+    void shouldDecideLoadsAsynchronously() throws Exception {
+        String load = """
+            {"id":"1","customer_id":"async-1","load_amount":"$100.00","time":"2030-01-07T00:00:00Z"}""";
+
+        MvcResult started = mockMvc.perform(post("/api/loads/async").contentType("application/json").content(load))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+            .andExpect(status().isOk())
+            .andExpect(content().json("""
+                {"id":"1","customer_id":"async-1","accepted":true}""", true));
+
+        MvcResult duplicate = mockMvc.perform(post("/api/loads/async").contentType("application/json").content(load))
+            .andReturn();
+        mockMvc.perform(asyncDispatch(duplicate))
+            .andExpect(status().isNoContent());
+    }
+
+    @Test
+    void shouldShedLoadsOnceAdmissionLimitIsReached() throws Exception {
+        AdmissionLimiter full = new AdmissionLimiter(new SimpleMeterRegistry(), true, 1, 1, 1, 2);
+        full.acquire();
+        MockMvc limited = MockMvcBuilders
+            .standaloneSetup(new LoadController(loadLimitService, loadStreamProcessor, loadDecisionExecutor, full))
+            .build();
+        String load = """
+            {"id":"1","customer_id":"shed-1","load_amount":"$100.00","time":"2030-01-07T00:00:00Z"}""";
+
+        for (String path : new String[] {"/api/loads", "/api/loads/async"}) {
+            limited.perform(post(path).contentType("application/json").content(load))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "2"));
+        }
+    }
+}
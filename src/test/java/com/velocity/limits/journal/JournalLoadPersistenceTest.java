@@ -0,0 +1,134 @@
+package com.velocity.limits.journal;
+
+import com.velocity.limits.entity.CustomerLoad;
+import com.velocity.limits.model.EpochWindows;
+import com.velocity.limits.model.VelocityTotals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalLoadPersistenceTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private JournalLoadPersistence open() throws IOException {
+        JournalLoadPersistence persistence = new JournalLoadPersistence(directory.toString(), SEGMENT_SIZE, false);
+        persistence.open();
+        return persistence;
+    }
+
+    private static CustomerLoad load(String id, String customerId, long amountCents, String time, boolean accepted) {
+        ZonedDateTime loadTime = ZonedDateTime.parse(time);
+        int epochDay = EpochWindows.epochDay(loadTime);
+        CustomerLoad load = new CustomerLoad();
+        load.setLoadId(id);
+        load.setCustomerId(customerId);
+        load.setAmountCents(amountCents);
+        load.setLoadTime(loadTime);
+        load.setEpochDay(epochDay);
+        load.setEpochWeek(EpochWindows.epochWeek(epochDay));
+        load.setAccepted(accepted);
+        return load;
+    }
+
+    private static VelocityTotals totals(JournalLoadPersistence persistence, String customerId, String time) {
+        int epochDay = EpochWindows.epochDay(ZonedDateTime.parse(time));
+        return persistence.totals(customerId, epochDay, EpochWindows.epochWeek(epochDay));
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix)).sorted().toList();
+        }
+    }
+
+    @Test
+    void shouldRestoreStateFromSnapshotAndJournalTail() throws IOException {
+        JournalLoadPersistence persistence = open();
+        persistence.record(load("1", "528", 100_00, "2000-01-03T10:00:00Z", true));
+        persistence.record(load("2", "528", 200_00, "2000-01-04T10:00:00Z", true));
+        persistence.snapshot();
+        persistence.record(load("3", "528", 300_00, "2000-01-04T12:00:00Z", false));
+        persistence.record(load("4", "528", 50_00, "2000-01-04T13:00:00Z", true));
+        // Simulates a crash: the journal is left open and no snapshot is taken
+        JournalLoadPersistence restored = open();
+
+        assertTrue(restored.exists("1", "528"));
+        assertTrue(restored.exists("3", "528"));
+        assertFalse(restored.exists("1", "154"));
+        assertEquals(new VelocityTotals(2, 250_00, 3, 350_00, 350_00), totals(restored, "528", "2000-01-04T00:00:00Z"));
+        assertEquals(EpochWindows.epochDay(ZonedDateTime.parse("2000-01-04T00:00:00Z")),
+            restored.latestAcceptedEpochDay("528"));
+        assertNull(restored.latestAcceptedEpochDay("154"));
+        restored.close();
+        persistence.close();
+    }
+
+    @Test
+    void shouldContinueSequencesAcrossSegmentsAfterRestart() throws IOException {
+        JournalLoadPersistence persistence = open();
+        for (int i = 0; i < 200; i++) {
+            persistence.record(load("load-" + i, "customer-" + (i % 10), 1_00, "2000-01-03T10:00:00Z", true));
+        }
+        assertTrue(files("journal-").size() > 1);
+        persistence.close();
+        // The snapshot taken on close covers every full segment
+        assertEquals(1, files("journal-").size());
+
+        JournalLoadPersistence restored = open();
+        restored.record(load("load-200", "customer-0", 1_00, "2000-01-03T11:00:00Z", true));
+        restored.close();
+
+        JournalLoadPersistence reopened = open();
+        for (int i = 0; i <= 200; i++) {
+            assertTrue(reopened.exists("load-" + i, "customer-" + (i % 10)));
+        }
+        assertEquals(21, totals(reopened, "customer-0", "2000-01-03T00:00:00Z").dailyCount());
+        reopened.close();
+    }
+
+    @Test
+    void shouldDropTornRecordAtJournalTail() throws IOException {
+        JournalLoadPersistence persistence = open();
+        persistence.record(load("1", "528", 100_00, "2000-01-03T10:00:00Z", true));
+        persistence.record(load("2", "528", 200_00, "2000-01-03T11:00:00Z", true));
+        persistence.close();
+
+        // Corrupt the payload of the last record
+        Path segment = files("journal-").get(files("journal-").size() - 1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            byte[] bytes = Files.readAllBytes(segment);
+            int end = bytes.length - 1;
+            while (bytes[end] == 0) {
+                end--;
+            }
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) ~bytes[end]}), end);
+        }
+        Files.deleteIfExists(files("snapshot-").get(files("snapshot-").size() - 1));
+        JournalLoadPersistence restored = open();
+
+        assertTrue(restored.exists("1", "528"));
+        assertFalse(restored.exists("2", "528"));
+        assertEquals(new VelocityTotals(1, 100_00, 1, 100_00, 100_00), totals(restored, "528", "2000-01-03T00:00:00Z"));
+
+        restored.record(load("3", "528", 50_00, "2000-01-03T12:00:00Z", true));
+        restored.close();
+        Files.deleteIfExists(files("snapshot-").get(files("snapshot-").size() - 1));
+        JournalLoadPersistence reopened = open();
+        assertTrue(reopened.exists("3", "528"));
+        reopened.close();
+    }
+}
@@ -0,0 +1,33 @@
+package com.velocity.limits.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CentsTest {
+
+    @Test
+    void shouldParseDollarAmounts() {
+        assertEquals(331847, Cents.parse("$3318.47"));
+        assertEquals(500000, Cents.parse("5000.00"));
+        assertEquals(1050, Cents.parse("$10.5"));
+        assertEquals(1000, Cents.parse("$10"));
+        assertEquals(0, Cents.parse("$0.00"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "$", "$-100.00", "$1.005", "$1.", "$.50", "1,000.00", "$1.00 ", "USD1.00", "$$1.00",
+        "$99999999999999999999.00"})
+    void shouldRejectMalformedOrSubCentAmounts(String amount) {
+        assertThrows(IllegalArgumentException.class, () -> Cents.parse(amount));
+    }
+
+    @Test
+    void shouldFormatCents() {
+        assertEquals("3318.47", Cents.format(331847));
+        assertEquals("0.05", Cents.format(5));
+        assertEquals("-1.50", Cents.format(-150));
+    }
+}
@@ -0,0 +1,61 @@
+package com.velocity.limits.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EpochWindowsTest {
+
+    @Test
+    void shouldMatchLocalDateEpochDay() {
+        assertEquals(0, EpochWindows.epochDay(ZonedDateTime.parse("1970-01-01T00:00:00Z")));
+        assertEquals(-1, EpochWindows.epochDay(ZonedDateTime.parse("1969-12-31T23:59:59.999Z")));
+        assertEquals(LocalDate.of(2025, 2, 16).toEpochDay(),
+            EpochWindows.epochDay(ZonedDateTime.parse("2025-02-16T23:59:59.999999999Z")));
+        // Days are counted in the time's own offset
+        assertEquals(LocalDate.of(2025, 2, 16).toEpochDay(),
+            EpochWindows.epochDay(ZonedDateTime.parse("2025-02-17T01:00:00Z").withZoneSameInstant(
+                ZoneOffset.ofHours(-5))));
+    }
+
+    @Test
+    void shouldStartWeeksOnMonday() {
+        LocalDate monday = LocalDate.of(2025, 2, 10);
+        int week = EpochWindows.epochWeek((int) monday.toEpochDay());
+        for (int i = 0; i < 7; i++) {
+            assertEquals(week, EpochWindows.epochWeek((int) monday.plusDays(i).toEpochDay()));
+        }
+        assertEquals(week - 1, EpochWindows.epochWeek((int) monday.minusDays(1).toEpochDay()));
+        assertEquals(week + 1, EpochWindows.epochWeek((int) monday.plusDays(7).toEpochDay()));
+    }
+
+    @Test
+    void shouldAgreeWithIsoWeeksAcrossYears() {
+        LocalDate day = LocalDate.of(1960, 1, 1);
+        LocalDate firstMonday = LocalDate.of(1959, 12, 28);
+        for (int i = 0; i < 30_000; i++, day = day.plusDays(1)) {
+            long expected = ChronoUnit.WEEKS.between(firstMonday, day);
+            assertEquals(expected, EpochWindows.epochWeek((int) day.toEpochDay())
+                - EpochWindows.epochWeek((int) firstMonday.toEpochDay()));
+        }
+    }
+
+    @Test
+    void shouldNumberCalendarMonths() {
+        assertEquals(0, EpochWindows.epochMonth(0));
+        assertEquals(-1, EpochWindows.epochMonth(-1));
+        LocalDate day = LocalDate.of(1960, 1, 1);
+        for (int i = 0; i < 30_000; i++, day = day.plusDays(1)) {
+            int epochMonth = EpochWindows.epochMonth((int) day.toEpochDay());
+            assertEquals(ChronoUnit.MONTHS.between(LocalDate.of(1970, 1, 1), day.withDayOfMonth(1)), epochMonth);
+            assertEquals(day.withDayOfMonth(1).toEpochDay(), EpochWindows.firstDayOfMonth(epochMonth));
+            assertEquals(day.minusDays(day.getDayOfWeek().getValue() - 1).toEpochDay(),
+                EpochWindows.firstDayOfWeek(EpochWindows.epochWeek((int) day.toEpochDay())));
+        }
+    }
+}
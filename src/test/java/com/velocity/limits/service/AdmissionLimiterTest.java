@@ -0,0 +1,66 @@
+package com.velocity.limits.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionLimiterTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /**
+     * Fills the limit, then completes every decision as if it had taken {@code millis}.
+     */
+    private static void saturate(AdmissionLimiter limiter, long millis) {
+        int slots = limiter.limit();
+        for (int i = 0; i < slots; i++) {
+            limiter.acquire();
+        }
+        for (int i = 0; i < slots; i++) {
+            limiter.release(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millis), true);
+        }
+    }
+
+    @Test
+    void shouldShedRequestsBeyondLimit() {
+        AdmissionLimiter limiter = new AdmissionLimiter(meterRegistry, true, 2, 1, 10, 3);
+        long first = limiter.acquire();
+        limiter.acquire();
+
+        LoadShedException shed = assertThrows(LoadShedException.class, limiter::acquire);
+        assertEquals(3, shed.getRetryAfterSeconds());
+        assertEquals(1, meterRegistry.get("load.admission.shed.total").counter().count());
+        assertEquals(2, meterRegistry.get("load.admission.in.flight").gauge().value());
+
+        limiter.release(first, false);
+        limiter.acquire();
+    }
+
+    @Test
+    void shouldGrowWhileLatencyHoldsAndShrinkWhenItRises() {
+        AdmissionLimiter limiter = new AdmissionLimiter(meterRegistry, true, 10, 4, 100, 1);
+        for (int i = 0; i < 20; i++) {
+            saturate(limiter, 2);
+        }
+        int grown = limiter.limit();
+        assertTrue(grown > 10, String.valueOf(grown));
+
+        for (int i = 0; i < 20; i++) {
+            saturate(limiter, 20);
+        }
+        int shrunk = limiter.limit();
+        assertTrue(shrunk < grown / 2, grown + " -> " + shrunk);
+        assertEquals(shrunk, meterRegistry.get("load.admission.limit").gauge().value(), 1);
+    }
+
+    @Test
+    void shouldAdmitEverythingWhenDisabled() {
+        AdmissionLimiter limiter = new AdmissionLimiter(meterRegistry, false, 1, 1, 1, 1);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+        }
+        assertEquals(0, meterRegistry.get("load.admission.shed.total").counter().count());
+    }
+}
@@ -0,0 +1,127 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.model.VelocityTotals;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerStateTableTest {
+
+    @Test
+    void shouldRollBucketsForwardAsLoadsAreAdded() {
+        CustomerStateTable table = new CustomerStateTable(100, 1);
+        // Day 5 is a Tuesday in week 1, January 1970
+        table.putIfAbsent("528", 5, new VelocityTotals(1, 100, 2, 300, 500));
+
+        assertEquals(new VelocityTotals(1, 100, 2, 300, 500), table.totals("528", 5));
+        assertEquals(new VelocityTotals(0, 0, 2, 300, 500), table.totals("528", 6));
+        assertEquals(new VelocityTotals(0, 0, 0, 0, 500), table.totals("528", 11));
+        assertEquals(VelocityTotals.EMPTY, table.totals("528", 31));
+        assertNull(table.totals("528", 4));
+        assertNull(table.totals("154", 5));
+
+        assertTrue(table.add("528", 6, 50, false));
+        assertEquals(new VelocityTotals(1, 50, 3, 350, 550), table.totals("528", 6));
+        // Out of order, but in the current week and month
+        assertTrue(table.add("528", 4, 10, false));
+        assertEquals(new VelocityTotals(1, 50, 4, 360, 560), table.totals("528", 6));
+        assertTrue(table.add("528", 11, 25, false));
+        assertEquals(new VelocityTotals(1, 25, 1, 25, 585), table.totals("528", 11));
+        assertTrue(table.add("528", 31, 5, false));
+        assertEquals(new VelocityTotals(1, 5, 1, 5, 5), table.totals("528", 31));
+        assertFalse(table.add("154", 31, 25, false));
+    }
+
+    @Test
+    void shouldEvictUnreferencedCustomersWhenFull() {
+        CustomerStateTable table = new CustomerStateTable(8, 1);
+        for (int i = 0; i < 8; i++) {
+            table.putIfAbsent("customer-" + i, 1, new VelocityTotals(1, 100, 1, 100, 100));
+        }
+        // The first sweep clears every reference bit, then evicts the oldest slot it passes
+        table.putIfAbsent("customer-8", 1, new VelocityTotals(1, 100, 1, 100, 100));
+        assertEquals(8, table.size());
+        assertEquals(1, table.evictions());
+
+        for (int i = 0; i <= 8; i++) {
+            table.totals("customer-" + i, 1);
+        }
+        table.putIfAbsent("customer-9", 1, new VelocityTotals(1, 100, 1, 100, 100));
+        assertEquals(8, table.size());
+        assertEquals(2, table.evictions());
+        assertTrue(table.contains("customer-9"));
+    }
+
+    @Test
+    void shouldNotEvictPinnedCustomers() {
+        CustomerStateTable table = new CustomerStateTable(2, 1);
+        table.putIfAbsent("528", 1, VelocityTotals.EMPTY);
+        table.putIfAbsent("154", 1, VelocityTotals.EMPTY);
+        assertTrue(table.add("528", 1, 100, true));
+        assertTrue(table.pin("154"));
+
+        // Both are pinned, so the segment grows past its bound instead
+        table.putIfAbsent("1", 1, VelocityTotals.EMPTY);
+        assertEquals(3, table.size());
+        assertEquals(0, table.evictions());
+
+        table.unpin("528");
+        table.putIfAbsent("2", 1, VelocityTotals.EMPTY);
+        assertFalse(table.contains("528"));
+        assertTrue(table.contains("154"));
+    }
+
+    @Test
+    void shouldKeepRolledBackCustomersStaleUntilTheLastPinIsReleased() {
+        CustomerStateTable table = new CustomerStateTable(100, 1);
+        table.putIfAbsent("528", 1, VelocityTotals.EMPTY);
+        assertTrue(table.add("528", 1, 100, true));
+        assertTrue(table.add("528", 1, 200, true));
+
+        // The first transaction rolls back while the second is still open
+        table.unpin("528", true);
+        assertTrue(table.contains("528"));
+        assertNull(table.totals("528", 1));
+
+        table.unpin("528", false);
+        assertFalse(table.contains("528"));
+    }
+
+    @Test
+    void shouldMatchMapUnderRandomInsertsAndRemovals() {
+        CustomerStateTable table = new CustomerStateTable(4_000, 4);
+        Map<String, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            String customerId = String.valueOf(random.nextInt(900));
+            if (random.nextInt(4) == 0) {
+                table.remove(customerId);
+                expected.remove(customerId);
+            } else if (expected.containsKey(customerId)) {
+                table.add(customerId, 1, 1, false);
+                expected.merge(customerId, 1L, Long::sum);
+            } else {
+                table.putIfAbsent(customerId, 1, VelocityTotals.EMPTY);
+                expected.put(customerId, 0L);
+            }
+        }
+
+        assertEquals(0, table.evictions());
+        assertEquals(expected.size(), table.size());
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), table.totals(entry.getKey(), 1).weeklyAmountCents());
+        }
+    }
+
+    @Test
+    void shouldOnlyStoreShortAsciiIds() {
+        assertTrue(CustomerStateTable.fits("12345678901234567890123456"));
+        assertFalse(CustomerStateTable.fits("123456789012345678901234567"));
+        assertFalse(CustomerStateTable.fits("kundé"));
+    }
+}
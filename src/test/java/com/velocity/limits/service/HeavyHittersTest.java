@@ -0,0 +1,102 @@
+package com.velocity.limits.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeavyHittersTest {
+
+    @Test
+    void shouldFindHeaviestCustomersInSkewedStream() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(1024, 64);
+        Map<String, Long> counts = new HashMap<>();
+        Random random = new Random(42);
+        // Half the loads go to five hot customers, most of those to hot-0; the rest are spread over 50,000 customers
+        for (int i = 0; i < 200_000; i++) {
+            String customerId = random.nextBoolean()
+                ? "hot-" + random.nextInt(5) * random.nextInt(2)
+                : String.valueOf(random.nextInt(50_000));
+            sketch.add(customerId);
+            counts.merge(customerId, 1L, Long::sum);
+        }
+
+        List<HeavyHitters.HeavyHitter> top = sketch.top(3);
+        assertEquals(List.of("hot-0"), top.subList(0, 1).stream().map(HeavyHitters.HeavyHitter::customerId).toList());
+        assertEquals(3, top.size());
+        for (HeavyHitters.HeavyHitter hitter : top) {
+            assertTrue(hitter.customerId().startsWith("hot-"), top.toString());
+            long actual = counts.get(hitter.customerId());
+            // Never under, and over by no more than e/width of the stream
+            assertTrue(hitter.loads() >= actual && hitter.loads() <= actual + 200_000 * 2.72 / 1024, hitter + " " + actual);
+        }
+        for (String customerId : List.of("1", "2", "3")) {
+            assertTrue(sketch.estimate(customerId) >= counts.getOrDefault(customerId, 0L));
+        }
+    }
+
+    @Test
+    void shouldCountConcurrentLoadsWithoutLosingAny() throws Exception {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(4096, 64);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            done.add(threads.submit(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    sketch.add("hot");
+                    sketch.add("thread-" + thread + "-" + i % 1000);
+                }
+            }));
+        }
+        for (Future<?> future : done) {
+            future.get();
+        }
+        threads.shutdown();
+
+        HeavyHitters.HeavyHitter hot = sketch.top(1).get(0);
+        assertEquals("hot", hot.customerId());
+        assertTrue(hot.loads() >= 400_000 && hot.loads() < 400_000 + 800_000 * 2.72 / 4096, hot.toString());
+    }
+
+    @Test
+    void shouldPublishTopCustomersOfClosedWindowOnly() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        HeavyHitters heavyHitters = new HeavyHitters(meterRegistry, true, 2, 1024);
+        for (int i = 0; i < 10; i++) {
+            heavyHitters.recordAttempt("528");
+        }
+        for (int i = 0; i < 5; i++) {
+            heavyHitters.recordAttempt("154");
+            heavyHitters.recordRejection("154");
+        }
+        heavyHitters.recordAttempt("1");
+        assertEquals(List.of(new HeavyHitters.HeavyHitter("528", 10), new HeavyHitters.HeavyHitter("154", 5)),
+            heavyHitters.currentWindow().attempts());
+        assertTrue(meterRegistry.find("load.heavy.hitters").gauges().isEmpty());
+
+        heavyHitters.closeWindow();
+        assertEquals(10, meterRegistry.get("load.heavy.hitters").tags("kind", "attempts", "customer", "528").gauge().value());
+        assertEquals(5, meterRegistry.get("load.heavy.hitters").tags("kind", "rejections", "customer", "154").gauge().value());
+        assertEquals(3, meterRegistry.find("load.heavy.hitters").gauges().size());
+        assertEquals(16, meterRegistry.get("load.heavy.hitters.window.loads").tags("kind", "attempts").gauge().value());
+        assertEquals(5, meterRegistry.get("load.heavy.hitters.window.loads").tags("kind", "rejections").gauge().value());
+        assertTrue(heavyHitters.currentWindow().attempts().isEmpty());
+
+        // Customers that drop out of the top lose their series when the next window closes
+        heavyHitters.recordAttempt("1");
+        heavyHitters.closeWindow();
+        assertEquals(1, meterRegistry.find("load.heavy.hitters").gauges().size());
+        assertEquals(1, meterRegistry.get("load.heavy.hitters").tags("kind", "attempts", "customer", "1").gauge().value());
+        assertEquals(List.of(new HeavyHitters.HeavyHitter("1", 1)), heavyHitters.closedWindow().attempts());
+    }
+}
@@ -0,0 +1,74 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.model.VelocityTotals;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimitRulesTest {
+
+    private static MockEnvironment limits() {
+        return new MockEnvironment()
+            .withProperty("load.limits.rules", "single-amount, daily-count, weekly-count, monthly-amount")
+            .withProperty("load.limits.single-amount", "1000.00")
+            .withProperty("load.limits.daily-count", "3")
+            .withProperty("load.limits.weekly-count", "10")
+            .withProperty("load.limits.monthly-amount", "$20000");
+    }
+
+    @Test
+    void shouldReportFirstBrokenRuleInConfiguredOrder() {
+        LimitPolicy policy = new LimitRules(limits()).policyFor("528");
+
+        assertNull(policy.firstBroken(new VelocityTotals(2, 0, 9, 0, 19_000_00), 1000_00));
+        assertEquals(LimitRule.SINGLE_AMOUNT, policy.firstBroken(VelocityTotals.EMPTY, 1000_01));
+        assertEquals(LimitRule.DAILY_COUNT, policy.firstBroken(new VelocityTotals(3, 0, 10, 0, 0), 1_00));
+        assertEquals(LimitRule.WEEKLY_COUNT, policy.firstBroken(new VelocityTotals(0, 0, 10, 0, 20_000_00), 1_00));
+        assertEquals(LimitRule.MONTHLY_AMOUNT, policy.firstBroken(new VelocityTotals(0, 0, 0, 0, 19_999_01), 1_00));
+        // Rules not listed are not checked
+        assertNull(policy.firstBroken(new VelocityTotals(0, 1_000_000_00, 0, 1_000_000_00, 0), 1_00));
+    }
+
+    @Test
+    void shouldReportWhatIsLeftOfEachLimit() {
+        LimitPolicy policy = new LimitRules(limits()).policyFor("528");
+
+        assertEquals(Map.of("single-amount", "$1000.00", "daily-count", 1L, "weekly-count", 1L,
+                "monthly-amount", "$500.50"),
+            policy.remaining(new VelocityTotals(2, 0, 9, 0, 19_499_50)));
+        // Totals past a limit leave nothing rather than a negative amount
+        assertEquals(List.of("$1000.00", 0L, 0L, "$0.00"),
+            List.copyOf(policy.remaining(new VelocityTotals(4, 0, 12, 0, 20_000_01)).values()));
+    }
+
+    @Test
+    void shouldApplyTierOverridesToItsCustomers() {
+        LimitRules rules = new LimitRules(limits()
+            .withProperty("load.limits.tiers", "premium")
+            .withProperty("load.limits.tier.premium.customers", "528, 154")
+            .withProperty("load.limits.tier.premium.daily-count", "5"));
+        VelocityTotals threeToday = new VelocityTotals(3, 0, 3, 0, 0);
+
+        assertNull(rules.policyFor("528").firstBroken(threeToday, 1_00));
+        assertNull(rules.policyFor("154").firstBroken(threeToday, 1_00));
+        assertEquals(LimitRule.DAILY_COUNT, rules.policyFor("1").firstBroken(threeToday, 1_00));
+        // Limits the tier does not override are inherited
+        assertEquals(LimitRule.SINGLE_AMOUNT, rules.policyFor("528").firstBroken(threeToday, 1000_01));
+    }
+
+    @Test
+    void shouldRejectInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new LimitRules(limits().withProperty("load.limits.rules", "daily-count, yearly-amount")));
+        assertThrows(IllegalStateException.class,
+            () -> new LimitRules(limits().withProperty("load.limits.rules", "weekly-amount")));
+        assertThrows(IllegalArgumentException.class, () -> new LimitRules(limits()
+            .withProperty("load.limits.tiers", "gold, silver")
+            .withProperty("load.limits.tier.gold.customers", "528")
+            .withProperty("load.limits.tier.silver.customers", "528")));
+    }
+}
@@ -0,0 +1,192 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.model.LoadRequest;
+import com.velocity.limits.model.LoadResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class LoadLimitServiceConcurrencyTest {
+
+    @Autowired
+    private LoadLimitService loadLimitService;
+
+    @Autowired
+    private CustomerLocks customerLocks;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${load.limits.daily-amount}")
+    private BigDecimal dailyLoadLimit;
+
+    @Value("${load.limits.daily-count}")
+    private int maxDailyLoads;
+
+    private LoadRequest createLoadRequest(String id, String customerId, BigDecimal amount, String time) {
+        LoadRequest request = new LoadRequest();
+        request.setId(id);
+        request.setCustomerId(customerId);
+        request.setLoadAmount("$" + amount.setScale(2));
+        request.setTime(ZonedDateTime.parse(time));
+        return request;
+    }
+
+    /**
+     * Starts all requests at once from {@code threads} threads and returns how many were accepted.
+     */
+    private long runConcurrently(int threads, List<LoadRequest> requests) throws Exception {
+        long accepted = 0;
+        for (LoadResponse response : decideConcurrently(threads, requests)) {
+            assertNotNull(response);
+            if (response.isAccepted()) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Starts all requests at once from {@code threads} threads and returns their
+     * responses in request order, null for duplicates.
+     */
+    private List<LoadResponse> decideConcurrently(int threads, List<LoadRequest> requests) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<LoadResponse>> futures = new ArrayList<>();
+            for (LoadRequest request : requests) {
+                Callable<LoadResponse> task = () -> {
+                    start.await();
+                    return loadLimitService.processLoad(request);
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+
+            List<LoadResponse> responses = new ArrayList<>();
+            for (Future<LoadResponse> future : futures) {
+                responses.add(future.get());
+            }
+            return responses;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void shouldHoldDailyCountLimitUnderConcurrentLoadsForOneCustomer() throws Exception {
+        String customerId = "hammer-" + UUID.randomUUID();
+        BigDecimal amount = dailyLoadLimit.multiply(new BigDecimal("0.01"));
+
+        List<LoadRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            requests.add(createLoadRequest(String.valueOf(i), customerId, amount, "2040-01-02T00:00:00Z"));
+        }
+
+        assertEquals(maxDailyLoads, runConcurrently(200, requests));
+    }
+
+    @Test
+    void shouldHoldDailyAmountLimitUnderConcurrentLoadsForOneCustomer() throws Exception {
+        String customerId = "hammer-" + UUID.randomUUID();
+        BigDecimal amount = dailyLoadLimit.multiply(new BigDecimal("0.4"));
+
+        List<LoadRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            requests.add(createLoadRequest(String.valueOf(i), customerId, amount, "2040-01-02T00:00:00Z"));
+        }
+
+        // Only two loads of 40% fit under the daily amount
+        assertEquals(2, runConcurrently(200, requests));
+    }
+
+    @Test
+    void shouldDecideTheSameLoadOnceUnderConcurrentRetries() throws Exception {
+        String customerId = "retry-" + UUID.randomUUID();
+        BigDecimal amount = dailyLoadLimit.multiply(new BigDecimal("0.01"));
+
+        // Every copy after the first must see it committed, or the duplicate would be
+        // decided again and fail on the unique load key
+        List<LoadRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            requests.add(createLoadRequest("1", customerId, amount, "2040-01-02T00:00:00Z"));
+        }
+
+        List<LoadResponse> responses = decideConcurrently(50, requests);
+        assertEquals(1, responses.stream().filter(Objects::nonNull).count());
+        assertTrue(responses.stream().filter(Objects::nonNull).allMatch(LoadResponse::isAccepted));
+    }
+
+    /**
+     * Throughput across cores is measured by {@code LoadDecisionBenchmark.processLoadUnrelatedCustomers};
+     * this checks the property it relies on, that an open decision only holds up its own customer.
+     */
+    @Test
+    void shouldDecideUnrelatedCustomersWhileAnotherDecisionIsOpen() throws Exception {
+        String customerId = "open-" + UUID.randomUUID();
+        Lock lock = customerLocks.lockFor(customerId);
+        String otherCustomerId;
+        do {
+            otherCustomerId = "unrelated-" + UUID.randomUUID();
+        } while (customerLocks.lockFor(otherCustomerId) == lock);
+        BigDecimal amount = dailyLoadLimit.multiply(new BigDecimal("0.01"));
+        LoadRequest open = createLoadRequest("1", customerId, amount, "2040-01-02T00:00:00Z");
+        LoadRequest sameCustomer = createLoadRequest("2", customerId, amount, "2040-01-02T00:00:00Z");
+        LoadRequest unrelated = createLoadRequest("1", otherCustomerId, amount, "2040-01-02T00:00:00Z");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<LoadResponse> sameCustomerResponse;
+        try {
+            // Held until the open decision commits, as LoadBatch does
+            lock.lock();
+            try {
+                sameCustomerResponse = new TransactionTemplate(transactionManager).execute(status -> {
+                    assertTrue(loadLimitService.processLoad(open).isAccepted());
+                    Future<LoadResponse> blocked = executor.submit(() -> loadLimitService.processLoad(sameCustomer));
+                    Future<LoadResponse> other = executor.submit(() -> loadLimitService.processLoad(unrelated));
+
+                    assertTrue(await(other).isAccepted());
+                    assertFalse(blocked.isDone());
+                    return blocked;
+                });
+            } finally {
+                lock.unlock();
+            }
+            assertTrue(await(sameCustomerResponse).isAccepted());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static LoadResponse await(Future<LoadResponse> response) {
+        try {
+            return response.get(10, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            return fail("Decision did not complete while another customer's decision was open");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -2,14 +2,26 @@ package com.velocity.limits.service;
 
 import com.velocity.limits.model.LoadRequest;
 import com.velocity.limits.model.LoadResponse;
+import com.velocity.limits.repository.CustomerLoadRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.ZonedDateTime;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,6 +32,18 @@ class LoadLimitServiceTest {
     @Autowired
     private LoadLimitService loadLimitService;
 
+    @Autowired
+    private CustomerLoadRepository loadRepository;
+
+    @Autowired
+    private LoadPersistence persistence;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     @Value("${load.limits.daily-amount}")
     private BigDecimal dailyLoadLimit;
 
@@ -80,10 +104,16 @@ class LoadLimitServiceTest {
             "2018-01-01T01:00:00Z"
         );
 
+        double dailyAmountRejections = meterRegistry.get("load.limit.exceeded.total")
+            .tag("rule", "daily-amount").counter().count();
         loadLimitService.processLoad(request1);
         LoadResponse response = loadLimitService.processLoad(request2);
 
         assertFalse(response.isAccepted());
+        // Not reported in responses unless load.limits.report-rule is set
+        assertNull(response.getRejectedBy());
+        assertEquals(dailyAmountRejections + 1, meterRegistry.get("load.limit.exceeded.total")
+            .tag("rule", "daily-amount").counter().count());
     }
 
     @Test
@@ -182,6 +212,30 @@ class LoadLimitServiceTest {
         }
     }
 
+    @Test
+    void shouldCountLastInstantOfSundayInSameWeek() {
+        BigDecimal amount = weeklyLoadLimit.multiply(new BigDecimal("0.25"));
+
+        for (int i = 0; i < 4; i++) {
+            loadLimitService.processLoad(createLoadRequest(
+                String.valueOf(i + 1),
+                "1234",
+                formatAmount(amount),
+                "2025-02-" + (10 + i) + "T00:00:00Z"
+            ));
+        }
+
+        // Sunday 23:59:59.5 still belongs to the week starting Monday 2025-02-10
+        LoadResponse response = loadLimitService.processLoad(createLoadRequest(
+            "5",
+            "1234",
+            "$0.01",
+            "2025-02-16T23:59:59.500Z"
+        ));
+
+        assertFalse(response.isAccepted());
+    }
+
     @Test
     void shouldAcceptLoadAfterWeeklyReset() {
         BigDecimal amount = weeklyLoadLimit.multiply(new BigDecimal("0.25"));
@@ -208,6 +262,31 @@ class LoadLimitServiceTest {
         assertTrue(response.isAccepted());
     }
 
+    @Test
+    void shouldApplyDailyLimitToLoadsOlderThanLatestAcceptedLoad() {
+        BigDecimal amount = dailyLoadLimit.multiply(new BigDecimal("0.1"));
+
+        // Fill the daily count on a later day first
+        for (int i = 0; i < maxDailyLoads; i++) {
+            assertTrue(loadLimitService.processLoad(createLoadRequest(
+                "later-" + i, "1234", formatAmount(amount), "2025-02-11T00:00:00Z"
+            )).isAccepted());
+        }
+
+        // Loads arriving for the previous day are counted against that day only
+        for (int i = 0; i < maxDailyLoads; i++) {
+            assertTrue(loadLimitService.processLoad(createLoadRequest(
+                "earlier-" + i, "1234", formatAmount(amount), "2025-02-10T00:00:00Z"
+            )).isAccepted());
+        }
+
+        LoadResponse response = loadLimitService.processLoad(createLoadRequest(
+            "earlier-" + maxDailyLoads, "1234", formatAmount(amount), "2025-02-10T00:00:00Z"
+        ));
+
+        assertFalse(response.isAccepted());
+    }
+
     @Test
     void shouldIgnoreLoadsWithSameId() {
         BigDecimal amount = dailyLoadLimit.multiply(new BigDecimal("0.5"));
@@ -226,6 +305,23 @@ class LoadLimitServiceTest {
         assertNull(response2);
     }
 
+
+    @Test
+    void shouldIgnoreUnflushedLoadsWithSameIdInBatchTransaction() {
+        // Batched file processing defers inserts until commit
+        entityManager.unwrap(Session.class).setHibernateFlushMode(FlushMode.COMMIT);
+        BigDecimal amount = dailyLoadLimit.multiply(new BigDecimal("0.1"));
+
+        LoadResponse response = loadLimitService.processLoad(createLoadRequest(
+            "1", "1234", formatAmount(amount), "2025-02-10T00:00:00Z"
+        ));
+        LoadResponse response2 = loadLimitService.processLoad(createLoadRequest(
+            "1", "1234", formatAmount(amount), "2025-02-10T00:00:00Z"
+        ));
+
+        assertNotNull(response);
+        assertNull(response2);
+    }
     
     @Test
     void shouldIgnoreLoadsWithSameIdEvenIfFirstWasRejected() {
@@ -256,6 +352,41 @@ class LoadLimitServiceTest {
         assertNull(response2);
     }
 
+    @Test
+    void shouldRebuildSeenLoadFilterFromRecordedLoads() {
+        loadLimitService.processLoad(createLoadRequest(
+            "filter-1", "1234", "$100.00", "2025-02-10T00:00:00Z"
+        ));
+        entityManager.flush();
+
+        SeenLoadFilter filter = new SeenLoadFilter(persistence, true, 1000, 0.01);
+        filter.rebuild();
+
+        assertTrue(filter.mightContain("filter-1", "1234"));
+    }
+
+    @Test
+    void shouldTimeEachStageAndEmitJfrEvents() throws IOException {
+        long savesBefore = meterRegistry.get("load.stage.time").tag("stage", "save").timer().count();
+        Path file = Files.createTempFile("load-stages", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.velocity.limits.LoadStage");
+            recording.start();
+            loadLimitService.processLoad(createLoadRequest("stages-1", "stages", "$100.00", "2030-01-01T00:00:00Z"));
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<String> stages = RecordingFile.readAllEvents(file).stream()
+            .filter(event -> "stages-1".equals(event.getString("loadId")))
+            .map(event -> event.getString("stage"))
+            .toList();
+        Files.delete(file);
+
+        assertEquals(List.of("validate", "lock", "dedup", "totals", "limits", "save"), stages);
+        assertEquals(savesBefore + 1, meterRegistry.get("load.stage.time").tag("stage", "save").timer().count());
+    }
+
     @Test
     void shouldThrowExceptionWhenLoadRequestIsNull() {
         assertThrows(IllegalArgumentException.class, () -> loadLimitService.processLoad(null));
@@ -0,0 +1,136 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.entity.CustomerWeeklyTotal;
+import com.velocity.limits.model.EpochWindows;
+import com.velocity.limits.model.LoadRequest;
+import com.velocity.limits.model.LoadResponse;
+import com.velocity.limits.repository.CustomerLoadRepository;
+import com.velocity.limits.repository.CustomerWeeklyTotalRepository;
+import com.velocity.limits.repository.RetiredLoadKeyRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.transaction.AfterTransaction;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Uses 2040 so the watermark comes from these loads rather than other tests' data.
+ * Retention settings are the defaults: 7 days lateness, 8 detail weeks, 7 days for
+ * rejected attempts and a 90 day dedup horizon.
+ */
+@SpringBootTest
+@Transactional
+class LoadRetentionJobTest {
+    private static final String CUSTOMER = "retention-1";
+
+    @Autowired
+    private LoadLimitService loadLimitService;
+
+    @Autowired
+    private LoadRetentionJob retentionJob;
+
+    @Autowired
+    private CustomerLoadRepository loadRepository;
+
+    @Autowired
+    private CustomerWeeklyTotalRepository weeklyTotalRepository;
+
+    @Autowired
+    private RetiredLoadKeyRepository retiredKeyRepository;
+
+    @Autowired
+    private JpaLoadPersistence persistence;
+
+    @Autowired
+    private VelocityAggregateStore aggregateStore;
+
+    @AfterTransaction
+    void resetCompactionHorizon() {
+        // The rollups were rolled back, but their weeks are still treated as compacted
+        persistence.initCompactionHorizon();
+        aggregateStore.clear();
+    }
+
+    private LoadResponse load(String id, String amount, String time) {
+        LoadRequest request = new LoadRequest();
+        request.setId(id);
+        request.setCustomerId(CUSTOMER);
+        request.setLoadAmount(amount);
+        request.setTime(ZonedDateTime.parse(time));
+        return loadLimitService.processLoad(request);
+    }
+
+    private void loadHistory() {
+        // Past the dedup horizon once compacted
+        load("jan", "$100.00", "2040-01-09T00:00:00Z");
+        // Fills the weekly limit of the week starting Monday 2040-03-05
+        for (int day = 5; day <= 8; day++) {
+            assertTrue(load("mar-" + day, "$5000.00", "2040-03-0" + day + "T00:00:00Z").isAccepted());
+        }
+        // The fourth load of the day is rejected
+        for (int i = 1; i <= 4; i++) {
+            load("may-" + i, "$1.00", "2040-05-10T0" + i + ":00:00Z");
+        }
+        // Sets the watermark to 2040-05-25
+        load("jun", "$1.00", "2040-06-01T00:00:00Z");
+    }
+
+    @Test
+    void shouldRollUpAndDeleteOldWeeks() {
+        loadHistory();
+
+        retentionJob.run();
+
+        assertFalse(loadRepository.existsByLoadIdAndCustomerId("mar-5", CUSTOMER));
+        int marchWeek = EpochWindows.epochWeek(EpochWindows.epochDay(ZonedDateTime.parse("2040-03-05T00:00:00Z")));
+        CustomerWeeklyTotal march = weeklyTotalRepository.findByEpochWeek(marchWeek).stream()
+            .filter(total -> total.getCustomerId().equals(CUSTOMER))
+            .findFirst()
+            .orElseThrow();
+        assertEquals(4, march.getAcceptedCount());
+        assertEquals(2_000_000, march.getAcceptedAmountCents());
+        assertTrue(loadRepository.existsByLoadIdAndCustomerId("jun", CUSTOMER));
+    }
+
+    @Test
+    void shouldDropOldRejectedAttemptsButKeepAcceptedDetail() {
+        loadHistory();
+
+        retentionJob.run();
+
+        assertTrue(loadRepository.existsByLoadIdAndCustomerId("may-3", CUSTOMER));
+        assertFalse(loadRepository.existsByLoadIdAndCustomerId("may-4", CUSTOMER));
+        int mayWeek = EpochWindows.epochWeek(EpochWindows.epochDay(ZonedDateTime.parse("2040-05-10T00:00:00Z")));
+        CustomerWeeklyTotal may = weeklyTotalRepository.findByEpochWeek(mayWeek).stream()
+            .filter(total -> total.getCustomerId().equals(CUSTOMER))
+            .findFirst()
+            .orElseThrow();
+        assertEquals(0, may.getAcceptedCount());
+        assertEquals(1, may.getRejectedCount());
+    }
+
+    @Test
+    void shouldDetectDuplicatesOfCompactedLoadsWithinHorizon() {
+        loadHistory();
+
+        retentionJob.run();
+
+        assertTrue(retiredKeyRepository.existsByLoadIdAndCustomerId("mar-5", CUSTOMER));
+        assertNull(load("mar-5", "$5000.00", "2040-03-05T00:00:00Z"));
+        assertFalse(retiredKeyRepository.existsByLoadIdAndCustomerId("jan", CUSTOMER));
+    }
+
+    @Test
+    void shouldCountRolledUpAmountForLateLoads() {
+        loadHistory();
+
+        retentionJob.run();
+
+        // The week's detail is gone, but its rolled-up amount still fills the weekly limit
+        assertFalse(load("mar-late", "$1.00", "2040-03-09T00:00:00Z").isAccepted());
+    }
+}
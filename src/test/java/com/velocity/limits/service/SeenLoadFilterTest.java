@@ -0,0 +1,35 @@
+package com.velocity.limits.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeenLoadFilterTest {
+
+    @Test
+    void shouldContainEveryAddedLoadAndRejectMostUnseenLoads() {
+        SeenLoadFilter filter = new SeenLoadFilter(null, true, 10_000, 0.01);
+
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(String.valueOf(i), "customer-" + (i % 100));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain(String.valueOf(i), "customer-" + (i % 100)));
+        }
+
+        int falsePositives = 0;
+        for (int i = 10_000; i < 20_000; i++) {
+            if (filter.mightContain(String.valueOf(i), "customer-" + (i % 100))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "False positives: " + falsePositives);
+    }
+
+    @Test
+    void shouldReportEverythingAsPossiblySeenWhenDisabled() {
+        SeenLoadFilter filter = new SeenLoadFilter(null, false, 10_000, 0.01);
+
+        assertTrue(filter.mightContain("1", "1"));
+    }
+}
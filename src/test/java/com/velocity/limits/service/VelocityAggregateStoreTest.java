@@ -0,0 +1,82 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.entity.CustomerLoad;
+import com.velocity.limits.model.EpochWindows;
+import com.velocity.limits.model.VelocityTotals;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class VelocityAggregateStoreTest {
+
+    @Autowired
+    private JpaLoadPersistence persistence;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void shouldKeepCheckedCustomerCachedUntilTheirLoadIsRecordedInABatch() throws Exception {
+        // One segment of two customers, so each other customer seeded evicts one
+        VelocityAggregateStore store = new VelocityAggregateStore(persistence, new SimpleMeterRegistry(), 2, 1);
+        // Short enough for the table, see CustomerStateTable.fits
+        String customerId = "evicted-" + UUID.randomUUID().toString().substring(0, 8);
+        ZonedDateTime time = ZonedDateTime.parse("2040-03-05T10:00:00Z");
+        int epochDay = EpochWindows.epochDay(time);
+        int epochWeek = EpochWindows.epochWeek(epochDay);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            // As LoadBatch does, so the load below is not visible to queries before commit
+            entityManager.unwrap(Session.class).setHibernateFlushMode(FlushMode.COMMIT);
+            assertEquals(VelocityTotals.EMPTY, store.getTotals(customerId, epochDay, epochWeek));
+
+            // Requests for other customers fill the table between the limit check and the record
+            Thread others = new Thread(() -> {
+                for (int i = 0; i < 10; i++) {
+                    store.getTotals(customerId + "-" + i, epochDay, epochWeek);
+                }
+            });
+            others.start();
+            join(others);
+
+            CustomerLoad load = new CustomerLoad();
+            load.setLoadId("1");
+            load.setCustomerId(customerId);
+            load.setAmountCents(500_00);
+            load.setLoadTime(time);
+            load.setEpochDay(epochDay);
+            load.setEpochWeek(epochWeek);
+            load.setAccepted(true);
+            persistence.record(load);
+            store.recordAccepted(customerId, epochDay, epochWeek, 500_00);
+
+            VelocityTotals totals = store.getTotals(customerId, epochDay, epochWeek);
+            assertEquals(1, totals.dailyCount());
+            assertEquals(500_00, totals.dailyAmountCents());
+        });
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
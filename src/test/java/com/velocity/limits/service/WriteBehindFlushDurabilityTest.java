@@ -0,0 +1,109 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.entity.CustomerLoad;
+import com.velocity.limits.model.EpochWindows;
+import com.velocity.limits.model.LoadRequest;
+import com.velocity.limits.model.LoadResponse;
+import com.velocity.limits.repository.CustomerLoadRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Flush durability with a pool smaller than the number of decisions waiting for the
+ * writer at once.
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:write-behind-flush-test",
+    "spring.datasource.hikari.maximum-pool-size=4",
+    "spring.datasource.hikari.connection-timeout=3000",
+    "load.persistence.mode=write-behind",
+    "load.write-behind.durability=flush",
+    "load.write-behind.max-attempts=2",
+    "load.file.output-path=target/write-behind-flush-output.txt"
+})
+class WriteBehindFlushDurabilityTest {
+
+    @Autowired
+    private LoadLimitService loadLimitService;
+
+    @Autowired
+    private LoadPersistence persistence;
+
+    @Autowired
+    private CustomerLoadRepository loadRepository;
+
+    private LoadRequest createLoadRequest(String id, String customerId, String amount, String time) {
+        LoadRequest request = new LoadRequest();
+        request.setId(id);
+        request.setCustomerId(customerId);
+        request.setLoadAmount(amount);
+        request.setTime(ZonedDateTime.parse(time));
+        return request;
+    }
+
+    @Test
+    void shouldDecideMoreConcurrentLoadsThanPoolConnections() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(30);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<LoadResponse>> responses = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                LoadRequest request = createLoadRequest("1", "flush-" + i, "$100.00", "2035-02-01T00:00:00Z");
+                responses.add(executor.submit(() -> {
+                    start.await();
+                    return loadLimitService.processLoad(request);
+                }));
+            }
+            start.countDown();
+
+            for (Future<LoadResponse> response : responses) {
+                assertTrue(response.get(30, TimeUnit.SECONDS).isAccepted());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (int i = 0; i < 30; i++) {
+            assertTrue(loadRepository.existsByLoadIdAndCustomerId("1", "flush-" + i));
+        }
+    }
+
+    @Test
+    void shouldDropLoadThatCannotBeWrittenAndCarryOn() {
+        assertTrue(loadLimitService.processLoad(
+            createLoadRequest("1", "flush-dropped", "$100.00", "2035-02-02T00:00:00Z")).isAccepted());
+
+        // Same load key again, bypassing the duplicate check, fails on the unique constraint
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+            () -> persistence.record(load("1", "flush-dropped", "2035-02-02T00:00:00Z")));
+        assertTrue(e.getMessage().contains("could not be written"), e.getMessage());
+
+        assertTrue(loadLimitService.processLoad(
+            createLoadRequest("2", "flush-dropped", "$100.00", "2035-02-02T01:00:00Z")).isAccepted());
+        assertTrue(loadRepository.existsByLoadIdAndCustomerId("2", "flush-dropped"));
+    }
+
+    private static CustomerLoad load(String id, String customerId, String time) {
+        ZonedDateTime loadTime = ZonedDateTime.parse(time);
+        CustomerLoad load = new CustomerLoad();
+        load.setLoadId(id);
+        load.setCustomerId(customerId);
+        load.setAmountCents(100_00);
+        load.setLoadTime(loadTime);
+        load.setEpochDay(EpochWindows.epochDay(loadTime));
+        load.setEpochWeek(EpochWindows.epochWeek(EpochWindows.epochDay(loadTime)));
+        load.setAccepted(true);
+        return load;
+    }
+}
@@ -0,0 +1,67 @@
+package com.velocity.limits.service;
+
+import com.velocity.limits.model.EpochWindows;
+import com.velocity.limits.model.LoadRequest;
+import com.velocity.limits.model.VelocityTotals;
+import com.velocity.limits.repository.CustomerLoadRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:write-behind-test",
+    "load.persistence.mode=write-behind",
+    "load.write-behind.batch-size=50",
+    "load.file.output-path=target/write-behind-output.txt"
+})
+class WriteBehindLoadPersistenceTest {
+
+    @Autowired
+    private LoadLimitService loadLimitService;
+
+    @Autowired
+    private LoadPersistence persistence;
+
+    @Autowired
+    private CustomerLoadRepository loadRepository;
+
+    private LoadRequest createLoadRequest(String id, String customerId, String amount, String time) {
+        LoadRequest request = new LoadRequest();
+        request.setId(id);
+        request.setCustomerId(customerId);
+        request.setLoadAmount(amount);
+        request.setTime(ZonedDateTime.parse(time));
+        return request;
+    }
+
+    @Test
+    void startupRunShouldMatchExpectedOutput() throws IOException {
+        assertInstanceOf(WriteBehindLoadPersistence.class, persistence);
+        assertEquals(
+            Files.readAllLines(Path.of("src/main/output/output.txt")),
+            Files.readAllLines(Path.of("target/write-behind-output.txt"))
+        );
+    }
+
+    @Test
+    void readsShouldWaitForQueuedLoadsOfTheCustomer() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(loadLimitService.processLoad(
+                createLoadRequest("wb-" + i, "write-behind", "$100.00", "2035-01-01T0" + i + ":00:00Z")).isAccepted());
+        }
+
+        int epochDay = EpochWindows.epochDay(ZonedDateTime.parse("2035-01-01T00:00:00Z"));
+        VelocityTotals totals = persistence.totals("write-behind", epochDay, EpochWindows.epochWeek(epochDay));
+
+        assertEquals(new VelocityTotals(3, 300_00, 3, 300_00, 300_00), totals);
+        assertTrue(loadRepository.existsByLoadIdAndCustomerId("wb-2", "write-behind"));
+        assertTrue(persistence.exists("wb-0", "write-behind"));
+    }
+}